@@ -0,0 +1,6 @@
+import org.eclipse.jgit.api.Git
+
+// A repository without any history, so the changes can only come from the diff file.
+Git.init().setDirectory((File) basedir).call()
+
+return true
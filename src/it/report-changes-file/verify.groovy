@@ -0,0 +1,5 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+// Only the changed line, not the context lines around it, is reported.
+assert buildLog.contains("Changed file com/jjlharrison/Sample.java: 0/1 changed lines covered")
+assert buildLog.contains("Line 25: line not covered")
@@ -0,0 +1,79 @@
+
+
+import org.eclipse.jgit.api.Git
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+def git = Git.init().setDirectory((File) basedir).call()
+
+def sampleFilePath = "src/main/java/com/jjlharrison/Sample.java"
+def file = new File((File) basedir, sampleFilePath)
+assert file.exists()
+
+new File((File) basedir, ".gitignore") << '''
+target
+Sample.new.java
+build.log
+invoker.properties
+prebuild.groovy
+'''
+
+git.commit()
+        .setMessage("Master commit")
+        .setAllowEmpty(true)
+        .call()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("develop")
+        .call()
+
+git.add()
+        .addFilepattern(".")
+        .call()
+
+def localCommit = git.commit()
+        .setMessage("Commit 1")
+        .call()
+
+def remoteCommit = git.commit()
+        .setMessage("Commit 1 (remote)")
+        .setAllowEmpty(true)
+        .call()
+
+// The local develop branch is one commit behind the remote develop branch it tracks.
+def config = git.repository.config
+config.setString("remote", "origin", "url", "https://example.com/repository.git")
+config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*")
+config.setString("branch", "develop", "remote", "origin")
+config.setString("branch", "develop", "merge", "refs/heads/develop")
+config.save()
+
+def remoteRef = git.repository.updateRef("refs/remotes/origin/develop")
+remoteRef.setNewObjectId(remoteCommit)
+remoteRef.update()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("feature/branch")
+        .call()
+
+def localRef = git.repository.updateRef("refs/heads/develop")
+localRef.setNewObjectId(localCommit)
+localRef.setForceUpdate(true)
+localRef.update()
+
+Files.move(new File((File) basedir, "Sample.new.java").toPath(),
+        new File((File) basedir, sampleFilePath).toPath(),
+        StandardCopyOption.REPLACE_EXISTING)
+
+git.add()
+        .addFilepattern(sampleFilePath)
+        .call()
+
+git.commit()
+        .setMessage("Commit 2")
+        .call()
+
+return true
@@ -0,0 +1,4 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("develop is behind remote tracking branch, comparing with origin/develop instead.")
+assert buildLog.contains("Line 25: line not covered")
\ No newline at end of file
@@ -0,0 +1,72 @@
+
+
+import org.eclipse.jgit.api.Git
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+def git = Git.init().setDirectory((File) basedir).call()
+
+def sampleFilePath = "src/main/java/com/jjlharrison/Sample.java"
+def file = new File((File) basedir, sampleFilePath)
+assert file.exists()
+
+new File((File) basedir, ".gitignore") << '''
+target
+Sample.new.java
+build.log
+invoker.properties
+prebuild.groovy
+'''
+
+git.commit()
+        .setMessage("Master commit")
+        .setAllowEmpty(true)
+        .call()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("develop")
+        .call()
+
+git.add()
+        .addFilepattern(".")
+        .call()
+
+def remoteCommit = git.commit()
+        .setMessage("Commit 1")
+        .call()
+
+// The develop branch only exists in a remote other than origin.
+def config = git.repository.config
+config.setString("remote", "upstream", "url", "https://example.com/repository.git")
+config.setString("remote", "upstream", "fetch", "+refs/heads/*:refs/remotes/upstream/*")
+config.save()
+
+def remoteRef = git.repository.updateRef("refs/remotes/upstream/develop")
+remoteRef.setNewObjectId(remoteCommit)
+remoteRef.update()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("feature/branch")
+        .call()
+
+git.branchDelete()
+        .setBranchNames("develop")
+        .setForce(true)
+        .call()
+
+Files.move(new File((File) basedir, "Sample.new.java").toPath(),
+        new File((File) basedir, sampleFilePath).toPath(),
+        StandardCopyOption.REPLACE_EXISTING)
+
+git.add()
+        .addFilepattern(sampleFilePath)
+        .call()
+
+git.commit()
+        .setMessage("Commit 2")
+        .call()
+
+return true
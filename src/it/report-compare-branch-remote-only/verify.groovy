@@ -0,0 +1,4 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("Local branch named develop not found, using upstream/develop instead.")
+assert buildLog.contains("Line 25: line not covered")
\ No newline at end of file
@@ -0,0 +1,82 @@
+
+
+import org.eclipse.jgit.api.Git
+
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+def git = Git.init().setDirectory((File) basedir).call()
+
+def legacySampleFilePath = "src/main/java/com/jjlharrison/legacy/Sample.java"
+def legacySampleTestFilePath = "src/test/java/com/jjlharrison/legacy/SampleTest.java"
+def sampleFilePath = "src/main/java/com/jjlharrison/Sample.java"
+def sampleTestFilePath = "src/test/java/com/jjlharrison/SampleTest.java"
+assert new File((File) basedir, legacySampleFilePath).exists()
+
+new File((File) basedir, ".gitignore") << '''
+target
+Sample.new.java
+build.log
+invoker.properties
+prebuild.groovy
+'''
+
+git.commit()
+        .setMessage("Master commit")
+        .setAllowEmpty(true)
+        .call()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("develop")
+        .call()
+
+git.add()
+        .addFilepattern(".")
+        .call()
+
+git.commit()
+        .setMessage("Commit 1")
+        .call()
+
+git.checkout()
+        .setCreateBranch(true)
+        .setName("feature/branch")
+        .call()
+
+// Move the class and its test to another package, changing one line of the class.
+new File((File) basedir, sampleFilePath).parentFile.mkdirs()
+new File((File) basedir, sampleTestFilePath).parentFile.mkdirs()
+Files.move(new File((File) basedir, "Sample.new.java").toPath(),
+        new File((File) basedir, sampleFilePath).toPath(),
+        StandardCopyOption.REPLACE_EXISTING)
+def legacySampleTest = new File((File) basedir, legacySampleTestFilePath)
+new File((File) basedir, sampleTestFilePath).text = legacySampleTest.text.replace("package com.jjlharrison.legacy;", "package com.jjlharrison;")
+
+git.rm()
+        .addFilepattern(legacySampleFilePath)
+        .addFilepattern(legacySampleTestFilePath)
+        .call()
+
+git.add()
+        .addFilepattern(sampleFilePath)
+        .addFilepattern(sampleTestFilePath)
+        .call()
+
+git.commit()
+        .setMessage("Commit 2")
+        .call()
+
+// An untracked class, which is only found by listing the untracked files.
+new File((File) basedir, "src/main/java/com/jjlharrison/Untracked.java").text = '''package com.jjlharrison;
+
+public class Untracked
+{
+    public int get()
+    {
+        return 1;
+    }
+}
+'''
+
+return true
\ No newline at end of file
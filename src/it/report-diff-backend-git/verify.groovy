@@ -0,0 +1,7 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+// The diff is parsed from the output of the git command, in which the moved class is compared with the class it was moved from.
+assert buildLog.contains("Changed file com/jjlharrison/Sample.java")
+assert buildLog.contains("Line 25: line not covered")
+assert buildLog.contains("New file com/jjlharrison/Untracked.java")
+assert !buildLog.contains("New file com/jjlharrison/Sample.java")
@@ -0,0 +1,4 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("No new code found.")
+assert !buildLog.contains("Sample.java")
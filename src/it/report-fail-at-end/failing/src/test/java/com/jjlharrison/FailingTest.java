@@ -0,0 +1,13 @@
+package com.jjlharrison;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FailingTest
+{
+    @Test
+    public void test()
+    {
+        Assert.fail("Fails before the change coverage report of this module.");
+    }
+}
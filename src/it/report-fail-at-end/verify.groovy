@@ -0,0 +1,5 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("Line 25: line not covered")
+// The failing module never runs the report, but the line hashes are still saved when the build ends.
+assert new File((File) basedir, "target/change-coverage-cache/line-hashes").isFile()
@@ -0,0 +1,9 @@
+package com.jjlharrison;
+
+public class Generated
+{
+    public String uncoveredMethod()
+    {
+        return "Generated";
+    }
+}
@@ -0,0 +1,6 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+// Files that are ignored by Git are not new files, so the source root is skipped as unchanged, as the scan would not find them either.
+assert buildLog.contains("Source roots are unchanged since the merge base.")
+assert buildLog.contains("No new code found.")
+assert !buildLog.contains("Generated.java:")
@@ -0,0 +1,3 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("Line 25: line not covered")
\ No newline at end of file
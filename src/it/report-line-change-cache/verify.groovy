@@ -0,0 +1,7 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.count("Line 25: line not covered") == 2
+assert buildLog.count("Using cached changes.") == 1
+def cacheDirectory = new File((File) basedir, "target/change-coverage-cache")
+assert cacheDirectory.list().findAll { it.endsWith(".changes") }.size() == 1
+assert new File(cacheDirectory, "line-hashes").isFile()
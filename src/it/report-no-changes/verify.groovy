@@ -1,6 +1,8 @@
 def buildLog = new File((File) basedir, "build.log").getText()
 
 assert buildLog.contains("No new code found.")
+// The source root tree is the same as in the merge base, so nothing is diffed.
+assert buildLog.contains("Source roots are unchanged since the merge base.")
 def changeCoverage = new XmlSlurper().parse(new File((File) basedir, "target/site/change-coverage/report.xml"))
 assert changeCoverage.summary.branch == "100.0"
 assert changeCoverage.summary.line == "100.0"
\ No newline at end of file
@@ -0,0 +1,6 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+// The moved class is compared with the class it was moved from, so only the changed line is reported.
+assert buildLog.contains("Changed file com/jjlharrison/Sample.java")
+assert buildLog.contains("Line 25: line not covered")
+assert !buildLog.contains("New file")
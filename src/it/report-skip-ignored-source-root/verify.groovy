@@ -0,0 +1,6 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("Line 25: line not covered")
+
+// The annotation processor output directory is added as a source root by the compiler plugin.
+assert buildLog.contains("Skipping source root target/generated-sources/annotations/, which is ignored by Git.")
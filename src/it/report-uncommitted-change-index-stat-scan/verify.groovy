@@ -0,0 +1,6 @@
+def buildLog = new File((File) basedir, "build.log").getText()
+
+assert buildLog.contains("Sample.java")
+assert buildLog.contains("Line 25: line not covered")
+// Files that are ignored by Git are not new files, with or without the index stat scan.
+assert !buildLog.contains("Generated.java:")
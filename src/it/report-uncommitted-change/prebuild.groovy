@@ -14,6 +14,7 @@ assert file.exists()
 new File((File) basedir, ".gitignore") << '''
 target
 Sample.new.java
+Generated.java
 build.log
 invoker.properties
 prebuild.groovy
@@ -48,4 +49,8 @@ Files.move(new File((File) basedir, "Sample.new.java").toPath(),
 
 // Change above is uncommitted.
 
+// A new file that is ignored by Git.
+Files.move(new File((File) basedir, "Generated.java").toPath(),
+        new File((File) basedir, "src/main/java/com/jjlharrison/Generated.java").toPath())
+
 return true
\ No newline at end of file
@@ -15,26 +15,25 @@ import java.text.DecimalFormat;
 import java.util.List;
 import java.util.function.ToIntFunction;
 
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 import javax.xml.bind.JAXB;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
-import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.diff.DiffAlgorithm;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.jjlharrison.coverage.changes.diff.ProjectChanges;
 import com.jjlharrison.coverage.changes.jacoco.JacocoReportParser;
+import com.jjlharrison.coverage.changes.jacoco.JacocoReportReader;
+import com.jjlharrison.coverage.changes.jacoco.JacocoReportScanner;
 import com.jjlharrison.coverage.changes.report.ChangeCoverageReport;
 import com.jjlharrison.coverage.changes.report.ChangeCoverageReportSummary;
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Goal which calculates coverage levels for changed Java code and enforces minimum requirements.
@@ -45,10 +44,138 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
     /** Log to guard write to the aggregate log file. */
     private static final Object AGGREGATE_LOG_WRITE_LOCK = new Object();
 
-    /** The branch to compare with to detect changes. */
+    /** The directory to cache resolved changes in. */
+    @Parameter(defaultValue = "${session.executionRootDirectory}/target/change-coverage-cache", property = "coverage.change.cacheDirectory")
+    private File cacheDirectory;
+
+    /**
+     * The maximum number of resolved changes to cache, or zero to disable the cache. Cached changes are reused when HEAD, the branch to
+     * compare with and the modified files in the working tree are unchanged.
+     */
+    @Parameter(defaultValue = "0", property = "coverage.change.cacheSize")
+    private int cacheSize;
+
+    /**
+     * A unified diff of the changes to report, e.g. one produced by {@code git diff} on a CI server, with paths relative to the root of
+     * the repository. If set, the changes are read from it and the Git repository is never opened, so its history need not be available
+     * (e.g. in a shallow clone). Only the {@code includes} and {@code excludes} options apply.
+     */
+    @Parameter(property = "coverage.change.changesFile")
+    private File changesFile;
+
+    /**
+     * The branch to compare with to detect changes. Any other revision can be given instead, e.g. a commit id, a tag or {@code HEAD~3}.
+     */
     @Parameter(defaultValue = "develop", property = "coverage.change.branch", required = true)
     private String compareBranch;
 
+    /**
+     * The diff algorithm to use, {@code HISTOGRAM} or {@code MYERS}. Defaults to the {@code diff.algorithm} configured in the repository,
+     * or {@code HISTOGRAM}.
+     */
+    @Parameter(property = "coverage.change.diffAlgorithm")
+    private DiffAlgorithm.SupportedAlgorithm diffAlgorithm;
+
+    /**
+     * The backend that computes the diff: {@code JGIT} to diff in the JVM, or {@code GIT} to run the {@code git} command found on the path
+     * and parse the hunk headers of its output.
+     */
+    @Parameter(defaultValue = "JGIT", property = "coverage.change.diffBackend")
+    private DiffBackend diffBackend;
+
+    /**
+     * The size in bytes above which a file is not loaded into memory to be diffed. Larger files are streamed to find the region between
+     * their first and last changed lines, which is treated as changed in its entirety. Zero for no limit, but files over 50 MiB are then
+     * treated as binary files with no changed lines.
+     */
+    @Parameter(defaultValue = "10485760", property = "coverage.change.diffMaxFileSize")
+    private long diffMaxFileSize;
+
+    /**
+     * The maximum number of lines in the changed region of a file to diff. Larger regions are treated as changed in their entirety. Zero
+     * for no limit.
+     */
+    @Parameter(defaultValue = "0", property = "coverage.change.diffMaxLines")
+    private int diffMaxLines;
+
+    /**
+     * What to compare the merge base with: {@code WORKING_TREE} includes uncommitted changes, {@code INDEX} includes only staged changes
+     * (for pre-commit hooks), {@code HEAD} compares only the committed trees (for clean CI checkouts), and {@code AUTO} uses {@code HEAD}
+     * when the {@code CI} environment variable is {@code true}, otherwise {@code WORKING_TREE}. Only {@code WORKING_TREE} scans the working
+     * tree.
+     */
+    @Parameter(defaultValue = "WORKING_TREE", property = "coverage.change.diffTarget")
+    private DiffTarget diffTarget;
+
+    /**
+     * The maximum time in milliseconds to spend diffing a file, after which the changed region of the file is treated as changed in its
+     * entirety. Zero for no limit.
+     */
+    @Parameter(defaultValue = "0", property = "coverage.change.diffTimeout")
+    private long diffTimeout;
+
+    /**
+     * Globs of the source files to exclude from change coverage, relative to their source root, e.g. {@code com/example/dto/**} or
+     * {@code **}{@code /*Config.java}. Excluded files are not diffed.
+     */
+    @Parameter(property = "coverage.change.excludes")
+    private List<String> excludes;
+
+    /**
+     * Globs of the source files to include in change coverage, relative to their source root. All source files are included if none are
+     * given.
+     */
+    @Parameter(property = "coverage.change.includes")
+    private List<String> includes;
+
+    /**
+     * Whether to update the cached changes of an earlier commit on the current branch when HEAD moves, diffing only the new commits rather
+     * than the whole branch. Requires the cache to be enabled with {@code cacheSize}.
+     */
+    @Parameter(defaultValue = "false", property = "coverage.change.incremental")
+    private boolean incremental;
+
+    /**
+     * Whether to use the stat information in the Git index to skip reading working tree files that have not been modified since they were
+     * staged. The changes found are the same either way, and untracked files that are ignored by Git are not new files in both.
+     */
+    @Parameter(defaultValue = "false", property = "coverage.change.indexStatScan")
+    private boolean indexStatScan;
+
+    /**
+     * The backend that reads the JaCoCo XML report: {@code SAX} to parse every element, {@code STREAM} to stream it through a pull parser
+     * that skips the packages without changes, or {@code MAPPED} to memory-map it and scan its bytes for the tags of changed source files.
+     */
+    @Parameter(defaultValue = "SAX", property = "coverage.change.jacocoReportBackend")
+    private JacocoReportBackend jacocoReportBackend;
+
+    /**
+     * The maximum total number of lines of files whose line hashes are kept in memory, so that a file diffed again (e.g. the same merge
+     * base version of a file in another module) is not hashed again. The line hashes are saved in the {@code cacheDirectory} for later
+     * builds if {@code cacheSize} is greater than zero. Zero to not cache line hashes.
+     */
+    @Parameter(defaultValue = "1000000", property = "coverage.change.lineHashCacheSize")
+    private int lineHashCacheSize;
+
+    /**
+     * The number of threads to compute the changed lines of modified files with, and to scan a JaCoCo XML report of more than a few
+     * megabytes with if the {@code jacocoReportBackend} is {@code MAPPED}.
+     */
+    @Parameter(defaultValue = "1", property = "coverage.change.parallelism")
+    private int parallelism;
+
+    /**
+     * The maximum number of added or deleted files to compare for renames and copies, so that at most the square of this number of pairs
+     * of files are compared. Files that have been moved without being modified are still detected when there are more. Zero to not detect
+     * renames, so that moved files are new files.
+     */
+    @Parameter(defaultValue = "400", property = "coverage.change.renameLimit")
+    private int renameLimit;
+
+    /** The minimum similarity, as a percentage, for an added and a deleted file to be detected as a rename. */
+    @Parameter(defaultValue = "50", property = "coverage.change.renameScore")
+    private int renameScore;
+
     /** The JaCoCo XML report file. */
     @Parameter(defaultValue = "${project.reporting.outputDirectory}/jacoco/jacoco.xml", required = true)
     private File jacocoXmlReport;
@@ -57,11 +184,16 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
     @Parameter(defaultValue = "${project}", readonly = true)
     private MavenProject project;
 
+    /** The Maven session. */
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
     /** Whether to skip change coverage check. */
     @Parameter(defaultValue = "false", property = "change-coverage.skip")
     private boolean skip;
 
     @Override
+    @SuppressWarnings("PMD.CloseResource") // The Git diff session is shared by all modules and closed when the build ends.
     public void execute()
     {
         if (skip)
@@ -84,18 +216,26 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
             {
                 final ProjectChanges changes;
                 final File repositoryLogFile;
-                try (Repository repository = buildRepository())
+                try
                 {
-                    if (repository == null)
+                    if (changesFile != null)
                     {
-                        logger.info("Not a Git repository, skipping.");
-                        return;
+                        final File repositoryRootDirectory = getRepositoryRootDirectory();
+                        repositoryLogFile = new File(new File(repositoryRootDirectory, "target"), "change-coverage.log");
+                        changes = new DiffFileChangeResolver(session, changesFile, repositoryRootDirectory,
+                                                             project.getCompileSourceRoots(), getGitDiffSettings(), logger).resolve();
                     }
                     else
                     {
-                        final File target = new File(repository.getDirectory().getParentFile(), "target");
+                        final GitDiffSession gitDiffSession = GitDiffSession.get(session, project, getGitDiffSettings(), getLog());
+                        if (gitDiffSession == null)
+                        {
+                            logger.info("Not a Git repository, skipping.");
+                            return;
+                        }
+                        final File target = new File(gitDiffSession.getRepository().getDirectory().getParentFile(), "target");
                         repositoryLogFile = new File(target, "change-coverage.log");
-                        changes = getChanges(repository, logger);
+                        changes = getChanges(gitDiffSession, logger);
                     }
                 }
                 catch (final IOException e)
@@ -158,23 +298,6 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
         }
     }
 
-    /**
-     * Builds the repository.
-     *
-     * @return the repository.
-     * @throws IOException if an I/O error occurs.
-     */
-    @Nullable
-    @CheckForNull
-    @SuppressFBWarnings(value = "BC_UNCONFIRMED_CAST_OF_RETURN_VALUE", justification = "¯\\_(ツ)_/¯")
-    private Repository buildRepository() throws IOException
-    {
-        final FileRepositoryBuilder builder = new FileRepositoryBuilder()
-                                                  .readEnvironment()
-                                                  .findGitDir(project.getBasedir());
-        return builder.getGitDir() == null ? null : builder.build();
-    }
-
     /**
      * Calculate the coverage percentage.
      *
@@ -204,6 +327,37 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
         return 100d;
     }
 
+    /**
+     * Reads the coverage information for the changes from the JaCoCo XML report with the configured backend.
+     *
+     * @param changes the project changes.
+     * @param logger the logger.
+     * @return the coverage information for the changes.
+     * @throws IOException if an I/O error occurs or the report is malformed.
+     */
+    private List<ChangeCoverage> readJacocoReport(final ProjectChanges changes, final Logger logger) throws IOException
+    {
+        if (jacocoReportBackend == JacocoReportBackend.MAPPED)
+        {
+            return new JacocoReportScanner(changes.getNewFiles(), changes.getChangedLinesByFile(), parallelism, logger)
+                       .read(jacocoXmlReport);
+        }
+        try (FileInputStream inputStream = new FileInputStream(jacocoXmlReport))
+        {
+            if (jacocoReportBackend == JacocoReportBackend.SAX)
+            {
+                final JacocoReportParser parser = new JacocoReportParser(changes.getNewFiles(), changes.getChangedLinesByFile());
+                Utilities.parse(new InputSource(inputStream), parser, false);
+                return parser.getCoverage();
+            }
+            return new JacocoReportReader(changes.getNewFiles(), changes.getChangedLinesByFile()).read(inputStream);
+        }
+        catch (final SAXException e)
+        {
+            throw new IOException("Could not parse " + jacocoXmlReport + ".", e);
+        }
+    }
+
     /**
      * Reports the change coverage measures.
      *
@@ -218,13 +372,7 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
             double changeCodeLineCoverage = 100d;
             if (changes.hasChanges())
             {
-                final List<ChangeCoverage> coverage;
-                try (FileInputStream inputStream = new FileInputStream(jacocoXmlReport))
-                {
-                    final JacocoReportParser parser = new JacocoReportParser(changes.getNewFiles(), changes.getChangedLinesByFile());
-                    Utilities.parse(new InputSource(inputStream), parser, false);
-                    coverage = parser.getCoverage();
-                }
+                final List<ChangeCoverage> coverage = readJacocoReport(changes, logger);
 
                 coverage.stream()
                     .filter(ChangeCoverage::hasTestableChanges)
@@ -248,27 +396,97 @@ public class ChangeCoverageReportMojo extends AbstractChangeCoverageMojo
             Utilities.forceMkdir(xmlReportFile.getParentFile());
             JAXB.marshal(report, xmlReportFile);
         }
-        catch (final IOException | SAXException e)
+        catch (final IOException e)
         {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Returns the settings for resolving changes from Git.
+     *
+     * @return the settings.
+     */
+    @Nonnull
+    private GitDiffSettings getGitDiffSettings()
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setCacheDirectory(cacheDirectory);
+        settings.setCacheSize(cacheSize);
+        settings.setCompareBranch(compareBranch);
+        settings.setDiffAlgorithm(diffAlgorithm);
+        settings.setDiffBackend(diffBackend);
+        settings.setDiffMaxFileSize(diffMaxFileSize);
+        settings.setDiffMaxLines(diffMaxLines);
+        settings.setDiffTarget(getDiffTarget());
+        settings.setDiffTimeout(diffTimeout);
+        settings.setExcludes(excludes);
+        settings.setIncludes(includes);
+        settings.setIncremental(incremental);
+        settings.setIndexStatScan(indexStatScan);
+        settings.setLineHashCacheSize(lineHashCacheSize);
+        settings.setParallelism(parallelism);
+        settings.setRenameLimit(renameLimit);
+        settings.setRenameScore(renameScore);
+        return settings;
+    }
+
+    /**
+     * Returns what to compare the merge base with, detecting whether this is a CI build if the diff target is {@link DiffTarget#AUTO}.
+     *
+     * @return the diff target.
+     */
+    @Nonnull
+    private DiffTarget getDiffTarget()
+    {
+        if (diffTarget == DiffTarget.AUTO)
+        {
+            return Boolean.parseBoolean(System.getenv("CI")) ? DiffTarget.HEAD : DiffTarget.WORKING_TREE;
+        }
+        return diffTarget;
+    }
+
+    /**
+     * Returns the root directory of the Git repository containing the project, found without opening the repository, or the directory
+     * Maven was run from if the project is not in a Git repository.
+     *
+     * @return the repository root directory.
+     */
+    @Nonnull
+    private File getRepositoryRootDirectory()
+    {
+        for (File directory = project.getBasedir().getAbsoluteFile(); directory != null; directory = directory.getParentFile())
+        {
+            // .git is a file rather than a directory in a linked working tree or a submodule.
+            if (new File(directory, ".git").exists())
+            {
+                return directory;
+            }
+        }
+        return new File(session.getExecutionRootDirectory());
+    }
+
     /**
      * Returns the project change information.
      *
-     * @param repository the repository.
+     * @param gitDiffSession the Git diff session shared with the other modules of the build.
      * @param logger the logger.
      * @return the project changes.
      * @throws IOException if an I/O error occurs.
      */
     @Nonnull
-    private ProjectChanges getChanges(final Repository repository, final Logger logger) throws IOException
+    private ProjectChanges getChanges(final GitDiffSession gitDiffSession, final Logger logger) throws IOException
     {
-        return new GitDiffChangeResolver(repository,
-                                         project.getBasedir().getPath(),
-                                         compareBranch,
-                                         project.getCompileSourceRoots(),
-                                         logger).resolve();
+        final String projectBaseDirectoryPath = project.getBasedir().getPath();
+        final ChangeResolver resolver;
+        if (diffBackend == DiffBackend.GIT)
+        {
+            resolver = new GitCommandChangeResolver(gitDiffSession, projectBaseDirectoryPath, project.getCompileSourceRoots(), logger);
+        }
+        else
+        {
+            resolver = new GitDiffChangeResolver(gitDiffSession, projectBaseDirectoryPath, project.getCompileSourceRoots(), logger);
+        }
+        return resolver.resolve();
     }
 }
@@ -0,0 +1,19 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.IOException;
+
+import com.jjlharrison.coverage.changes.diff.ProjectChanges;
+
+/**
+ * Resolves the changes to a module's source files since the merge base of HEAD and the branch to compare with.
+ */
+public interface ChangeResolver
+{
+    /**
+     * Resolves the changes.
+     *
+     * @return the changes.
+     * @throws IOException if an I/O error occurs.
+     */
+    ProjectChanges resolve() throws IOException;
+}
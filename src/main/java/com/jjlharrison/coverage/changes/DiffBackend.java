@@ -0,0 +1,17 @@
+package com.jjlharrison.coverage.changes;
+
+/**
+ * The backend that computes the diff between the merge base and the diff target.
+ */
+public enum DiffBackend
+{
+    /** JGit, within the JVM. */
+    JGIT,
+
+    /**
+     * The {@code git} command found on the path. Only the hunk headers of its output are parsed, so the patch is never held in memory, and
+     * Git's own optimisations (e.g. the file system monitor and untracked cache) are used when scanning the working tree. Incremental
+     * resolution and the diff limits and parallelism that apply to JGit are not supported.
+     */
+    GIT
+}
@@ -0,0 +1,128 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+
+import org.apache.maven.execution.MavenSession;
+
+import com.jjlharrison.coverage.changes.diff.ProjectChanges;
+import com.jjlharrison.coverage.changes.diff.ProjectChangesBuilder;
+
+/**
+ * Change resolver that resolves changes from a unified diff file that was produced beforehand, e.g. by a CI server, without opening the
+ * Git repository.
+ * <p>
+ * The paths in the diff are relative to the repository root, as in the output of {@code git diff}. The file is streamed through a {@link
+ * UnifiedDiffParser} once per build, keeping only the hunk headers, and each module then takes its slice of the changed files.
+ */
+public class DiffFileChangeResolver implements ChangeResolver
+{
+    /** The diff files parsed in the current build, indexed by Maven session and then by absolute file. */
+    private static final Map<MavenSession, Map<File, ParsedDiff>> PARSED_DIFFS = new WeakHashMap<>();
+
+    /** The compile source roots to check. */
+    private final Collection<String> compileSourceRoots;
+
+    /** The unified diff file. */
+    private final File diffFile;
+
+    /** The logger. */
+    private final Logger log;
+
+    /** The Maven session. */
+    private final MavenSession mavenSession;
+
+    /** The directory that the paths in the diff are relative to. */
+    private final File repositoryRootDirectory;
+
+    /** The globs that select the source files within the source roots. */
+    private final SourceFileGlobs sourceFileGlobs;
+
+    /**
+     * Constructor.
+     *
+     * @param mavenSession the Maven session, which the parsed diff is shared within.
+     * @param diffFile the unified diff file.
+     * @param repositoryRootDirectory the directory that the paths in the diff are relative to.
+     * @param compileSourceRoots the compile source roots to check.
+     * @param settings the settings, of which only the include and exclude globs apply.
+     * @param log the logger.
+     */
+    public DiffFileChangeResolver(final MavenSession mavenSession, final File diffFile, final File repositoryRootDirectory,
+                                  final Collection<String> compileSourceRoots, final GitDiffSettings settings, final Logger log)
+    {
+        this.mavenSession = mavenSession;
+        this.diffFile = diffFile;
+        this.repositoryRootDirectory = repositoryRootDirectory;
+        this.compileSourceRoots = compileSourceRoots;
+        this.sourceFileGlobs = new SourceFileGlobs(settings.getIncludes(), settings.getExcludes());
+        this.log = log;
+    }
+
+    @Override
+    public ProjectChanges resolve() throws IOException
+    {
+        final ProjectChangesBuilder builder = new ProjectChangesBuilder();
+        final URI repositoryRootDirectoryUri = repositoryRootDirectory.toURI();
+        final List<String> repositoryRelativeSourceRoots = compileSourceRoots.stream()
+                                                               .map(File::new)
+                                                               .map(File::toURI)
+                                                               .map(repositoryRootDirectoryUri::relativize)
+                                                               .filter(u -> !u.isAbsolute())
+                                                               .map(URI::getPath)
+                                                               .collect(Collectors.toList());
+        if (!repositoryRelativeSourceRoots.isEmpty())
+        {
+            final SourceRootTrie moduleSourceRoots = new SourceRootTrie(repositoryRelativeSourceRoots, sourceFileGlobs);
+            getParsedDiff().apply(new SourceRootChangesHandler(moduleSourceRoots, builder));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the parsed diff file, parsing it if this is the first module of the build to need it.
+     *
+     * @return the parsed diff.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private ParsedDiff getParsedDiff() throws IOException
+    {
+        synchronized (PARSED_DIFFS)
+        {
+            Map<File, ParsedDiff> parsedDiffs = PARSED_DIFFS.get(mavenSession);
+            if (parsedDiffs == null)
+            {
+                // A new build has started (e.g. in a long-lived Maven daemon), so the diffs parsed by earlier builds may be out of date.
+                PARSED_DIFFS.clear();
+                parsedDiffs = new HashMap<>();
+                PARSED_DIFFS.put(mavenSession, parsedDiffs);
+            }
+            final File file = diffFile.getAbsoluteFile();
+            ParsedDiff diff = parsedDiffs.get(file);
+            if (diff == null)
+            {
+                final long start = System.nanoTime();
+                diff = new ParsedDiff();
+                try (InputStream input = new FileInputStream(file))
+                {
+                    new UnifiedDiffParser(input, diff).parse();
+                }
+                log.debug("Read changes from " + diffFile + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+                parsedDiffs.put(file, diff);
+            }
+            return diff;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jjlharrison.coverage.changes;
+
+/**
+ * What the merge base is compared with to find the changes.
+ */
+public enum DiffTarget
+{
+    /** The working tree, including uncommitted and untracked files. */
+    WORKING_TREE,
+
+    /**
+     * The Git index, i.e. the changes that would be committed, as shown by {@code git diff --cached}. Staged content is read from the
+     * object database, so the working tree is never scanned.
+     */
+    INDEX,
+
+    /**
+     * The tree committed at HEAD. Only tree objects are read, and subtrees that are the same as in the merge base are skipped without
+     * being read, so the working tree is never scanned.
+     */
+    HEAD,
+
+    /** {@link #HEAD} when running on a CI server (the {@code CI} environment variable is {@code true}), otherwise {@link #WORKING_TREE}. */
+    AUTO
+}
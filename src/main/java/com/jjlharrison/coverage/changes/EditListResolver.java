@@ -0,0 +1,545 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.ContentSource;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.SequenceComparator;
+import org.eclipse.jgit.errors.BinaryBlobException;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.util.RawCharUtil;
+
+import com.jjlharrison.coverage.changes.diff.LineHashCache;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Computes the edit lists of modified files by running the diff algorithm directly on the old and new content.
+ * <p>
+ * This gives the same edits as extracting them from the hunks of a {@link org.eclipse.jgit.diff.DiffFormatter#toFileHeader(DiffEntry)
+ * file header}, without formatting a patch and parsing it again. Instances are not thread safe.
+ * <p>
+ * If the changed region of a file exceeds the line or time budget in the settings, every line in the changed region is treated as changed
+ * instead. Files larger than {@link GitDiffSettings#getDiffMaxFileSize()} are not loaded into memory at all: they are streamed, keeping
+ * only a hash of each line, to find the changed region.
+ * <p>
+ * If given a {@link LineHashCache}, the hashes of the lines of blobs are looked up in it, or computed once and added to it, rather than
+ * being computed by the diff algorithm as it goes. The hashes of lines are then compared before their content.
+ */
+public class EditListResolver implements AutoCloseable
+{
+    /** The size of the buffer large files are streamed through. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The number of bytes at the start of a file that are checked to see whether the file is binary, as {@link RawText} does. */
+    private static final int BINARY_CHECK_SIZE = 8000;
+
+    /** The offset basis of the 64 bit FNV-1a hash that lines of large files are hashed with. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /** The prime of the 64 bit FNV-1a hash that lines of large files are hashed with. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The comparator used to compare lines. */
+    private static final RawTextComparator COMPARATOR = RawTextComparator.WS_IGNORE_ALL;
+
+    /** The name of the comparator used to compare lines, including the JGit version since the hashes depend on it. */
+    public static final String COMPARATOR_NAME = "WS_IGNORE_ALL/" + RawTextComparator.class.getPackage().getImplementationVersion();
+
+    /** The diff algorithm. */
+    private final DiffAlgorithm algorithm;
+
+    /** The cache of the line hashes of blobs, or {@code null} to not cache them. */
+    private final LineHashCache lineHashCache;
+
+    /** The logger. */
+    private final Logger log;
+
+    /** Whether any of the edits returned so far treat a changed region as changed in its entirety, rather than diffing it. */
+    private boolean approximate;
+
+    /** The object reader. */
+    private final ObjectReader reader;
+
+    /** The settings. */
+    private final GitDiffSettings settings;
+
+    /** The source of the old and new file content. */
+    private final ContentSource.Pair source;
+
+    /** Whether the new content is read from the working tree, rather than from the object database. */
+    private final boolean workingTree;
+
+    /**
+     * Constructor.
+     *
+     * @param repository the Git repository.
+     * @param workingTree whether the new content is read from the working tree, rather than from the object database.
+     * @param settings the settings.
+     * @param lineHashCache the cache of the line hashes of blobs, or {@code null} to not cache them.
+     * @param log the logger.
+     */
+    public EditListResolver(final Repository repository, final boolean workingTree, final GitDiffSettings settings,
+                            @Nullable final LineHashCache lineHashCache, final Logger log)
+    {
+        this.settings = settings;
+        this.workingTree = workingTree;
+        this.lineHashCache = lineHashCache;
+        this.log = log;
+        reader = repository.newObjectReader();
+        source = new ContentSource.Pair(ContentSource.create(reader), workingTree
+                                                                      ? ContentSource.create(new FileTreeIterator(repository))
+                                                                      : ContentSource.create(reader));
+        algorithm = DiffAlgorithm.getAlgorithm(settings.getDiffAlgorithm() != null
+                                               ? settings.getDiffAlgorithm()
+                                               : repository.getConfig().getEnum(ConfigConstants.CONFIG_DIFF_SECTION, null,
+                                                                                ConfigConstants.CONFIG_KEY_ALGORITHM,
+                                                                                DiffAlgorithm.SupportedAlgorithm.HISTOGRAM));
+    }
+
+    @Override
+    public void close()
+    {
+        reader.close();
+    }
+
+    /**
+     * Whether any of the edits returned so far treat the changed region of a file as changed in its entirety, because the file exceeded
+     * the size, line or time budget, rather than diffing it.
+     *
+     * @return whether any of the edits are approximate.
+     */
+    public boolean isApproximate()
+    {
+        return approximate;
+    }
+
+    /**
+     * Returns the edits for the given diff entry, or an empty edit list for binary files (as {@link org.eclipse.jgit.diff.DiffFormatter}
+     * does).
+     *
+     * @param entry the diff entry.
+     * @return the edits.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public EditList getEdits(final DiffEntry entry) throws IOException
+    {
+        final long maxFileSize = settings.getDiffMaxFileSize();
+        if (maxFileSize > 0 && Math.max(getSize(DiffEntry.Side.OLD, entry), getSize(DiffEntry.Side.NEW, entry)) > maxFileSize)
+        {
+            return getLargeFileEdits(entry, maxFileSize);
+        }
+        final RawText a;
+        final RawText b;
+        try
+        {
+            a = open(DiffEntry.Side.OLD, entry);
+            b = open(DiffEntry.Side.NEW, entry);
+        }
+        catch (final BinaryBlobException e)
+        {
+            return new EditList();
+        }
+        final Edit region = COMPARATOR.reduceCommonStartEnd(a, b, new Edit(0, a.size(), 0, b.size()));
+        final int maxLines = settings.getDiffMaxLines();
+        if (maxLines > 0 && Math.max(region.getLengthA(), region.getLengthB()) > maxLines)
+        {
+            return getCoarseEdits(entry, region, "the changed region has more than " + maxLines + " lines");
+        }
+        final SequenceComparator<RawText> comparator;
+        if (lineHashCache == null)
+        {
+            comparator = COMPARATOR;
+        }
+        else
+        {
+            // Working tree content has no blob id until it is hashed, so only the lines of blobs in the object database are cached.
+            comparator = new HashedComparator(a, getLineHashes(entry.getOldId(), a), b,
+                                              workingTree ? hashLines(b) : getLineHashes(entry.getNewId(), b));
+        }
+        final long timeout = settings.getDiffTimeout();
+        if (timeout > 0)
+        {
+            try
+            {
+                return algorithm.diff(new BudgetedComparator(comparator, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)), a, b);
+            }
+            catch (final BudgetExceededException e)
+            {
+                return getCoarseEdits(entry, region, "it took longer than " + timeout + " ms");
+            }
+        }
+        return algorithm.diff(comparator, a, b);
+    }
+
+    /**
+     * Returns the line hashes of the given blob from the cache, hashing its lines and adding them to the cache if they are not cached.
+     *
+     * @param id the blob id.
+     * @param text the content of the blob.
+     * @return the line hashes.
+     */
+    @Nonnull
+    private int[] getLineHashes(final AbbreviatedObjectId id, final RawText text)
+    {
+        if (!id.isComplete())
+        {
+            return hashLines(text);
+        }
+        final ObjectId objectId = id.toObjectId();
+        int[] hashes = lineHashCache.get(objectId);
+        if (hashes == null || hashes.length != text.size())
+        {
+            hashes = hashLines(text);
+            lineHashCache.put(objectId, hashes);
+        }
+        return hashes;
+    }
+
+    /**
+     * Hashes each line of the given content.
+     *
+     * @param text the content.
+     * @return the line hashes.
+     */
+    @Nonnull
+    private static int[] hashLines(final RawText text)
+    {
+        final int[] hashes = new int[text.size()];
+        for (int i = 0; i < hashes.length; i++)
+        {
+            hashes[i] = COMPARATOR.hash(text, i);
+        }
+        return hashes;
+    }
+
+    /**
+     * Returns an edit list that treats the whole of the changed region as replaced, and logs that it has done so. If the region is empty
+     * the content is the same, ignoring whitespace, so there are no edits and nothing is approximated.
+     *
+     * @param entry the diff entry.
+     * @param region the region between the common start and end of the old and new content.
+     * @param reason the reason the file was not diffed.
+     * @return the edits.
+     */
+    @Nonnull
+    private EditList getCoarseEdits(final DiffEntry entry, final Edit region, final String reason)
+    {
+        final EditList edits = new EditList(1);
+        if (region.isEmpty())
+        {
+            return edits;
+        }
+        log.warn(String.format("Not diffing %s because %s, treating lines %d-%d as changed.", entry.getNewPath(), reason,
+                               region.getBeginB() + 1, region.getEndB()));
+        approximate = true;
+        edits.add(region);
+        return edits;
+    }
+
+    /**
+     * Returns an edit list that treats the whole of the changed region of a large file as replaced. The changed region is found from the
+     * hashes of the lines of each side, which are streamed so that neither side is held in memory.
+     *
+     * @param entry the diff entry.
+     * @param maxFileSize the size above which files are not loaded into memory.
+     * @return the edits.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private EditList getLargeFileEdits(final DiffEntry entry, final long maxFileSize) throws IOException
+    {
+        final long[] a = hashLines(DiffEntry.Side.OLD, entry);
+        final long[] b = hashLines(DiffEntry.Side.NEW, entry);
+        if (a == null || b == null)
+        {
+            return new EditList();
+        }
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix])
+        {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix && a[a.length - 1 - suffix] == b[b.length - 1 - suffix])
+        {
+            suffix++;
+        }
+        return getCoarseEdits(entry, new Edit(prefix, a.length - suffix, prefix, b.length - suffix),
+                              "it is larger than " + maxFileSize + " bytes");
+    }
+
+    /**
+     * Returns the size of the content of one side of the given diff entry, without reading it.
+     *
+     * @param side the side.
+     * @param entry the diff entry.
+     * @return the size in bytes, zero if the side is not a file.
+     * @throws IOException if an I/O error occurs.
+     */
+    private long getSize(final DiffEntry.Side side, final DiffEntry entry) throws IOException
+    {
+        final FileMode mode = entry.getMode(side);
+        if (mode == FileMode.MISSING || mode.getObjectType() != Constants.OBJ_BLOB)
+        {
+            return 0;
+        }
+        return source.size(side, entry);
+    }
+
+    /**
+     * Hashes each line of the content of one side of the given diff entry, ignoring whitespace as the comparator does, by streaming the
+     * content. Lines are split as {@link RawText} splits them, and 64 bit hashes are used so that lines with the same hash are almost
+     * certainly the same.
+     *
+     * @param side the side.
+     * @param entry the diff entry.
+     * @return the line hashes, or {@code null} if the content is binary.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @SuppressFBWarnings(value = "PZLA_PREFER_ZERO_LENGTH_ARRAYS", justification = "Binary content has no lines to compare.")
+    private long[] hashLines(final DiffEntry.Side side, final DiffEntry entry) throws IOException
+    {
+        final FileMode mode = entry.getMode(side);
+        if (mode == FileMode.MISSING || mode.getObjectType() != Constants.OBJ_BLOB)
+        {
+            return new long[0];
+        }
+        final ObjectLoader loader = source.open(side, entry);
+        long[] hashes = new long[(int) Math.min(loader.getSize() / 40 + 1, Integer.MAX_VALUE - 8)];
+        int lineCount = 0;
+        long hash = FNV_OFFSET_BASIS;
+        boolean lineStarted = false;
+        long position = 0;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = loader.openStream())
+        {
+            for (int length = input.read(buffer); length >= 0; length = input.read(buffer))
+            {
+                if (position < BINARY_CHECK_SIZE && RawText.isBinary(buffer, (int) Math.min(length, BINARY_CHECK_SIZE - position)))
+                {
+                    return null;
+                }
+                position += length;
+                for (int i = 0; i < length; i++)
+                {
+                    final byte c = buffer[i];
+                    if (c == '\n')
+                    {
+                        if (lineCount == hashes.length)
+                        {
+                            hashes = Arrays.copyOf(hashes, hashes.length + (hashes.length >> 1) + 1);
+                        }
+                        hashes[lineCount++] = hash;
+                        hash = FNV_OFFSET_BASIS;
+                        lineStarted = false;
+                    }
+                    else
+                    {
+                        lineStarted = true;
+                        if (!RawCharUtil.isWhitespace(c))
+                        {
+                            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+                        }
+                    }
+                }
+            }
+        }
+        if (lineStarted)
+        {
+            // The last line has no line terminator.
+            hashes = Arrays.copyOf(hashes, lineCount + 1);
+            hashes[lineCount++] = hash;
+        }
+        return lineCount == hashes.length ? hashes : Arrays.copyOf(hashes, lineCount);
+    }
+
+    /**
+     * Opens the content of one side of the given diff entry.
+     *
+     * @param side the side.
+     * @param entry the diff entry.
+     * @return the content.
+     * @throws IOException if an I/O error occurs.
+     * @throws BinaryBlobException if the content is binary or too large to diff.
+     */
+    @Nonnull
+    private RawText open(final DiffEntry.Side side, final DiffEntry entry) throws IOException, BinaryBlobException
+    {
+        final FileMode mode = entry.getMode(side);
+        if (mode == FileMode.MISSING || mode.getObjectType() != Constants.OBJ_BLOB)
+        {
+            return RawText.EMPTY_TEXT;
+        }
+        return RawText.load(source.open(side, entry), PackConfig.DEFAULT_BIG_FILE_THRESHOLD);
+    }
+
+    /**
+     * Thrown when diffing a file takes longer than the time budget.
+     */
+    private static final class BudgetExceededException extends RuntimeException
+    {
+        /** The serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor.
+         */
+        BudgetExceededException()
+        {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Comparator that looks up the hashes of the lines of the old and new content, rather than computing them, and compares the hashes of
+     * lines before their content.
+     */
+    private static final class HashedComparator extends SequenceComparator<RawText>
+    {
+        /** The old content. */
+        private final RawText a;
+
+        /** The new content. */
+        private final RawText b;
+
+        /** The line hashes of the old content. */
+        private final int[] hashesA;
+
+        /** The line hashes of the new content. */
+        private final int[] hashesB;
+
+        /**
+         * Constructor.
+         *
+         * @param a the old content.
+         * @param hashesA the line hashes of the old content.
+         * @param b the new content.
+         * @param hashesB the line hashes of the new content.
+         */
+        HashedComparator(final RawText a, final int[] hashesA, final RawText b, final int[] hashesB)
+        {
+            this.a = a;
+            this.hashesA = hashesA;
+            this.b = b;
+            this.hashesB = hashesB;
+        }
+
+        @Override
+        public boolean equals(final RawText x, final int xi, final RawText y, final int yi)
+        {
+            return getHashes(x)[xi] == getHashes(y)[yi] && COMPARATOR.equals(x, xi, y, yi);
+        }
+
+        @Override
+        public int hash(final RawText seq, final int ptr)
+        {
+            return getHashes(seq)[ptr];
+        }
+
+        @Override
+        public Edit reduceCommonStartEnd(final RawText x, final RawText y, final Edit e)
+        {
+            return COMPARATOR.reduceCommonStartEnd(x, y, e);
+        }
+
+        /**
+         * Returns the line hashes of the given content. The diff algorithms only compare lines of the sequences they are given, even when
+         * working on a part of them.
+         *
+         * @param seq the old or new content.
+         * @return the line hashes.
+         */
+        @Nonnull
+        private int[] getHashes(final RawText seq)
+        {
+            if (seq == a)
+            {
+                return hashesA;
+            }
+            if (seq == b)
+            {
+                return hashesB;
+            }
+            throw new IllegalArgumentException("Not the old or new content.");
+        }
+    }
+
+    /**
+     * Comparator that checks the time budget every so often as lines are compared, so that the diff algorithm can be abandoned part way.
+     */
+    private static final class BudgetedComparator extends SequenceComparator<RawText>
+    {
+        /** The number of comparisons between checks of the clock. */
+        private static final int CHECK_INTERVAL = 4096;
+
+        /** The number of comparisons since the clock was last checked. */
+        private int comparisons;
+
+        /** The comparator to delegate to. */
+        private final SequenceComparator<RawText> comparator;
+
+        /** The {@link System#nanoTime()} after which the budget is exceeded. */
+        private final long deadline;
+
+        /**
+         * Constructor.
+         *
+         * @param comparator the comparator to delegate to.
+         * @param deadline the {@link System#nanoTime()} after which the budget is exceeded.
+         */
+        BudgetedComparator(final SequenceComparator<RawText> comparator, final long deadline)
+        {
+            this.comparator = comparator;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean equals(final RawText a, final int ai, final RawText b, final int bi)
+        {
+            if (++comparisons == CHECK_INTERVAL)
+            {
+                comparisons = 0;
+                if (System.nanoTime() - deadline > 0)
+                {
+                    throw new BudgetExceededException();
+                }
+            }
+            return comparator.equals(a, ai, b, bi);
+        }
+
+        @Override
+        public int hash(final RawText seq, final int ptr)
+        {
+            return comparator.hash(seq, ptr);
+        }
+
+        @Override
+        public Edit reduceCommonStartEnd(final RawText a, final RawText b, final Edit e)
+        {
+            return comparator.reduceCommonStartEnd(a, b, e);
+        }
+    }
+}
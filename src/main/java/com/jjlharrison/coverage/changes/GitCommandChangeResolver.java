@@ -0,0 +1,319 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import com.jjlharrison.coverage.changes.diff.ProjectChanges;
+import com.jjlharrison.coverage.changes.diff.ProjectChangesBuilder;
+
+/**
+ * Change resolver that resolves changes from the output of the {@code git} command.
+ * <p>
+ * The merge base is resolved as by {@link GitDiffChangeResolver}, but the diff itself is computed by running {@code git diff --unified=0}
+ * in the repository, once per build for the source roots of all the modules in the reactor. Its output is streamed through a {@link
+ * UnifiedDiffParser}, so only the hunk headers, which are all the changes are made of, are read into memory. Untracked files are listed
+ * with {@code git ls-files} if the working tree is the diff target. Whitespace is ignored and renames are detected as they are by JGit.
+ * The working tree is not otherwise scanned and the changes are not cached, since that would take as long as running the command.
+ */
+public class GitCommandChangeResolver implements ChangeResolver
+{
+    /** The Git executable. */
+    private static final String GIT = "git";
+
+    /** The compile source roots to check. */
+    private final Collection<String> compileSourceRoots;
+
+    /** The logger. */
+    private final Logger log;
+
+    /** The resolver that resolves the merge base. */
+    private final GitDiffChangeResolver mergeBaseResolver;
+
+    /** The project base directory path. */
+    private final String projectBaseDirectoryPath;
+
+    /** The Git diff session shared with the other modules of the build. */
+    private final GitDiffSession session;
+
+    /** The settings. */
+    private final GitDiffSettings settings;
+
+    /** The globs that select the source files within the source roots. */
+    private final SourceFileGlobs sourceFileGlobs;
+
+    /**
+     * Constructor.
+     *
+     * @param session the Git diff session shared with the other modules of the build.
+     * @param projectBaseDirectoryPath the project base directory path.
+     * @param compileSourceRoots the compile source roots to check.
+     * @param log the logger.
+     */
+    public GitCommandChangeResolver(final GitDiffSession session, final String projectBaseDirectoryPath,
+                                    final Collection<String> compileSourceRoots, final Logger log)
+    {
+        this.session = session;
+        this.projectBaseDirectoryPath = projectBaseDirectoryPath;
+        this.compileSourceRoots = compileSourceRoots;
+        this.settings = session.getSettings();
+        this.sourceFileGlobs = new SourceFileGlobs(settings.getIncludes(), settings.getExcludes());
+        this.mergeBaseResolver = new GitDiffChangeResolver(session, projectBaseDirectoryPath, compileSourceRoots, log);
+        this.log = log;
+    }
+
+    @Override
+    public ProjectChanges resolve() throws IOException
+    {
+        final ProjectChangesBuilder builder = new ProjectChangesBuilder();
+        if (compileSourceRoots.isEmpty())
+        {
+            return builder.build();
+        }
+        final URI repositoryRootDirectoryUri = session.getRepositoryRootDirectoryUri();
+        final URI moduleRootDirectoryUri = new File(projectBaseDirectoryPath).toURI();
+        final String repositoryRelativeModulePath = repositoryRootDirectoryUri.relativize(moduleRootDirectoryUri).getPath();
+        final List<String> repositoryRelativeSourceRoots = compileSourceRoots.stream()
+                                                               .map(File::new)
+                                                               .map(File::toURI)
+                                                               .map(repositoryRootDirectoryUri::relativize)
+                                                               .filter(u -> !u.isAbsolute())
+                                                               .map(URI::getPath)
+                                                               .collect(Collectors.toList());
+        final List<String> repositoryRelativeModuleSourceRoots = session.getSourceRootsToScan(repositoryRelativeSourceRoots, log).stream()
+                                                                     .filter(r -> r.startsWith(repositoryRelativeModulePath))
+                                                                     .collect(Collectors.toList());
+        if (!repositoryRelativeModuleSourceRoots.isEmpty())
+        {
+            final SourceRootTrie moduleSourceRoots = new SourceRootTrie(repositoryRelativeModuleSourceRoots, sourceFileGlobs);
+            session.getCommandDiff(this, repositoryRelativeModuleSourceRoots)
+                .apply(new SourceRootChangesHandler(moduleSourceRoots, builder));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Runs {@code git diff} and, if the working tree is the diff target, {@code git ls-files} within the given source roots, passing the
+     * files they find to the given handler.
+     *
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @param handler the handler of the changed files.
+     * @throws IOException if an I/O error occurs or a command fails.
+     */
+    void diff(final Collection<String> repositoryRelativeSourceRoots, final UnifiedDiffParser.Handler handler) throws IOException
+    {
+        final RevCommit mergeBase = session.getMergeBase(mergeBaseResolver);
+        final List<String> diffCommand = getDiffCommand(mergeBase, repositoryRelativeSourceRoots);
+        log.debug("Running " + String.join(" ", diffCommand));
+        run(diffCommand, output -> new UnifiedDiffParser(output, handler).parse());
+        if (settings.getDiffTarget() == DiffTarget.WORKING_TREE)
+        {
+            final List<String> untrackedCommand = getUntrackedFilesCommand(repositoryRelativeSourceRoots);
+            log.debug("Running " + String.join(" ", untrackedCommand));
+            run(untrackedCommand, output -> {
+                for (final String path : splitNullTerminated(IOUtils.toByteArray(output)))
+                {
+                    handler.file(ChangeType.ADD, null, path, new EditList());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the command that diffs the merge base with the diff target within the given source roots.
+     *
+     * @param mergeBase the merge base.
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the command.
+     */
+    protected List<String> getDiffCommand(final RevCommit mergeBase, final Collection<String> repositoryRelativeSourceRoots)
+    {
+        final List<String> command = newCommand("diff");
+        // Override any configuration that would change the output from what the parser expects.
+        command.add("--unified=0");
+        command.add("--no-color");
+        command.add("--no-ext-diff");
+        command.add("--no-textconv");
+        command.add("--src-prefix=a/");
+        command.add("--dst-prefix=b/");
+        command.add("--ignore-submodules");
+        command.add("--ignore-all-space");
+        if (settings.getDiffAlgorithm() != null)
+        {
+            command.add("--diff-algorithm=" + settings.getDiffAlgorithm().name().toLowerCase(Locale.ROOT));
+        }
+        if (settings.getRenameLimit() > 0)
+        {
+            command.add("--find-renames=" + settings.getRenameScore() + "%");
+            command.add("-l" + settings.getRenameLimit());
+        }
+        else
+        {
+            command.add("--no-renames");
+        }
+        if (settings.getDiffTarget() == DiffTarget.INDEX)
+        {
+            command.add("--cached");
+        }
+        command.add(mergeBase.name());
+        if (settings.getDiffTarget() == DiffTarget.HEAD)
+        {
+            command.add(Constants.HEAD);
+        }
+        addPathspecs(command, repositoryRelativeSourceRoots);
+        return command;
+    }
+
+    /**
+     * Returns the command that lists the untracked files that are not ignored within the given source roots.
+     *
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the command.
+     */
+    protected List<String> getUntrackedFilesCommand(final Collection<String> repositoryRelativeSourceRoots)
+    {
+        final List<String> command = newCommand("ls-files");
+        command.add("-z");
+        command.add("--others");
+        command.add("--exclude-standard");
+        addPathspecs(command, repositoryRelativeSourceRoots);
+        return command;
+    }
+
+    /**
+     * Returns a new Git command that runs the given subcommand with pathspecs taken literally.
+     *
+     * @param subcommand the subcommand.
+     * @return the command.
+     */
+    private static List<String> newCommand(final String subcommand)
+    {
+        final List<String> command = new ArrayList<>();
+        command.add(GIT);
+        command.add("-c");
+        command.add("core.quotePath=false");
+        command.add("--literal-pathspecs");
+        command.add(subcommand);
+        return command;
+    }
+
+    /**
+     * Adds the given source roots to a command as pathspecs. The repository root is not a valid literal pathspec, so if it is a source
+     * root no pathspecs are added.
+     *
+     * @param command the command.
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     */
+    private static void addPathspecs(final List<String> command, final Collection<String> repositoryRelativeSourceRoots)
+    {
+        command.add("--");
+        if (repositoryRelativeSourceRoots.stream().noneMatch(r -> r.isEmpty() || "/".equals(r)))
+        {
+            repositoryRelativeSourceRoots.forEach(command::add);
+        }
+    }
+
+    /**
+     * Splits the output of a command run with {@code -z} into paths.
+     *
+     * @param output the output.
+     * @return the paths.
+     */
+    private static List<String> splitNullTerminated(final byte[] output)
+    {
+        final List<String> paths = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < output.length; i++)
+        {
+            if (output[i] == 0)
+            {
+                if (i > start)
+                {
+                    paths.add(RawParseUtils.decode(StandardCharsets.UTF_8, output, start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Runs a Git command in the repository's working tree, passing its standard output to the given consumer.
+     *
+     * @param command the command.
+     * @param consumer the consumer of the standard output, which must read it to its end.
+     * @throws IOException if an I/O error occurs or the command fails.
+     */
+    private void run(final List<String> command, final OutputConsumer consumer) throws IOException
+    {
+        final File errorFile = File.createTempFile("git", ".err");
+        try
+        {
+            final Process process = new ProcessBuilder(command).directory(session.getRepository().getWorkTree())
+                                        .redirectError(errorFile)
+                                        .start();
+            try
+            {
+                process.getOutputStream().close();
+                try (InputStream output = new BufferedInputStream(process.getInputStream()))
+                {
+                    consumer.accept(output);
+                }
+                final int exitCode = process.waitFor();
+                if (exitCode != 0)
+                {
+                    throw new IOException(String.join(" ", command) + " failed with exit code " + exitCode + ": "
+                                          + new String(Files.readAllBytes(errorFile.toPath()), StandardCharsets.UTF_8).trim());
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException exception = new InterruptedIOException("Interrupted running " + String.join(" ", command));
+                exception.initCause(e);
+                throw exception;
+            }
+            finally
+            {
+                // Stops the command if its output was not read to the end, e.g. because the consumer failed.
+                process.destroy();
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(errorFile.toPath());
+        }
+    }
+
+    /**
+     * Consumer of the standard output of a command.
+     */
+    @FunctionalInterface
+    private interface OutputConsumer
+    {
+        /**
+         * Consumes the standard output.
+         *
+         * @param output the standard output.
+         * @throws IOException if an I/O error occurs.
+         */
+        void accept(InputStream output) throws IOException;
+    }
+}
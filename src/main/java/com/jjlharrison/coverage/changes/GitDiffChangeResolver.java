@@ -1,58 +1,72 @@
 package com.jjlharrison.coverage.changes;
 
-import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
 import static org.eclipse.jgit.lib.Constants.R_REMOTES;
 import static org.eclipse.jgit.lib.Repository.shortenRefName;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ListBranchCommand;
-import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.Edit;
-import org.eclipse.jgit.diff.RawTextComparator;
-import org.eclipse.jgit.lib.BranchTrackingStatus;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.BranchConfig;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.patch.FileHeader;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevTree;
 import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.revwalk.filter.RevFilter;
 import org.eclipse.jgit.treewalk.AbstractTreeIterator;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.FileTreeIterator;
-import org.eclipse.jgit.treewalk.filter.OrTreeFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import com.jjlharrison.coverage.changes.diff.ProjectChanges;
+import com.jjlharrison.coverage.changes.diff.ProjectChangesBuilder;
+import com.jjlharrison.coverage.changes.diff.ProjectChangesCache;
+import com.jjlharrison.coverage.changes.graph.CommitGraphWalk;
 
 /**
  * Change resolver that resolves changes from a Git diff.
  */
-public class GitDiffChangeResolver
+public class GitDiffChangeResolver implements ChangeResolver
 {
+    /**
+     * Whether any of the changes resolved so far treat the changed region of a file as changed in its entirety because it exceeded a diff
+     * budget. Such changes depend on the budgets, and on timing for the time budget, so are not cached.
+     */
+    private boolean approximate;
+
     /** The branch to compare with. */
     private String compareBranch;
 
@@ -68,118 +82,667 @@ public class GitDiffChangeResolver
     /** The Git repository. */
     private Repository repository;
 
+    /** The Git diff session shared with the other modules of the build. */
+    private GitDiffSession session;
+
+    /** The settings. */
+    private GitDiffSettings settings;
+
+    /** The globs that select the source files within the source roots. */
+    private SourceFileGlobs sourceFileGlobs;
+
     /**
      * Constructor.
      *
-     * @param repository the Git Repository.
+     * @param session the Git diff session shared with the other modules of the build.
      * @param projectBaseDirectoryPath the project base directory path.
-     * @param compareBranch the branch to compare with.
      * @param compileSourceRoots the compile source roots to check.
      * @param log the logger.
      */
-    public GitDiffChangeResolver(final Repository repository, final String projectBaseDirectoryPath, final String compareBranch,
+    public GitDiffChangeResolver(final GitDiffSession session, final String projectBaseDirectoryPath,
                                  final Collection<String> compileSourceRoots, final Logger log)
     {
+        this.session = session;
         this.projectBaseDirectoryPath = projectBaseDirectoryPath;
-        this.compareBranch = compareBranch;
+        this.settings = session.getSettings();
+        this.compareBranch = settings.getCompareBranch();
+        this.sourceFileGlobs = new SourceFileGlobs(settings.getIncludes(), settings.getExcludes());
         this.compileSourceRoots = compileSourceRoots;
-        this.repository = repository;
+        this.repository = session.getRepository();
         this.log = log;
     }
 
+    @Override
+    public ProjectChanges resolve() throws IOException
+    {
+        if (!compileSourceRoots.isEmpty())
+        {
+            final URI repositoryRootDirectoryUri = session.getRepositoryRootDirectoryUri();
+            final URI moduleRootDirectoryUri = new File(projectBaseDirectoryPath).toURI();
+            final String repositoryRelativeModulePath = repositoryRootDirectoryUri.relativize(moduleRootDirectoryUri).getPath();
+
+            // Drop source roots that can't contain changes (e.g. generated sources ignored by Git), so that they are never walked.
+            final List<String> repositoryRelativeSourceRoots = session.getSourceRootsToScan(compileSourceRoots.stream()
+                                                                                                .map(File::new)
+                                                                                                .map(File::toURI)
+                                                                                                .map(repositoryRootDirectoryUri::relativize)
+                                                                                                .filter(u -> !u.isAbsolute())
+                                                                                                .map(URI::getPath)
+                                                                                                .collect(Collectors.toList()), log);
+            final List<String> repositoryRelativeModuleSourceRoots = repositoryRelativeSourceRoots.stream()
+                                                                               .filter(r -> r.startsWith(repositoryRelativeModulePath))
+                                                                               .collect(Collectors.toList());
+            final String cacheKey = settings.getCacheSize() > 0 ? getCacheKey(repositoryRelativeSourceRoots) : null;
+            final ProjectChangesCache cache = new ProjectChangesCache(settings.getCacheDirectory(), settings.getCacheSize());
+            ProjectChanges changes = cacheKey == null ? null : cache.get(cacheKey);
+            if (changes != null)
+            {
+                log.info("Using cached changes.");
+                return changes;
+            }
+            // Most modules of a large reactor have no changes, which comparing tree ids shows without diffing anything. This needs the
+            // merge base and scans the working tree, so it is only done when the changes are not cached.
+            if (session.isUnchanged(this, repositoryRelativeModuleSourceRoots))
+            {
+                log.debug("Source roots are unchanged since the merge base.");
+                changes = new ProjectChanges(Collections.emptyMap(), Collections.emptySet());
+            }
+            else
+            {
+                final SourceRootTrie moduleSourceRoots = new SourceRootTrie(repositoryRelativeModuleSourceRoots, sourceFileGlobs);
+                changes = resolve(repositoryRelativeModuleSourceRoots, moduleSourceRoots, repositoryRelativeSourceRoots);
+            }
+            if (cacheKey != null)
+            {
+                putIfExact(cache, cacheKey, new ProjectChangesCache.Entry("", changes));
+            }
+            return changes;
+        }
+        return new ProjectChanges(Collections.emptyMap(), Collections.emptySet());
+    }
+
     /**
-     * Resolves the changes.
+     * Resolves the changes within the given source roots from the Git diff.
      *
+     * @param repositoryRelativeModuleSourceRoots the source roots within the module relative to the Git repository root.
+     * @param moduleSourceRoots the source roots within the module.
+     * @param repositoryRelativeSourceRoots the source roots within the Git repository relative to the Git repository root.
      * @return the changes.
      * @throws IOException if an I/O error occurs.
      */
-    public ProjectChanges resolve() throws IOException
+    protected ProjectChanges resolve(final List<String> repositoryRelativeModuleSourceRoots, final SourceRootTrie moduleSourceRoots,
+                                     final List<String> repositoryRelativeSourceRoots) throws IOException
     {
-        if (!compileSourceRoots.isEmpty())
+        if (settings.isIncremental() && settings.getCacheSize() > 0 && !repositoryRelativeSourceRoots.isEmpty())
         {
-            final URI repositoryRootDirectoryUri = repository.getDirectory().toURI().resolve("..");
-            final URI moduleRootDirectoryUri = new File(projectBaseDirectoryPath).toURI();
-            final URI repositoryRelativeModuleUri = repositoryRootDirectoryUri.relativize(moduleRootDirectoryUri);
+            return resolveIncrementally(moduleSourceRoots, repositoryRelativeSourceRoots);
+        }
+        return applyDiffEntries(new ProjectChangesBuilder(), session.getDiffEntries(this, repositoryRelativeSourceRoots),
+                                isWorkingTreeTarget(), moduleSourceRoots);
+    }
 
-            final String longBranchName = resolveCompareBranch();
+    /**
+     * Resolves the changes within the given source roots by updating the changes resolved for an earlier commit.
+     * <p>
+     * The changes between the merge base and the most recently resolved commit on the current branch are cached. If that commit is an
+     * ancestor of HEAD, only the commits since then are diffed, and the changed lines are mapped through their edits. Otherwise the changes
+     * between the merge base and HEAD are resolved from scratch. The changes between HEAD and the working tree or index, if either is the
+     * diff target, are then applied on top.
+     *
+     * @param moduleSourceRoots the source roots within the module.
+     * @param repositoryRelativeSourceRoots the source roots within the Git repository relative to the Git repository root.
+     * @return the changes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private ProjectChanges resolveIncrementally(final SourceRootTrie moduleSourceRoots, final List<String> repositoryRelativeSourceRoots)
+        throws IOException
+    {
+        final RevCommit mergeBase = session.getMergeBase(this);
+        final ProjectChangesCache cache = new ProjectChangesCache(settings.getCacheDirectory(), settings.getCacheSize());
+        final MessageDigest digest = newCacheKeyDigest(repositoryRelativeSourceRoots);
+        updateDigest(digest, "incremental");
+        updateDigest(digest, mergeBase.name());
+        final String cacheKey = ObjectId.fromRaw(digest.digest()).name();
+        final RevCommit head = repository.parseCommit(repository.resolve(Constants.HEAD));
+        final ProjectChangesCache.Entry entry = cache.getEntry(cacheKey);
+        final RevCommit base = entry == null ? null : findBranchCommit(mergeBase, head, entry.getRevision());
+        ProjectChanges headChanges;
+        if (base == null)
+        {
+            headChanges = new ProjectChangesBuilder().build();
+            log.debug("No earlier changes to update, resolving changes since " + mergeBase.abbreviate(8).name() + ".");
+        }
+        else
+        {
+            headChanges = entry.getChanges();
+            log.info("Updating changes resolved for " + base.abbreviate(8).name() + ".");
+        }
+        final RevCommit from = base == null ? mergeBase : base;
+        if (base == null || !base.equals(head))
+        {
+            // The commits since the earlier resolution are diffed once for all the modules of the build.
+            final List<DiffEntry> entries = session.getDiffEntries(this, from, head, repositoryRelativeSourceRoots);
+            headChanges = applyDiffEntries(new ProjectChangesBuilder(headChanges), entries, false, moduleSourceRoots);
+            putIfExact(cache, cacheKey, new ProjectChangesCache.Entry(head.name(), headChanges));
+        }
+        if (settings.getDiffTarget() == DiffTarget.HEAD)
+        {
+            return headChanges;
+        }
+        return applyDiffEntries(new ProjectChangesBuilder(headChanges),
+                                session.getDiffEntries(this, head, null, repositoryRelativeSourceRoots), isWorkingTreeTarget(),
+                                moduleSourceRoots);
+    }
+
+    /**
+     * Caches the given entry, unless any of the changes resolved so far are approximate because a file exceeded a diff budget.
+     *
+     * @param cache the cache.
+     * @param cacheKey the key to cache the entry with.
+     * @param entry the entry.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void putIfExact(final ProjectChangesCache cache, final String cacheKey, final ProjectChangesCache.Entry entry)
+        throws IOException
+    {
+        if (approximate)
+        {
+            log.debug("Not caching the changes, since some files were not diffed.");
+        }
+        else
+        {
+            cache.put(cacheKey, entry);
+        }
+    }
 
-            if (longBranchName == null)
+    /**
+     * Finds the commit with the given id if it is on the current branch, i.e. if it is the merge base or is reachable from HEAD but not
+     * from the merge base.
+     *
+     * @param mergeBase the merge base.
+     * @param head the HEAD commit.
+     * @param id the commit id.
+     * @return the commit, or {@code null} if it is not on the current branch.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    private RevCommit findBranchCommit(final RevCommit mergeBase, final RevCommit head, final String id) throws IOException
+    {
+        if (!ObjectId.isId(id))
+        {
+            return null;
+        }
+        final ObjectId commitId = ObjectId.fromString(id);
+        if (commitId.equals(mergeBase))
+        {
+            return mergeBase;
+        }
+        if (repository.getObjectDatabase().has(commitId) && session.isAncestor(commitId, head) && !session.isAncestor(commitId, mergeBase))
+        {
+            return repository.parseCommit(commitId);
+        }
+        return null;
+    }
+
+    /**
+     * Whether the given source root is unchanged between the merge base and the diff target.
+     * <p>
+     * This is a quick check that avoids diffing modules without changes, which in a large reactor are most of them. The ids of the source
+     * root's tree in the merge base and in HEAD are compared, which only reads the trees on the path to the source root. Then, depending
+     * on the diff target, the index entries or the stat information of the working tree files within the source root are compared with
+     * HEAD, without reading any file content. Untracked files that are ignored by Git are not changes, as in the scan of the working tree.
+     *
+     * @param mergeBase the merge base.
+     * @param sourceRoot the repository relative source root, without a trailing slash.
+     * @return whether the source root is unchanged.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected boolean isUnchanged(final RevCommit mergeBase, final String sourceRoot) throws IOException
+    {
+        final ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+        if (headTree == null || sourceRoot.isEmpty())
+        {
+            return false;
+        }
+        try (ObjectReader reader = repository.newObjectReader();
+             TreeWalk mergeBaseWalk = TreeWalk.forPath(reader, sourceRoot, mergeBase.getTree());
+             TreeWalk headWalk = TreeWalk.forPath(reader, sourceRoot, headTree))
+        {
+            final ObjectId mergeBaseId = mergeBaseWalk == null ? null : mergeBaseWalk.getObjectId(0);
+            final ObjectId headId = headWalk == null ? null : headWalk.getObjectId(0);
+            if (!Objects.equals(mergeBaseId, headId))
+            {
+                return false;
+            }
+        }
+        if (settings.getDiffTarget() == DiffTarget.INDEX)
+        {
+            try (TreeWalk walk = new TreeWalk(repository))
+            {
+                walk.addTree(headTree);
+                walk.addTree(new DirCacheIterator(repository.readDirCache()));
+                walk.setRecursive(true);
+                walk.setFilter(AndTreeFilter.create(PathFilter.create(sourceRoot), TreeFilter.ANY_DIFF));
+                return !walk.next();
+            }
+        }
+        else if (isWorkingTreeTarget())
+        {
+            final IndexDiff indexDiff = new IndexDiff(repository, headTree, new FileTreeIterator(repository));
+            indexDiff.setFilter(PathFilter.create(sourceRoot));
+            // Ignored files are reported separately from the changes, and are not diffed by the scan either.
+            return !indexDiff.diff();
+        }
+        return true;
+    }
+
+    /**
+     * Applies the changes described by the given diff entries within the module's source roots to the given builder.
+     *
+     * @param builder the builder.
+     * @param diffEntries the diff entries, which may include entries from outside the module.
+     * @param workingTree whether the new side of the diff entries is the working tree, rather than a commit.
+     * @param moduleSourceRoots the source roots within the module.
+     * @return the changes.
+     * @throws IOException if an I/O error occurs.
+     */
+    private ProjectChanges applyDiffEntries(final ProjectChangesBuilder builder, final List<DiffEntry> diffEntries,
+                                            final boolean workingTree, final SourceRootTrie moduleSourceRoots) throws IOException
+    {
+        final Map<DiffEntry, List<String>> moduleDiffEntries = new LinkedHashMap<>();
+        for (final DiffEntry entry : diffEntries)
+        {
+            final List<String> sourceRootRelativeFiles = moduleSourceRoots.getRelativePaths(getPath(entry));
+            if (!sourceRootRelativeFiles.isEmpty())
+            {
+                moduleDiffEntries.put(entry, sourceRootRelativeFiles);
+            }
+        }
+        final Map<DiffEntry, EditList> editsByEntry = getEdits(moduleDiffEntries.keySet().stream()
+                                                                   .filter(GitDiffChangeResolver::hasEdits)
+                                                                   .collect(Collectors.toList()), workingTree);
+        for (final Map.Entry<DiffEntry, List<String>> entry : moduleDiffEntries.entrySet())
+        {
+            final DiffEntry diffEntry = entry.getKey();
+            // The file may have been moved from outside the module's source roots, in which case it has no earlier changes to carry over.
+            final List<String> sourceRootRelativeOldFiles = isRenameOrCopy(diffEntry)
+                                                            ? moduleSourceRoots.getRelativePaths(diffEntry.getOldPath())
+                                                            : Collections.emptyList();
+            final String sourceRootRelativeOldFile = sourceRootRelativeOldFiles.isEmpty() ? null : sourceRootRelativeOldFiles.get(0);
+            for (final String sourceRootRelativeFile : entry.getValue())
+            {
+                processDiffEntry(diffEntry, editsByEntry.get(diffEntry), sourceRootRelativeFile, sourceRootRelativeOldFile, builder);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the key to cache the changes within the given source roots with.
+     * <p>
+     * The key is a digest of HEAD, the commit the branch to compare with points to, the settings, the source roots and the state of any
+     * files within the source roots that differ between HEAD and the working tree (their index entries and working tree stat
+     * information) if the working tree is the diff target, or of any staged files within the source roots (their paths and index entries)
+     * if the index is the diff target. The merge base is not part of the key since it is determined by HEAD and the
+     * branch to compare with, and resolving it is one of the costs the cache avoids.
+     *
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the key, or {@code null} if the changes cannot be cached (e.g. because there are no commits yet).
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    protected String getCacheKey(final List<String> repositoryRelativeSourceRoots) throws IOException
+    {
+        final ObjectId head = repository.resolve(Constants.HEAD);
+        final String compareRevision = session.getCompareBranch(this);
+        final ObjectId compareId = compareRevision == null ? null : repository.resolve(compareRevision);
+        if (head == null || compareId == null)
+        {
+            return null;
+        }
+        final MessageDigest digest = newCacheKeyDigest(repositoryRelativeSourceRoots);
+        final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+        head.copyRawTo(id, 0);
+        digest.update(id);
+        compareId.copyRawTo(id, 0);
+        digest.update(id);
+        if (settings.getDiffTarget() == DiffTarget.INDEX && !repositoryRelativeSourceRoots.isEmpty())
+        {
+            updateDigestWithStagedFiles(digest, head, repositoryRelativeSourceRoots);
+        }
+        else if (isWorkingTreeTarget() && !repositoryRelativeSourceRoots.isEmpty())
+        {
+            final DirCache dirCache = repository.readDirCache();
+            for (final String path : getDirtyPaths(head, repositoryRelativeSourceRoots))
+            {
+                updateDigest(digest, path);
+                final DirCacheEntry entry = dirCache.getEntry(path);
+                if (entry != null)
+                {
+                    entry.getObjectId().copyRawTo(id, 0);
+                    digest.update(id);
+                }
+                final File file = new File(repository.getWorkTree(), path);
+                updateDigest(digest, file.length() + ":" + file.lastModified());
+            }
+        }
+        return ObjectId.fromRaw(digest.digest()).name();
+    }
+
+    /**
+     * Returns a new digest for a cache key, updated with the settings that affect the changes resolved and the given source roots.
+     * <p>
+     * Settings that only affect how the changes are resolved, such as the parallelism and the caches, are left out so that changing them
+     * does not invalidate the cache. So are the diff budgets, since changes that exceeded a budget are never cached, and otherwise the
+     * budgets make no difference.
+     *
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the digest.
+     */
+    @Nonnull
+    private MessageDigest newCacheKeyDigest(final Collection<String> repositoryRelativeSourceRoots)
+    {
+        final MessageDigest digest = Constants.newMessageDigest();
+        updateDigest(digest, "compareBranch=" + settings.getCompareBranch() + ", diffAlgorithm=" + settings.getDiffAlgorithm()
+                             + ", diffBackend=" + settings.getDiffBackend() + ", diffTarget=" + settings.getDiffTarget() + ", excludes="
+                             + settings.getExcludes() + ", includes=" + settings.getIncludes() + ", incremental=" + settings.isIncremental()
+                             + ", indexStatScan=" + settings.isIndexStatScan() + ", renameLimit=" + settings.getRenameLimit()
+                             + ", renameScore=" + settings.getRenameScore());
+        new TreeSet<>(repositoryRelativeSourceRoots).forEach(r -> updateDigest(digest, r));
+        return digest;
+    }
+
+    /**
+     * Updates the given digest with the paths and index entries of the files within the given source roots that differ between HEAD and
+     * the index. Only the index is read, not the working tree.
+     *
+     * @param digest the digest.
+     * @param head the HEAD commit.
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void updateDigestWithStagedFiles(final MessageDigest digest, final ObjectId head,
+                                             final Collection<String> repositoryRelativeSourceRoots) throws IOException
+    {
+        try (TreeWalk walk = new TreeWalk(repository))
+        {
+            walk.addTree(repository.parseCommit(head).getTree());
+            walk.addTree(new DirCacheIterator(repository.readDirCache()));
+            walk.setRecursive(true);
+            walk.setFilter(AndTreeFilter.create(createSourceRootFilter(repositoryRelativeSourceRoots), TreeFilter.ANY_DIFF));
+            final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            while (walk.next())
             {
-                throw new RuntimeException("Could not resolve branch named " + compareBranch + ".");
+                updateDigest(digest, walk.getPathString());
+                walk.getObjectId(1).copyRawTo(id, 0);
+                digest.update(id);
             }
+        }
+    }
 
-            final AbstractTreeIterator oldTreeParser = new FileTreeIterator(repository);
-            final RevCommit mergeBase = getMergeBase(repository, "HEAD", longBranchName);
-            final AbstractTreeIterator newTreeParser = prepareTreeParser(repository,
-                                                                         mergeBase);
-            try (DiffFormatter formatter = new DiffFormatter(NULL_OUTPUT_STREAM))
+    /**
+     * Returns the paths of the files within the given source roots that differ between HEAD, the index and the working tree, including
+     * untracked and ignored files.
+     *
+     * @param head the HEAD commit.
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the paths.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private Set<String> getDirtyPaths(final ObjectId head, final Collection<String> repositoryRelativeSourceRoots) throws IOException
+    {
+        final IndexDiff indexDiff = new IndexDiff(repository, head, new FileTreeIterator(repository));
+        indexDiff.setFilter(createSourceRootFilter(repositoryRelativeSourceRoots));
+        indexDiff.diff();
+        final Set<String> dirtyPaths = new TreeSet<>(indexDiff.getAdded());
+        dirtyPaths.addAll(indexDiff.getChanged());
+        dirtyPaths.addAll(indexDiff.getModified());
+        dirtyPaths.addAll(indexDiff.getMissing());
+        dirtyPaths.addAll(indexDiff.getRemoved());
+        dirtyPaths.addAll(indexDiff.getUntracked());
+        dirtyPaths.addAll(indexDiff.getConflicting());
+        // Ignored directories are reported without their contents, and may contain source roots (e.g. generated sources in the build
+        // directory), so list the files within the parts of them that are within source roots.
+        final Path workTree = repository.getWorkTree().toPath();
+        for (final String ignoredPath : indexDiff.getIgnoredNotInIndex())
+        {
+            for (final String sourceRoot : repositoryRelativeSourceRoots)
             {
-                formatter.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
-                formatter.setRepository(repository);
-                formatter.setContext(0);
-
-                // Filter files not in source roots.
-                final List<TreeFilter> pathFilters = compileSourceRoots.stream().map(File::new).map(File::toURI)
-                                                         .map(s -> repositoryRootDirectoryUri.relativize(s).getPath())
-                                                         .map(PathFilter::create)
-                                                         .collect(Collectors.toList());
-                formatter.setPathFilter(pathFilters.size() > 1 ? OrTreeFilter.create(pathFilters) : pathFilters.get(0));
-
-                final List<DiffEntry> diffEntries = formatter.scan(newTreeParser, oldTreeParser);
-                final Map<String, Set<Integer>> changedLinesByFile = new HashMap<>(Utilities.capacity(diffEntries.size()));
-                final Set<String> newFiles = new HashSet<>(Utilities.capacity(diffEntries.size()));
-                final ProjectChanges changes = new ProjectChanges(changedLinesByFile, newFiles);
-                for (final DiffEntry entry : diffEntries)
+                final Path directory;
+                if (sourceRoot.equals(ignoredPath) || sourceRoot.startsWith(ignoredPath + '/'))
                 {
-                    final String filePath = entry.getNewPath();
-                    if (filePath.startsWith(repositoryRelativeModuleUri.toString()))
+                    directory = workTree.resolve(sourceRoot);
+                }
+                else if (ignoredPath.startsWith(sourceRoot + '/'))
+                {
+                    directory = workTree.resolve(ignoredPath);
+                }
+                else
+                {
+                    continue;
+                }
+                if (Files.exists(directory))
+                {
+                    try (Stream<Path> files = Files.walk(directory))
                     {
-                        final List<URI> entrySourceRoots = compileSourceRoots.stream()
-                                                               .map(File::new)
-                                                               .map(File::toURI)
-                                                               .map(repositoryRootDirectoryUri::relativize)
-                                                               .filter(u -> filePath.startsWith(u.getPath()))
-                                                               .collect(Collectors.toList());
-                        for (final URI repositoryRelativeSourceRootUri : entrySourceRoots)
-                        {
-                            processDiffEntry(formatter, entry, repositoryRelativeSourceRootUri, newFiles, changedLinesByFile);
-                        }
+                        files.filter(Files::isRegularFile)
+                            .map(f -> workTree.relativize(f).toString().replace(File.separatorChar, '/'))
+                            .forEach(dirtyPaths::add);
                     }
                 }
-                return changes;
             }
         }
-        return new ProjectChanges(Collections.emptyMap(), Collections.emptySet());
+        return dirtyPaths;
+    }
+
+    /**
+     * Updates the given digest with the given string and a separator.
+     *
+     * @param digest the digest.
+     * @param value the string.
+     */
+    private static void updateDigest(final MessageDigest digest, final String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Resolves the merge base of HEAD and the branch to compare with.
+     *
+     * @return the merge base.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected RevCommit resolveMergeBase() throws IOException
+    {
+        final String longBranchName = session.getCompareBranch(this);
+
+        if (longBranchName == null)
+        {
+            throw new RuntimeException("Could not resolve branch named " + compareBranch + ".");
+        }
+
+        return getMergeBase(repository, "HEAD", longBranchName);
+    }
+
+    /**
+     * Scans for changes between the merge base and the diff target within the given source roots.
+     * <p>
+     * If the diff target is {@link DiffTarget#HEAD} the merge base tree is compared with the tree committed at HEAD, and subtrees with the
+     * same id in both are skipped without being read. If it is {@link DiffTarget#INDEX} the merge base tree is compared with the index.
+     * Otherwise, if {@link GitDiffSettings#isIndexStatScan()} is enabled the index is used
+     * to find the candidate paths first, so that only those files are read from the working tree.
+     *
+     * @param formatter the diff formatter.
+     * @param mergeBase the merge base, or another commit to compare with the diff target.
+     * @param repositoryRelativeSourceRoots the source roots to scan relative to the Git repository root.
+     * @return the diff entries.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected List<DiffEntry> scan(final DiffFormatter formatter, final RevCommit mergeBase,
+                                   final Collection<String> repositoryRelativeSourceRoots) throws IOException
+    {
+        // Filter files not in source roots.
+        final TreeFilter sourceRootFilter = createSourceRootFilter(repositoryRelativeSourceRoots);
+        if (settings.getDiffTarget() == DiffTarget.INDEX)
+        {
+            formatter.setPathFilter(sourceRootFilter);
+            return formatter.scan(prepareTreeParser(repository, mergeBase), new DirCacheIterator(repository.readDirCache()));
+        }
+        if (settings.getDiffTarget() == DiffTarget.HEAD)
+        {
+            final ObjectId headTree = repository.resolve(Constants.HEAD + "^{tree}");
+            if (headTree == null)
+            {
+                throw new RuntimeException("Could not resolve HEAD.");
+            }
+            formatter.setPathFilter(sourceRootFilter);
+            return formatter.scan(mergeBase.getTree(), headTree);
+        }
+
+        final AbstractTreeIterator oldTreeParser = new FileTreeIterator(repository);
+        final AbstractTreeIterator newTreeParser = prepareTreeParser(repository, mergeBase);
+        if (settings.isIndexStatScan())
+        {
+            final Set<String> changedPaths = scanIndex(mergeBase, sourceRootFilter);
+            if (changedPaths.isEmpty())
+            {
+                return Collections.emptyList();
+            }
+            formatter.setPathFilter(PathFilterGroup.createFromStrings(changedPaths));
+        }
+        else
+        {
+            formatter.setPathFilter(sourceRootFilter);
+        }
+
+        return formatter.scan(newTreeParser, oldTreeParser);
+    }
+
+    /**
+     * Scans for changes between the given commits within the given source roots. Subtrees with the same id in both commits are skipped
+     * without being read.
+     *
+     * @param formatter the diff formatter.
+     * @param from the old commit.
+     * @param to the new commit.
+     * @param repositoryRelativeSourceRoots the source roots to scan relative to the Git repository root.
+     * @return the diff entries.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected List<DiffEntry> scan(final DiffFormatter formatter, final RevCommit from, final RevCommit to,
+                                   final Collection<String> repositoryRelativeSourceRoots) throws IOException
+    {
+        formatter.setPathFilter(createSourceRootFilter(repositoryRelativeSourceRoots));
+        return formatter.scan(from.getTree(), to.getTree());
+    }
+
+    /**
+     * Returns whether the merge base is compared with the working tree, rather than with the index or committed trees.
+     *
+     * @return whether the diff target is the working tree.
+     */
+    private boolean isWorkingTreeTarget()
+    {
+        return settings.getDiffTarget() == DiffTarget.WORKING_TREE;
+    }
+
+    /**
+     * Creates a filter that matches the files within the given source roots that the include and exclude globs select, backed by a {@link
+     * SourceRootTrie}. Files that are not selected are never read or diffed.
+     *
+     * @param repositoryRelativeSourceRoots the source roots relative to the Git repository root.
+     * @return the filter.
+     */
+    @Nonnull
+    private TreeFilter createSourceRootFilter(final Collection<String> repositoryRelativeSourceRoots)
+    {
+        return new SourceRootTrie(repositoryRelativeSourceRoots, sourceFileGlobs).newTreeFilter();
+    }
+
+    /**
+     * Finds the paths that may differ between the merge base and the working tree using the Git index.
+     * <p>
+     * Working tree files are compared with the index using the file stat information, so only files that have been modified since they
+     * were staged (or that are racily clean) are read. Untracked files that are ignored by Git are not included, as the scan of the working
+     * tree without the index skips them too.
+     *
+     * @param mergeBase the merge base.
+     * @param filter the filter to limit the paths scanned.
+     * @return the paths that have been added, staged or modified in the working tree, and those that have been deleted if renames are
+     *     detected.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected Set<String> scanIndex(final RevCommit mergeBase, final TreeFilter filter) throws IOException
+    {
+        final IndexDiff indexDiff = new IndexDiff(repository, mergeBase.getTree(), new FileTreeIterator(repository));
+        indexDiff.setFilter(filter);
+        indexDiff.diff();
+        final Set<String> changedPaths = new TreeSet<>(indexDiff.getAdded());
+        changedPaths.addAll(indexDiff.getChanged());
+        changedPaths.addAll(indexDiff.getModified());
+        changedPaths.addAll(indexDiff.getUntracked());
+        changedPaths.addAll(indexDiff.getConflicting());
+        if (settings.getRenameLimit() > 0)
+        {
+            // Deleted files are only needed to pair them with the added files they were renamed to.
+            changedPaths.addAll(indexDiff.getRemoved());
+            changedPaths.addAll(indexDiff.getMissing());
+        }
+        log.debug("Index scan found " + changedPaths.size() + " candidate changed files.");
+        return changedPaths;
     }
 
     /**
      * Resolves the branch to compare with.
+     * <p>
+     * The branch to compare with may also be given as any other revision, e.g. a commit id, a tag or {@code HEAD~3}. A commit id is used
+     * as it is, without looking up any refs, and a revision expression is resolved to a commit id once. Other names are looked up as a
+     * local branch, then a remote branch, then as any other revision (e.g. a tag or an abbreviated commit id).
      *
-     * @return the branch to compare with.
+     * @return the full name of the branch, or the commit id, to compare with, or {@code null} if it could not be resolved.
      * @throws IOException if an I/O error occurs.
      */
+    @Nullable
+    @CheckForNull
     protected String resolveCompareBranch() throws IOException
     {
+        if (ObjectId.isId(compareBranch))
+        {
+            return compareBranch;
+        }
+        if (Constants.HEAD.equals(compareBranch) || !Repository.isValidRefName(Constants.R_HEADS + compareBranch))
+        {
+            // Not a branch name, e.g. HEAD~3.
+            return resolveRevision(compareBranch);
+        }
         String longBranchName = Constants.R_HEADS + shortenRefName(compareBranch);
         final RevCommit refCommit = getCommitForRef(repository, longBranchName);
         if (refCommit == null)
         {
-            return fallbackToRemoteBranch();
+            final String remoteBranch = fallbackToRemoteBranch();
+            return remoteBranch == null ? resolveRevision(compareBranch) : remoteBranch;
         }
         else
         {
-            final BranchTrackingStatus trackingStatus = BranchTrackingStatus.of(repository, compareBranch);
-            if (trackingStatus != null)
+            final String trackingBranch = new BranchConfig(repository.getConfig(), shortenRefName(longBranchName))
+                                              .getRemoteTrackingBranch();
+            final Ref trackingRef = trackingBranch == null ? null : repository.exactRef(trackingBranch);
+            if (trackingRef != null)
             {
-                if (trackingStatus.getBehindCount() > 0)
+                // Only whether either branch has commits the other lacks matters, not how many, which is much quicker to find out.
+                if (!session.isAncestor(trackingRef.getObjectId(), refCommit))
                 {
-                    longBranchName = trackingStatus.getRemoteTrackingBranch();
+                    longBranchName = trackingBranch;
                     log.warn(String.format("%s is behind remote tracking branch, comparing with %s instead.",
                                            compareBranch, shortenRefName(longBranchName)));
                 }
-                else if (longBranchName.equals(repository.getFullBranch()) && trackingStatus.getAheadCount() > 0)
+                else if (longBranchName.equals(repository.getFullBranch()) && !session.isAncestor(refCommit, trackingRef.getObjectId()))
                 {
-                    longBranchName = trackingStatus.getRemoteTrackingBranch();
+                    longBranchName = trackingBranch;
                     log.warn(String.format("%s is ahead of remote tracking branch, comparing with %s instead.",
                                            compareBranch, shortenRefName(longBranchName)));
                 }
@@ -188,72 +751,179 @@ public class GitDiffChangeResolver
         return longBranchName;
     }
 
+    /**
+     * Resolves the given revision to a commit.
+     *
+     * @param revision the revision.
+     * @return the commit id, or {@code null} if the revision could not be resolved.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    private String resolveRevision(final String revision) throws IOException
+    {
+        final ObjectId commitId = repository.resolve(revision + "^{commit}");
+        return commitId == null ? null : commitId.name();
+    }
+
     /**
      * Fallback to the remote branch if the local branch doesn't exist.
+     * <p>
+     * The remote branch is looked up directly in {@code origin}, then in the other configured remotes, and only then by scanning the
+     * remote refs, so that repositories with many remote refs don't have to list them all.
      *
      * @return the remote branch ref.
+     * @throws IOException if an I/O error occurs.
      */
     @Nullable
-    private String fallbackToRemoteBranch()
+    private String fallbackToRemoteBranch() throws IOException
     {
-        try
-        {
-            final List<Ref> refList = new Git(repository).branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call();
-            final Ref ref = refList.stream()
-                                // Try origin/compareBranch first.
-                                .filter(r -> r.getName().equals(R_REMOTES + "origin/" + compareBranch))
-                                .findAny()
-                                .orElseGet(() -> refList.stream()
-                                                     // Fallback to */compareBranch
-                                                     .filter(r2 -> r2.getName().matches(R_REMOTES + "[^/]+/" + compareBranch))
-                                                     .findAny()
-                                                     .orElse(null));
-            if (ref != null)
+        final String branch = shortenRefName(compareBranch);
+        // Try origin/compareBranch first.
+        Ref ref = repository.exactRef(R_REMOTES + "origin/" + branch);
+        if (ref == null)
+        {
+            for (final String remote : new TreeSet<>(repository.getRemoteNames()))
             {
-                final String remoteBranch = ref.getName();
-                log.warn(String.format("Local branch named %s not found, using %s instead.",
-                                       compareBranch, shortenRefName(remoteBranch)));
-                return remoteBranch;
+                ref = repository.exactRef(R_REMOTES + remote + '/' + branch);
+                if (ref != null)
+                {
+                    break;
+                }
             }
         }
-        catch (final GitAPIException e)
+        if (ref == null)
         {
-            throw new RuntimeException(e);
+            // Fallback to */compareBranch
+            final String suffix = '/' + branch;
+            ref = repository.getRefDatabase().getRefsByPrefix(R_REMOTES).stream()
+                      .filter(r -> r.getName().endsWith(suffix)
+                                   && r.getName().indexOf('/', R_REMOTES.length()) == r.getName().length() - suffix.length())
+                      .findFirst()
+                      .orElse(null);
+        }
+        if (ref != null)
+        {
+            final String remoteBranch = ref.getName();
+            log.warn(String.format("Local branch named %s not found, using %s instead.",
+                                   compareBranch, shortenRefName(remoteBranch)));
+            return remoteBranch;
         }
         return null;
     }
 
+    /**
+     * Computes the edits for the given diff entries.
+     * <p>
+     * The edits are computed by running the diff algorithm directly on the old and new content of each file, in parallel if {@link
+     * GitDiffSettings#getParallelism()} is greater than one. The hashes of the lines of blobs are cached by the session.
+     *
+     * @param entries the diff entries of modified files.
+     * @param workingTree whether the new side of the diff entries is the working tree, rather than a commit.
+     * @return the edits indexed by diff entry.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected Map<DiffEntry, EditList> getEdits(final List<DiffEntry> entries, final boolean workingTree) throws IOException
+    {
+        final Map<DiffEntry, EditList> editsByEntry = new IdentityHashMap<>(entries.size());
+        if (settings.getParallelism() > 1)
+        {
+            final ParallelEditListResolver resolver = new ParallelEditListResolver(repository, workingTree, settings,
+                                                                                   session.getLineHashCache(), log);
+            final List<EditList> editLists = resolver.resolve(entries);
+            for (int i = 0; i < entries.size(); i++)
+            {
+                editsByEntry.put(entries.get(i), editLists.get(i));
+            }
+            approximate |= resolver.isApproximate();
+        }
+        else
+        {
+            try (EditListResolver resolver = new EditListResolver(repository, workingTree, settings, session.getLineHashCache(), log))
+            {
+                for (final DiffEntry entry : entries)
+                {
+                    editsByEntry.put(entry, resolver.getEdits(entry));
+                }
+                approximate |= resolver.isApproximate();
+            }
+        }
+        return editsByEntry;
+    }
+
     /**
      * Processes a diff entry to extract the change information.
+     * <p>
+     * Renamed and copied files are treated as modified, with only the edits between the old and new file counted as changes. Files that
+     * were moved without being modified have no edits.
      *
-     * @param formatter the diff formatter.
      * @param entry the diff entry.
-     * @param repositoryRelativeSourceRootUri the source root URI relative to the Git repository root.
-     * @param newFiles the set to add change information about new files to.
-     * @param changedLinesByFile the map to add change information about changed files to.
-     * @throws IOException if an I/O error occurs.
+     * @param edits the edits for a modified, renamed or copied file, may be {@code null} for other types of change or if the file was moved
+     *     without being modified.
+     * @param sourceRootRelativeFile the path of the file relative to the source root.
+     * @param sourceRootRelativeOldFile the path of the file a renamed or copied file came from relative to its source root, or {@code null}
+     *     if it is not within the module's source roots.
+     * @param builder the builder to add the change information to.
      */
-    protected void processDiffEntry(final DiffFormatter formatter, final DiffEntry entry,
-                                    final URI repositoryRelativeSourceRootUri, final Set<String> newFiles,
-                                    final Map<String, Set<Integer>> changedLinesByFile) throws IOException
+    protected void processDiffEntry(final DiffEntry entry, @Nullable final EditList edits, final String sourceRootRelativeFile,
+                                    @Nullable final String sourceRootRelativeOldFile, final ProjectChangesBuilder builder)
     {
-        final URI sourceRootRelativeFileUri = repositoryRelativeSourceRootUri.relativize(URI.create(entry.getNewPath()));
-        if (entry.getChangeType() == DiffEntry.ChangeType.MODIFY)
-        {
-            final FileHeader header = formatter.toFileHeader(entry);
-            header.getHunks().stream()
-                .flatMap(hunk -> hunk.toEditList().stream())
-                .filter(e -> e.getType() == Edit.Type.INSERT || e.getType() == Edit.Type.REPLACE)
-                .forEach(edit -> {
-                    final Set<Integer> changedLines = changedLinesByFile.computeIfAbsent(sourceRootRelativeFileUri.toString(),
-                                                                                         k -> new TreeSet<>());
-                    IntStream.rangeClosed(edit.getBeginB() + 1, edit.getEndB()).forEachOrdered(changedLines::add);
-                });
+        if (entry.getChangeType() == DiffEntry.ChangeType.MODIFY && edits != null)
+        {
+            builder.modify(sourceRootRelativeFile, edits);
+        }
+        else if (entry.getChangeType() == DiffEntry.ChangeType.RENAME)
+        {
+            builder.rename(sourceRootRelativeOldFile, sourceRootRelativeFile, edits == null ? new EditList() : edits);
+        }
+        else if (entry.getChangeType() == DiffEntry.ChangeType.COPY)
+        {
+            builder.copy(sourceRootRelativeOldFile, sourceRootRelativeFile, edits == null ? new EditList() : edits);
         }
         else if (entry.getChangeType() == DiffEntry.ChangeType.ADD)
         {
-            newFiles.add(sourceRootRelativeFileUri.toString());
+            builder.add(sourceRootRelativeFile);
         }
+        else if (entry.getChangeType() == DiffEntry.ChangeType.DELETE)
+        {
+            builder.delete(sourceRootRelativeFile);
+        }
+    }
+
+    /**
+     * Whether the edits of the given diff entry are needed, i.e. whether it is a modified file or a renamed or copied file whose content
+     * differs from the file it came from.
+     *
+     * @param entry the diff entry.
+     * @return whether the edits are needed.
+     */
+    private static boolean hasEdits(final DiffEntry entry)
+    {
+        return entry.getChangeType() == DiffEntry.ChangeType.MODIFY
+               || isRenameOrCopy(entry) && !entry.getOldId().equals(entry.getNewId());
+    }
+
+    /**
+     * Whether the given diff entry is a renamed or copied file.
+     *
+     * @param entry the diff entry.
+     * @return whether the file was renamed or copied.
+     */
+    private static boolean isRenameOrCopy(final DiffEntry entry)
+    {
+        return entry.getChangeType() == DiffEntry.ChangeType.RENAME || entry.getChangeType() == DiffEntry.ChangeType.COPY;
+    }
+
+    /**
+     * Returns the path of the file that a diff entry applies to: the new path, or the old path for a deleted file.
+     *
+     * @param entry the diff entry.
+     * @return the repository relative path.
+     */
+    @Nonnull
+    private static String getPath(final DiffEntry entry)
+    {
+        return entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath();
     }
 
     /**
@@ -279,26 +949,23 @@ public class GitDiffChangeResolver
     }
 
     /**
-     * Finds a common ancestor between the source ref and the target ref.
+     * Finds a common ancestor between the source revision and the target revision.
      *
      * @param repository the repository.
-     * @param source the source ref.
-     * @param target the target ref.
+     * @param source the source revision, e.g. a ref name or commit id.
+     * @param target the target revision, e.g. a ref name or commit id.
      * @return the merge base.
      * @throws IOException if an I/O error occurs.
      */
     protected RevCommit getMergeBase(final Repository repository, final String source, final String target) throws IOException
     {
-        try (RevWalk walk = new RevWalk(repository))
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
         {
-            final RevCommit revA = walk.parseCommit(repository.findRef(target).getObjectId());
-            final RevCommit revB = walk.parseCommit(repository.findRef(source).getObjectId());
-            walk.setRevFilter(RevFilter.MERGE_BASE);
-            walk.markStart(revA);
-            walk.markStart(revB);
-            final RevCommit next = walk.next();
-            walk.dispose();
-            return next;
+            if (walk.isUsingCommitGraph())
+            {
+                log.debug("Using the commit-graph to find the merge base.");
+            }
+            return walk.getMergeBase(repository.resolve(source), repository.resolve(target));
         }
     }
 
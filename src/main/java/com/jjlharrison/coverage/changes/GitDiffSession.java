@@ -0,0 +1,763 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.PathFilter;
+
+import com.jjlharrison.coverage.changes.diff.LineHashCache;
+import com.jjlharrison.coverage.changes.graph.CommitGraphWalk;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Git diff state shared by all the modules of a build.
+ * <p>
+ * The repository is opened, the merge base resolved and the source roots of the reactor scanned once per build rather than once per
+ * module. Each module then takes its own slice of the repository wide diff entries.
+ */
+public final class GitDiffSession implements Closeable
+{
+    /** The sessions of the current build, indexed by Maven session and then by Git directory and settings. */
+    private static final Map<MavenSession, Map<List<Object>, GitDiffSession>> SESSIONS = new WeakHashMap<>();
+
+    /** Whether one commit is an ancestor of another, indexed by the ancestor and descendant commit ids. */
+    private final Map<List<ObjectId>, Boolean> ancestry = new HashMap<>();
+
+    /** The files changed between the merge base and the diff target found by the {@code git} command so far. */
+    private final ParsedDiff commandDiff = new ParsedDiff();
+
+    /** The repository relative source roots that the {@code git} command has diffed. */
+    private final Set<String> commandDiffSourceRoots = new TreeSet<>();
+
+    /** The walk used to check ancestry, or {@code null} if not yet opened. */
+    private CommitGraphWalk commitGraphWalk;
+
+    /** The full name of the branch to compare with, or {@code null} if not yet resolved or not found. */
+    private String compareBranch;
+
+    /** Whether the branch to compare with has been resolved. */
+    private boolean compareBranchResolved;
+
+    /**
+     * The diffs that have been scanned so far, indexed by the ids of the old and new commits, the new commit being {@code null} for a diff
+     * with the diff target.
+     */
+    private final Map<List<ObjectId>, ScannedDiff> diffs = new HashMap<>();
+
+    /** The Git index, or {@code null} if not yet read. */
+    private DirCache dirCache;
+
+    /** The diff formatter used to scan for and format changes. */
+    private DiffFormatter formatter;
+
+    /** The cache of the line hashes of blobs, or {@code null} if not yet created. */
+    private LineHashCache lineHashCache;
+
+    /** The merge base, or {@code null} if not yet resolved. */
+    private RevCommit mergeBase;
+
+    /** The repository relative source roots of all the modules in the reactor. */
+    private final Set<String> reactorSourceRoots;
+
+    /** The Git repository. */
+    private final Repository repository;
+
+    /** The repository root directory URI. */
+    private final URI repositoryRootDirectoryUri;
+
+    /** The settings. */
+    private final GitDiffSettings settings;
+
+    /** Whether Git tracks, ignores or does not track each source root, indexed by repository relative source root. */
+    private final Map<String, SourceRootStatus> sourceRootStatuses = new HashMap<>();
+
+    /** Whether each source root is unchanged since the merge base, indexed by repository relative source root. */
+    private final Map<String, Boolean> unchangedSourceRoots = new HashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param repository the Git repository.
+     * @param settings the settings.
+     * @param reactorSourceRoots the compile source roots of all the modules in the reactor.
+     */
+    private GitDiffSession(final Repository repository, final GitDiffSettings settings, final Collection<String> reactorSourceRoots)
+    {
+        this.repository = repository;
+        this.settings = settings;
+        this.repositoryRootDirectoryUri = repository.getDirectory().toURI().resolve("..");
+        this.reactorSourceRoots = new TreeSet<>(toRepositoryRelativePaths(reactorSourceRoots));
+    }
+
+    /**
+     * Returns the session for the repository containing the given project in the given build, opening the repository if this is the first
+     * module of the build to use it.
+     * <p>
+     * The sessions of a build are closed when the build ends, however many of its modules use them, and whether or not they fail.
+     *
+     * @param mavenSession the Maven session.
+     * @param project the project.
+     * @param settings the settings.
+     * @param log the log to warn of any failure to save the line hashes with when the build ends.
+     * @return the session, or {@code null} if the project is not in a Git repository.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    @SuppressFBWarnings(value = "BC_UNCONFIRMED_CAST_OF_RETURN_VALUE", justification = "¯\\_(ツ)_/¯")
+    @SuppressWarnings("PMD.CloseResource") // Sessions are closed by release(...) when the build ends.
+    public static GitDiffSession get(final MavenSession mavenSession, final MavenProject project, final GitDiffSettings settings,
+                                     final Log log)
+        throws IOException
+    {
+        final FileRepositoryBuilder builder = new FileRepositoryBuilder()
+                                                  .readEnvironment()
+                                                  .findGitDir(project.getBasedir());
+        if (builder.getGitDir() == null)
+        {
+            return null;
+        }
+        synchronized (SESSIONS)
+        {
+            Map<List<Object>, GitDiffSession> sessions = SESSIONS.get(mavenSession);
+            if (sessions == null)
+            {
+                // A new build has started (e.g. in a long-lived Maven daemon), release the repositories of any previous builds.
+                SESSIONS.values().forEach(s -> s.values().forEach(GitDiffSession::close));
+                SESSIONS.clear();
+                sessions = new HashMap<>();
+                SESSIONS.put(mavenSession, sessions);
+                if (mavenSession != null && mavenSession.getRequest() != null)
+                {
+                    final MavenExecutionRequest request = mavenSession.getRequest();
+                    request.setExecutionListener(new SessionEndListener(request.getExecutionListener(), () -> release(mavenSession, log)));
+                }
+            }
+            final List<Object> key = Arrays.asList(builder.getGitDir().getAbsolutePath(), settings);
+            GitDiffSession session = sessions.get(key);
+            if (session == null)
+            {
+                session = new GitDiffSession(builder.build(), settings, getReactorSourceRoots(mavenSession, project));
+                sessions.put(key, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Closes the sessions of the given build, saving the line hashes added to their caches during the build first.
+     *
+     * @param mavenSession the Maven session.
+     * @param log the log to warn of any failure to save the line hashes with.
+     */
+    private static void release(final MavenSession mavenSession, final Log log)
+    {
+        final Map<List<Object>, GitDiffSession> sessions;
+        synchronized (SESSIONS)
+        {
+            sessions = SESSIONS.remove(mavenSession);
+        }
+        if (sessions != null)
+        {
+            for (final GitDiffSession session : sessions.values())
+            {
+                try
+                {
+                    session.saveLineHashCache();
+                }
+                catch (final IOException e)
+                {
+                    log.warn("Could not save the line hash cache.", e);
+                }
+                finally
+                {
+                    session.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the compile source roots of all the modules in the reactor.
+     *
+     * @param mavenSession the Maven session.
+     * @param project the current project.
+     * @return the compile source roots.
+     */
+    @Nonnull
+    private static Collection<String> getReactorSourceRoots(final MavenSession mavenSession, final MavenProject project)
+    {
+        final List<String> sourceRoots = new ArrayList<>(project.getCompileSourceRoots());
+        if (mavenSession != null && mavenSession.getProjects() != null)
+        {
+            mavenSession.getProjects().stream()
+                .filter(p -> !"pom".equals(p.getPackaging()))
+                .map(MavenProject::getCompileSourceRoots)
+                .filter(Objects::nonNull)
+                .forEach(sourceRoots::addAll);
+        }
+        return sourceRoots;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (commitGraphWalk != null)
+        {
+            commitGraphWalk.close();
+            commitGraphWalk = null;
+        }
+        if (formatter != null)
+        {
+            formatter.close();
+            formatter = null;
+        }
+        repository.close();
+    }
+
+    /**
+     * Returns the settings.
+     *
+     * @return the settings.
+     */
+    public GitDiffSettings getSettings()
+    {
+        return settings;
+    }
+
+    /**
+     * Returns the diff entries between the merge base and the diff target within the given source roots, scanning any source roots that
+     * have not already been scanned.
+     * <p>
+     * The first call also scans the source roots of all the other modules in the reactor, so that later modules only need to take their
+     * slice of the diff entries.
+     *
+     * @param resolver the resolver to resolve the merge base and scan for changes with.
+     * @param sourceRoots the repository relative source roots.
+     * @return the diff entries within the scanned source roots, which may include entries from outside the given source roots.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public synchronized List<DiffEntry> getDiffEntries(final GitDiffChangeResolver resolver, final Collection<String> sourceRoots)
+        throws IOException
+    {
+        return getDiffEntries(resolver, getMergeBase(resolver), null, sourceRoots);
+    }
+
+    /**
+     * Returns the diff entries between the given commits, or between the given commit and the diff target, within the given source roots,
+     * scanning any source roots that have not already been scanned for the same commits.
+     * <p>
+     * The first call for each pair of commits also scans the source roots of all the other modules in the reactor, so that each diff is
+     * computed once per build, and later modules only need to take their slice of the diff entries.
+     *
+     * @param resolver the resolver to scan for changes with.
+     * @param from the old commit.
+     * @param to the new commit, or {@code null} to diff with the diff target.
+     * @param sourceRoots the repository relative source roots.
+     * @return the diff entries within the scanned source roots, which may include entries from outside the given source roots.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public synchronized List<DiffEntry> getDiffEntries(final GitDiffChangeResolver resolver, final RevCommit from,
+                                                       @Nullable final RevCommit to, final Collection<String> sourceRoots)
+        throws IOException
+    {
+        final List<ObjectId> key = Arrays.asList(from.copy(), to == null ? null : to.copy());
+        ScannedDiff diff = diffs.get(key);
+        if (diff == null)
+        {
+            diff = new ScannedDiff();
+            diffs.put(key, diff);
+        }
+        final Set<String> unscannedSourceRoots = new TreeSet<>();
+        if (diff.scannedSourceRoots.isEmpty())
+        {
+            for (final String sourceRoot : getSourceRootsToScan(reactorSourceRoots, null))
+            {
+                // Source roots that are unchanged since the merge base have no diff entries, so are not walked.
+                if (to != null || !from.equals(getMergeBase(resolver)) || !isUnchanged(resolver, Collections.singleton(sourceRoot)))
+                {
+                    unscannedSourceRoots.add(sourceRoot);
+                }
+            }
+        }
+        final ScannedDiff scannedDiff = diff;
+        sourceRoots.stream()
+            .map(GitDiffSession::trimTrailingSlash)
+            .filter(r -> !r.isEmpty() && !scannedDiff.isScanned(r))
+            .forEach(unscannedSourceRoots::add);
+        if (!unscannedSourceRoots.isEmpty())
+        {
+            final List<DiffEntry> entries = to == null
+                                            ? resolver.scan(getFormatter(), from, unscannedSourceRoots)
+                                            : resolver.scan(getFormatter(), from, to, unscannedSourceRoots);
+            for (final DiffEntry entry : entries)
+            {
+                diff.entries.putIfAbsent(entry.getChangeType() == DiffEntry.ChangeType.DELETE ? entry.getOldPath() : entry.getNewPath(),
+                                         entry);
+            }
+            diff.scannedSourceRoots.addAll(unscannedSourceRoots);
+        }
+        return new ArrayList<>(diff.entries.values());
+    }
+
+    /**
+     * Returns the files changed between the merge base and the diff target within the given source roots, running the {@code git}
+     * command for any source roots that have not already been diffed.
+     * <p>
+     * The first call also diffs the source roots of all the other modules in the reactor, so that the command is run once per build.
+     *
+     * @param resolver the resolver to run the command with.
+     * @param sourceRoots the repository relative source roots.
+     * @return the changed files within the diffed source roots, which may include files from outside the given source roots.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    synchronized ParsedDiff getCommandDiff(final GitCommandChangeResolver resolver, final Collection<String> sourceRoots)
+        throws IOException
+    {
+        final Set<String> undiffedSourceRoots = new TreeSet<>();
+        if (commandDiffSourceRoots.isEmpty())
+        {
+            undiffedSourceRoots.addAll(getSourceRootsToScan(reactorSourceRoots, null));
+        }
+        sourceRoots.stream()
+            .map(GitDiffSession::trimTrailingSlash)
+            .filter(r -> !r.isEmpty() && !isWithin(commandDiffSourceRoots, r))
+            .forEach(undiffedSourceRoots::add);
+        if (!undiffedSourceRoots.isEmpty())
+        {
+            resolver.diff(undiffedSourceRoots, commandDiff);
+            commandDiffSourceRoots.addAll(undiffedSourceRoots);
+        }
+        return commandDiff;
+    }
+
+    /**
+     * Returns the given source roots that may contain changes.
+     * <p>
+     * Source roots that are ignored by Git (e.g. generated source roots in the build directory) are dropped so that they are not walked.
+     * Source roots that contain only untracked files are dropped too, unless the diff target is the working tree, where untracked files
+     * are new files. Each source root is classified once per build from the index and the ignore rules of its parent directories, without
+     * listing the files within it.
+     *
+     * @param sourceRoots the repository relative source roots.
+     * @param log the logger to report dropped source roots to, or {@code null}.
+     * @return the source roots that may contain changes, in the given order.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public synchronized List<String> getSourceRootsToScan(final Collection<String> sourceRoots, @Nullable final Logger log)
+        throws IOException
+    {
+        final List<String> sourceRootsToScan = new ArrayList<>(sourceRoots.size());
+        for (final String sourceRoot : sourceRoots)
+        {
+            final SourceRootStatus status = getSourceRootStatus(trimTrailingSlash(sourceRoot));
+            if (status == SourceRootStatus.TRACKED
+                || status == SourceRootStatus.UNTRACKED && settings.getDiffTarget() == DiffTarget.WORKING_TREE)
+            {
+                sourceRootsToScan.add(sourceRoot);
+            }
+            else if (log != null)
+            {
+                log.debug(String.format("Skipping source root %s, which %s.", sourceRoot,
+                                        status == SourceRootStatus.IGNORED ? "is ignored by Git" : "has no files tracked by Git"));
+            }
+        }
+        return sourceRootsToScan;
+    }
+
+    /**
+     * Classifies the given source root, remembering the answer for the rest of the build.
+     *
+     * @param sourceRoot the repository relative source root, without a trailing slash.
+     * @return whether Git tracks, ignores or does not track the source root.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private SourceRootStatus getSourceRootStatus(final String sourceRoot) throws IOException
+    {
+        SourceRootStatus status = sourceRootStatuses.get(sourceRoot);
+        if (status == null)
+        {
+            if (repository.isBare() || sourceRoot.isEmpty())
+            {
+                status = SourceRootStatus.TRACKED;
+            }
+            else
+            {
+                if (dirCache == null)
+                {
+                    dirCache = repository.readDirCache();
+                }
+                if (dirCache.getEntriesWithin(sourceRoot).length > 0)
+                {
+                    status = SourceRootStatus.TRACKED;
+                }
+                else
+                {
+                    status = isIgnored(sourceRoot) ? SourceRootStatus.IGNORED : SourceRootStatus.UNTRACKED;
+                }
+            }
+            sourceRootStatuses.put(sourceRoot, status);
+        }
+        return status;
+    }
+
+    /**
+     * Whether the given path, or any of its parent directories, is ignored by Git. Only the directories on the way to the path are listed.
+     *
+     * @param path the repository relative path.
+     * @return whether the path is ignored.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean isIgnored(final String path) throws IOException
+    {
+        try (TreeWalk walk = new TreeWalk(repository))
+        {
+            walk.addTree(new FileTreeIterator(repository));
+            walk.setFilter(PathFilter.create(path));
+            while (walk.next())
+            {
+                final WorkingTreeIterator iterator = walk.getTree(0, WorkingTreeIterator.class);
+                if (iterator != null && iterator.isEntryIgnored())
+                {
+                    return true;
+                }
+                if (!walk.isSubtree() || path.equals(walk.getPathString()))
+                {
+                    return false;
+                }
+                walk.enterSubtree();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether none of the given source roots have changed since the merge base. The answer for each source root is remembered for the
+     * rest of the build.
+     *
+     * @param resolver the resolver to check the source roots with.
+     * @param sourceRoots the repository relative source roots.
+     * @return whether none of the source roots have changed.
+     * @throws IOException if an I/O error occurs.
+     * @see GitDiffChangeResolver#isUnchanged(RevCommit, String)
+     */
+    public synchronized boolean isUnchanged(final GitDiffChangeResolver resolver, final Collection<String> sourceRoots) throws IOException
+    {
+        for (final String sourceRoot : sourceRoots)
+        {
+            final String path = trimTrailingSlash(sourceRoot);
+            Boolean unchanged = unchangedSourceRoots.get(path);
+            if (unchanged == null)
+            {
+                unchanged = resolver.isUnchanged(getMergeBase(resolver), path);
+                unchangedSourceRoots.put(path, unchanged);
+            }
+            if (!unchanged)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the full name of the branch to compare with, resolving it if this is the first module of the build to need it.
+     *
+     * @param resolver the resolver to resolve the branch with.
+     * @return the full name of the branch to compare with, or {@code null} if it could not be found.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    public synchronized String getCompareBranch(final GitDiffChangeResolver resolver) throws IOException
+    {
+        if (!compareBranchResolved)
+        {
+            compareBranch = resolver.resolveCompareBranch();
+            compareBranchResolved = true;
+        }
+        return compareBranch;
+    }
+
+    /**
+     * Returns the merge base, resolving it if this is the first module of the build to need it.
+     *
+     * @param resolver the resolver to resolve the merge base with.
+     * @return the merge base.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public synchronized RevCommit getMergeBase(final GitDiffChangeResolver resolver) throws IOException
+    {
+        if (mergeBase == null)
+        {
+            mergeBase = resolver.resolveMergeBase();
+        }
+        return mergeBase;
+    }
+
+    /**
+     * Returns whether the first commit is an ancestor of (or the same as) the second commit. The answer is remembered for the rest of the
+     * build.
+     *
+     * @param ancestor the possible ancestor.
+     * @param descendant the possible descendant.
+     * @return whether the first commit is reachable from the second commit.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized boolean isAncestor(final ObjectId ancestor, final ObjectId descendant) throws IOException
+    {
+        final List<ObjectId> key = Arrays.asList(ancestor.copy(), descendant.copy());
+        Boolean result = ancestry.get(key);
+        if (result == null)
+        {
+            if (commitGraphWalk == null)
+            {
+                commitGraphWalk = new CommitGraphWalk(repository);
+            }
+            result = commitGraphWalk.isAncestor(ancestor, descendant);
+            ancestry.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the diff formatter.
+     * <p>
+     * The formatter is shared by all modules of the build so access should be synchronised on this session.
+     *
+     * @return the diff formatter.
+     */
+    @Nonnull
+    public synchronized DiffFormatter getFormatter()
+    {
+        if (formatter == null)
+        {
+            formatter = newFormatter(repository, settings);
+        }
+        return formatter;
+    }
+
+    /**
+     * Creates a diff formatter that detects renames and copies as the settings allow.
+     * <p>
+     * Renamed and copied files are compared with the files they came from, rather than being new files. Files moved without being modified
+     * are paired by object id, which is cheap. Only if there are no more than {@link GitDiffSettings#getRenameLimit()} added or deleted
+     * files is the content of the remaining files compared for similarity, which bounds the cost of a large refactoring.
+     *
+     * @param repository the Git repository.
+     * @param settings the settings.
+     * @return the diff formatter.
+     */
+    @Nonnull
+    private static DiffFormatter newFormatter(final Repository repository, final GitDiffSettings settings)
+    {
+        final DiffFormatter formatter = new DiffFormatter(NULL_OUTPUT_STREAM);
+        formatter.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
+        formatter.setRepository(repository);
+        formatter.setContext(0);
+        if (settings.getRenameLimit() > 0)
+        {
+            formatter.setDetectRenames(true);
+            final RenameDetector renameDetector = formatter.getRenameDetector();
+            renameDetector.setRenameLimit(settings.getRenameLimit());
+            renameDetector.setRenameScore(settings.getRenameScore());
+        }
+        return formatter;
+    }
+
+    /**
+     * Returns the cache of the line hashes of blobs, shared by all modules of the build. If the changes cache is enabled, the line hashes
+     * saved by earlier builds are loaded the first time this is called.
+     *
+     * @return the cache, or {@code null} if line hashes are not cached.
+     */
+    @Nullable
+    @CheckForNull
+    public synchronized LineHashCache getLineHashCache()
+    {
+        if (lineHashCache == null && settings.getLineHashCacheSize() > 0)
+        {
+            lineHashCache = new LineHashCache(EditListResolver.COMPARATOR_NAME, settings.getLineHashCacheSize());
+            if (settings.getCacheSize() > 0)
+            {
+                lineHashCache.load(getLineHashCacheFile());
+            }
+        }
+        return lineHashCache;
+    }
+
+    /**
+     * Saves the cache of the line hashes of blobs for later builds, if the changes cache is enabled and hashes have been added to it
+     * since it was loaded or last saved. This rewrites the whole cache, so it is done once at the end of the build.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    synchronized void saveLineHashCache() throws IOException
+    {
+        if (lineHashCache != null && lineHashCache.isModified() && settings.getCacheSize() > 0)
+        {
+            lineHashCache.save(getLineHashCacheFile());
+        }
+    }
+
+    /**
+     * Returns the file the line hashes of blobs are saved in.
+     *
+     * @return the file.
+     */
+    @Nonnull
+    private File getLineHashCacheFile()
+    {
+        return new File(settings.getCacheDirectory(), "line-hashes");
+    }
+
+    /**
+     * Returns the Git repository.
+     *
+     * @return the Git repository.
+     */
+    public Repository getRepository()
+    {
+        return repository;
+    }
+
+    /**
+     * Returns the repository root directory URI.
+     *
+     * @return the repository root directory URI.
+     */
+    public URI getRepositoryRootDirectoryUri()
+    {
+        return repositoryRootDirectoryUri;
+    }
+
+    /**
+     * Converts the given paths to paths relative to the repository root, excluding any paths outside the repository.
+     *
+     * @param paths the paths.
+     * @return the repository relative paths.
+     */
+    @Nonnull
+    private List<String> toRepositoryRelativePaths(final Collection<String> paths)
+    {
+        final List<String> relativePaths = new ArrayList<>(paths.size());
+        for (final String path : paths)
+        {
+            final URI relativeUri = repositoryRootDirectoryUri.relativize(new File(path).toURI());
+            if (!relativeUri.isAbsolute())
+            {
+                final String relativePath = trimTrailingSlash(relativeUri.getPath());
+                if (!relativePath.isEmpty())
+                {
+                    relativePaths.add(relativePath);
+                }
+            }
+        }
+        return relativePaths;
+    }
+
+    /**
+     * Removes any trailing slash from the given path.
+     *
+     * @param path the path.
+     * @return the path without a trailing slash.
+     */
+    @Nonnull
+    private static String trimTrailingSlash(final String path)
+    {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * Whether the given source root is within one of the given source roots.
+     *
+     * @param sourceRoots the repository relative source roots.
+     * @param sourceRoot the repository relative source root.
+     * @return whether the source root is within one of the source roots.
+     */
+    private static boolean isWithin(final Collection<String> sourceRoots, final String sourceRoot)
+    {
+        return sourceRoots.stream().anyMatch(s -> sourceRoot.equals(s) || sourceRoot.startsWith(s + '/'));
+    }
+
+    /**
+     * The diff entries of one diff, scanned a few source roots at a time as the modules of the build need them.
+     */
+    private static final class ScannedDiff
+    {
+        /** The diff entries that have been scanned so far, indexed by their new path, or their old path if deleted. */
+        private final Map<String, DiffEntry> entries = new LinkedHashMap<>();
+
+        /** The repository relative source roots that have been scanned. */
+        private final Set<String> scannedSourceRoots = new TreeSet<>();
+
+        /**
+         * Whether the given source root is within a source root that has already been scanned.
+         *
+         * @param sourceRoot the repository relative source root.
+         * @return whether the source root has been scanned.
+         */
+        boolean isScanned(final String sourceRoot)
+        {
+            return isWithin(scannedSourceRoots, sourceRoot);
+        }
+    }
+
+    /**
+     * Whether Git tracks, ignores or does not track a source root.
+     */
+    private enum SourceRootStatus
+    {
+        /** The source root contains files tracked by Git. */
+        TRACKED,
+
+        /** The source root, or one of its parent directories, is ignored by Git. */
+        IGNORED,
+
+        /** The source root contains no files tracked by Git, but is not ignored. */
+        UNTRACKED
+    }
+}
@@ -0,0 +1,453 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.eclipse.jgit.diff.DiffAlgorithm;
+
+/**
+ * Settings that control how changes are resolved from Git.
+ * <p>
+ * Modules of a build share a {@link GitDiffSession} only when their settings are equal.
+ */
+public class GitDiffSettings
+{
+    /** The directory to cache resolved changes in. */
+    private File cacheDirectory;
+
+    /** The maximum number of resolved changes to cache, or zero to disable the cache. */
+    private int cacheSize;
+
+    /** The branch to compare with. */
+    private String compareBranch;
+
+    /** The diff algorithm, or {@code null} to use the algorithm configured in the repository. */
+    private DiffAlgorithm.SupportedAlgorithm diffAlgorithm;
+
+    /** The backend that computes the diff. */
+    private DiffBackend diffBackend = DiffBackend.JGIT;
+
+    /** The size in bytes above which a file is not loaded into memory to be diffed, or zero for no limit. */
+    private long diffMaxFileSize = 10 * 1024 * 1024;
+
+    /** The maximum number of lines in the changed region of a file to diff, or zero for no limit. */
+    private int diffMaxLines;
+
+    /** What the merge base is compared with to find the changes. */
+    private DiffTarget diffTarget = DiffTarget.WORKING_TREE;
+
+    /** The maximum time in milliseconds to spend diffing a file, or zero for no limit. */
+    private long diffTimeout;
+
+    /** The globs of the source files to exclude, relative to their source root. */
+    private List<String> excludes = Collections.emptyList();
+
+    /** The globs of the source files to include, relative to their source root, or empty to include all source files. */
+    private List<String> includes = Collections.emptyList();
+
+    /** Whether to update the cached changes of an earlier commit on the branch, rather than resolving them from scratch. */
+    private boolean incremental;
+
+    /** Whether to use the stat information in the Git index to avoid reading unmodified working tree files. */
+    private boolean indexStatScan;
+
+    /** The maximum total number of lines of blobs whose line hashes are cached, or zero to not cache line hashes. */
+    private int lineHashCacheSize = 1000000;
+
+    /** The number of threads to compute the edits of modified files with. */
+    private int parallelism = 1;
+
+    /** The maximum number of added or deleted files to compare for renames, or zero to not detect renames. */
+    private int renameLimit = 400;
+
+    /** The minimum similarity, as a percentage, for an added and a deleted file to be detected as a rename. */
+    private int renameScore = 50;
+
+    /**
+     * Returns the directory to cache resolved changes in.
+     *
+     * @return the directory to cache resolved changes in.
+     */
+    public File getCacheDirectory()
+    {
+        return cacheDirectory;
+    }
+
+    /**
+     * Sets the directory to cache resolved changes in.
+     *
+     * @param cacheDirectory the directory to cache resolved changes in.
+     */
+    public void setCacheDirectory(final File cacheDirectory)
+    {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns the maximum number of resolved changes to cache.
+     *
+     * @return the maximum number of resolved changes to cache, or zero to disable the cache.
+     */
+    public int getCacheSize()
+    {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the maximum number of resolved changes to cache.
+     *
+     * @param cacheSize the maximum number of resolved changes to cache, or zero to disable the cache.
+     */
+    public void setCacheSize(final int cacheSize)
+    {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the branch to compare with.
+     *
+     * @return the branch to compare with.
+     */
+    public String getCompareBranch()
+    {
+        return compareBranch;
+    }
+
+    /**
+     * Sets the branch to compare with.
+     *
+     * @param compareBranch the branch to compare with.
+     */
+    public void setCompareBranch(final String compareBranch)
+    {
+        this.compareBranch = compareBranch;
+    }
+
+    /**
+     * Returns the diff algorithm.
+     *
+     * @return the diff algorithm, or {@code null} to use the algorithm configured in the repository.
+     */
+    public DiffAlgorithm.SupportedAlgorithm getDiffAlgorithm()
+    {
+        return diffAlgorithm;
+    }
+
+    /**
+     * Sets the diff algorithm.
+     *
+     * @param diffAlgorithm the diff algorithm, or {@code null} to use the algorithm configured in the repository.
+     */
+    public void setDiffAlgorithm(final DiffAlgorithm.SupportedAlgorithm diffAlgorithm)
+    {
+        this.diffAlgorithm = diffAlgorithm;
+    }
+
+    /**
+     * Returns the backend that computes the diff.
+     *
+     * @return the backend that computes the diff.
+     */
+    public DiffBackend getDiffBackend()
+    {
+        return diffBackend;
+    }
+
+    /**
+     * Sets the backend that computes the diff.
+     *
+     * @param diffBackend the backend that computes the diff.
+     */
+    public void setDiffBackend(final DiffBackend diffBackend)
+    {
+        this.diffBackend = diffBackend;
+    }
+
+    /**
+     * Returns the size above which a file is not loaded into memory to be diffed.
+     *
+     * @return the size in bytes above which a file is not loaded into memory to be diffed, or zero for no limit.
+     */
+    public long getDiffMaxFileSize()
+    {
+        return diffMaxFileSize;
+    }
+
+    /**
+     * Sets the size above which a file is not loaded into memory to be diffed.
+     *
+     * @param diffMaxFileSize the size in bytes above which a file is not loaded into memory to be diffed, or zero for no limit.
+     */
+    public void setDiffMaxFileSize(final long diffMaxFileSize)
+    {
+        this.diffMaxFileSize = diffMaxFileSize;
+    }
+
+    /**
+     * Returns the maximum number of lines in the changed region of a file to diff.
+     *
+     * @return the maximum number of lines in the changed region of a file to diff, or zero for no limit.
+     */
+    public int getDiffMaxLines()
+    {
+        return diffMaxLines;
+    }
+
+    /**
+     * Sets the maximum number of lines in the changed region of a file to diff.
+     *
+     * @param diffMaxLines the maximum number of lines in the changed region of a file to diff, or zero for no limit.
+     */
+    public void setDiffMaxLines(final int diffMaxLines)
+    {
+        this.diffMaxLines = diffMaxLines;
+    }
+
+    /**
+     * Returns what the merge base is compared with to find the changes.
+     *
+     * @return what the merge base is compared with to find the changes.
+     */
+    public DiffTarget getDiffTarget()
+    {
+        return diffTarget;
+    }
+
+    /**
+     * Sets what the merge base is compared with to find the changes.
+     *
+     * @param diffTarget what the merge base is compared with to find the changes.
+     */
+    public void setDiffTarget(final DiffTarget diffTarget)
+    {
+        this.diffTarget = diffTarget;
+    }
+
+    /**
+     * Returns the maximum time in milliseconds to spend diffing a file.
+     *
+     * @return the maximum time in milliseconds to spend diffing a file, or zero for no limit.
+     */
+    public long getDiffTimeout()
+    {
+        return diffTimeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds to spend diffing a file.
+     *
+     * @param diffTimeout the maximum time in milliseconds to spend diffing a file, or zero for no limit.
+     */
+    public void setDiffTimeout(final long diffTimeout)
+    {
+        this.diffTimeout = diffTimeout;
+    }
+
+    /**
+     * Returns the globs of the source files to exclude, relative to their source root.
+     *
+     * @return the globs of the source files to exclude.
+     */
+    public List<String> getExcludes()
+    {
+        return excludes;
+    }
+
+    /**
+     * Sets the globs of the source files to exclude, relative to their source root.
+     *
+     * @param excludes the globs of the source files to exclude, or {@code null} to exclude none.
+     */
+    public void setExcludes(final List<String> excludes)
+    {
+        this.excludes = excludes == null ? Collections.emptyList() : excludes;
+    }
+
+    /**
+     * Returns the globs of the source files to include, relative to their source root.
+     *
+     * @return the globs of the source files to include, or empty to include all source files.
+     */
+    public List<String> getIncludes()
+    {
+        return includes;
+    }
+
+    /**
+     * Sets the globs of the source files to include, relative to their source root.
+     *
+     * @param includes the globs of the source files to include, or {@code null} or empty to include all source files.
+     */
+    public void setIncludes(final List<String> includes)
+    {
+        this.includes = includes == null ? Collections.emptyList() : includes;
+    }
+
+    /**
+     * Returns whether to update the cached changes of an earlier commit on the branch, rather than resolving them from scratch.
+     *
+     * @return whether to update the cached changes of an earlier commit on the branch.
+     */
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    /**
+     * Sets whether to update the cached changes of an earlier commit on the branch, rather than resolving them from scratch.
+     *
+     * @param incremental whether to update the cached changes of an earlier commit on the branch.
+     */
+    public void setIncremental(final boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * Returns whether to use the stat information in the Git index to avoid reading unmodified working tree files.
+     *
+     * @return whether to use the stat information in the Git index to avoid reading unmodified working tree files.
+     */
+    public boolean isIndexStatScan()
+    {
+        return indexStatScan;
+    }
+
+    /**
+     * Sets whether to use the stat information in the Git index to avoid reading unmodified working tree files.
+     *
+     * @param indexStatScan whether to use the stat information in the Git index to avoid reading unmodified working tree files.
+     */
+    public void setIndexStatScan(final boolean indexStatScan)
+    {
+        this.indexStatScan = indexStatScan;
+    }
+
+    /**
+     * Returns the maximum total number of lines of blobs whose line hashes are cached.
+     *
+     * @return the maximum total number of lines of blobs whose line hashes are cached, or zero to not cache line hashes.
+     */
+    public int getLineHashCacheSize()
+    {
+        return lineHashCacheSize;
+    }
+
+    /**
+     * Sets the maximum total number of lines of blobs whose line hashes are cached.
+     *
+     * @param lineHashCacheSize the maximum total number of lines of blobs whose line hashes are cached, or zero to not cache line hashes.
+     */
+    public void setLineHashCacheSize(final int lineHashCacheSize)
+    {
+        this.lineHashCacheSize = lineHashCacheSize;
+    }
+
+    /**
+     * Returns the number of threads to compute the edits of modified files with.
+     *
+     * @return the number of threads to compute the edits of modified files with.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads to compute the edits of modified files with.
+     *
+     * @param parallelism the number of threads to compute the edits of modified files with.
+     */
+    public void setParallelism(final int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the maximum number of added or deleted files to compare for renames.
+     *
+     * @return the maximum number of added or deleted files to compare for renames, or zero to not detect renames.
+     */
+    public int getRenameLimit()
+    {
+        return renameLimit;
+    }
+
+    /**
+     * Sets the maximum number of added or deleted files to compare for renames.
+     *
+     * @param renameLimit the maximum number of added or deleted files to compare for renames, or zero to not detect renames.
+     */
+    public void setRenameLimit(final int renameLimit)
+    {
+        this.renameLimit = renameLimit;
+    }
+
+    /**
+     * Returns the minimum similarity for an added and a deleted file to be detected as a rename.
+     *
+     * @return the minimum similarity, as a percentage.
+     */
+    public int getRenameScore()
+    {
+        return renameScore;
+    }
+
+    /**
+     * Sets the minimum similarity for an added and a deleted file to be detected as a rename.
+     *
+     * @param renameScore the minimum similarity, as a percentage.
+     */
+    public void setRenameScore(final int renameScore)
+    {
+        this.renameScore = renameScore;
+    }
+
+    @Override
+    public boolean equals(final Object other)
+    {
+        if (other instanceof GitDiffSettings)
+        {
+            final GitDiffSettings that = (GitDiffSettings) other;
+            return Objects.equals(getCacheDirectory(), that.getCacheDirectory())
+                   && getCacheSize() == that.getCacheSize()
+                   && Objects.equals(getCompareBranch(), that.getCompareBranch())
+                   && getDiffAlgorithm() == that.getDiffAlgorithm()
+                   && getDiffBackend() == that.getDiffBackend()
+                   && getDiffMaxFileSize() == that.getDiffMaxFileSize()
+                   && getDiffMaxLines() == that.getDiffMaxLines()
+                   && getDiffTarget() == that.getDiffTarget()
+                   && getDiffTimeout() == that.getDiffTimeout()
+                   && getExcludes().equals(that.getExcludes())
+                   && getIncludes().equals(that.getIncludes())
+                   && isIncremental() == that.isIncremental()
+                   && isIndexStatScan() == that.isIndexStatScan()
+                   && getLineHashCacheSize() == that.getLineHashCacheSize()
+                   && getParallelism() == that.getParallelism()
+                   && getRenameLimit() == that.getRenameLimit()
+                   && getRenameScore() == that.getRenameScore();
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(getCacheDirectory(), getCacheSize(), getCompareBranch(), getDiffAlgorithm(), getDiffBackend(),
+                            getDiffMaxFileSize(), getDiffMaxLines(), getDiffTarget(), getDiffTimeout(), getExcludes(), getIncludes(),
+                            isIncremental(), isIndexStatScan(), getLineHashCacheSize(), getParallelism(), getRenameLimit(),
+                            getRenameScore());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "cacheDirectory=" + cacheDirectory + ", cacheSize=" + cacheSize + ", compareBranch=" + compareBranch + ", diffAlgorithm="
+               + diffAlgorithm + ", diffBackend=" + diffBackend + ", diffMaxFileSize=" + diffMaxFileSize + ", diffMaxLines=" + diffMaxLines
+               + ", diffTarget=" + diffTarget + ", diffTimeout=" + diffTimeout + ", excludes=" + excludes + ", includes=" + includes
+               + ", incremental=" + incremental + ", indexStatScan=" + indexStatScan + ", lineHashCacheSize=" + lineHashCacheSize
+               + ", parallelism=" + parallelism + ", renameLimit=" + renameLimit + ", renameScore=" + renameScore;
+    }
+}
@@ -0,0 +1,19 @@
+package com.jjlharrison.coverage.changes;
+
+/**
+ * The backend that reads the coverage information for the changes from the JaCoCo XML report.
+ */
+public enum JacocoReportBackend
+{
+    /** A SAX parser that parses every element of the report. This is the default. */
+    SAX,
+
+    /** A pull parser that streams the report, skipping the packages, classes and source files without changes. */
+    STREAM,
+
+    /**
+     * A scanner of the memory-mapped report that looks for the few tags it needs and parses their integer attributes in place. A report
+     * that is not structured as JaCoCo writes it is parsed with {@code SAX} instead.
+     */
+    MAPPED
+}
@@ -0,0 +1,142 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.lib.Repository;
+
+import com.jjlharrison.coverage.changes.diff.LineHashCache;
+
+/**
+ * Computes the edit lists of modified files using a bounded pool of workers.
+ * <p>
+ * Each worker has its own {@link EditListResolver}, so loading and diffing the files is not serialised on a single object reader. Edit
+ * lists are returned in the order of the diff entries, so the changes merged from them are the same as when the entries are processed one
+ * at a time.
+ */
+public class ParallelEditListResolver
+{
+    /** Whether any of the edit lists resolved so far treat a changed region as changed in its entirety, rather than diffing it. */
+    private volatile boolean approximate;
+
+    /** The cache of the line hashes of blobs, shared by the workers, or {@code null} to not cache them. */
+    private final LineHashCache lineHashCache;
+
+    /** The logger. */
+    private final Logger log;
+
+    /** The Git repository. */
+    private final Repository repository;
+
+    /** The settings, including the maximum number of workers. */
+    private final GitDiffSettings settings;
+
+    /** Whether the new content is read from the working tree, rather than from the object database. */
+    private final boolean workingTree;
+
+    /**
+     * Constructor.
+     *
+     * @param repository the Git repository.
+     * @param workingTree whether the new content is read from the working tree, rather than from the object database.
+     * @param settings the settings, including the maximum number of workers.
+     * @param lineHashCache the cache of the line hashes of blobs, shared by the workers, or {@code null} to not cache them.
+     * @param log the logger.
+     */
+    public ParallelEditListResolver(final Repository repository, final boolean workingTree, final GitDiffSettings settings,
+                                    @Nullable final LineHashCache lineHashCache, final Logger log)
+    {
+        this.repository = repository;
+        this.workingTree = workingTree;
+        this.settings = settings;
+        this.lineHashCache = lineHashCache;
+        this.log = log;
+    }
+
+    /**
+     * Whether any of the edit lists resolved so far treat the changed region of a file as changed in its entirety, rather than diffing it.
+     *
+     * @return whether any of the edit lists are approximate.
+     * @see EditListResolver#isApproximate()
+     */
+    public boolean isApproximate()
+    {
+        return approximate;
+    }
+
+    /**
+     * Computes the edit lists for the given diff entries.
+     *
+     * @param entries the diff entries.
+     * @return the edit lists, in the same order as the diff entries.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public List<EditList> resolve(final List<DiffEntry> entries) throws IOException
+    {
+        final EditList[] editLists = new EditList[entries.size()];
+        final int workerCount = Math.min(settings.getParallelism(), entries.size());
+        if (workerCount > 0)
+        {
+            final AtomicInteger nextIndex = new AtomicInteger();
+            final ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+            try
+            {
+                final List<Future<Void>> futures = new ArrayList<>(workerCount);
+                for (int i = 0; i < workerCount; i++)
+                {
+                    futures.add(executor.submit(() -> {
+                        try (EditListResolver worker = new EditListResolver(repository, workingTree, settings, lineHashCache, log))
+                        {
+                            for (int index = nextIndex.getAndIncrement(); index < editLists.length; index = nextIndex.getAndIncrement())
+                            {
+                                editLists[index] = worker.getEdits(entries.get(index));
+                            }
+                            if (worker.isApproximate())
+                            {
+                                approximate = true;
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (final Future<Void> future : futures)
+                {
+                    future.get();
+                }
+            }
+            catch (final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+            }
+            catch (final ExecutionException e)
+            {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                {
+                    throw (IOException) cause;
+                }
+                throw new RuntimeException(e);
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+        return Arrays.asList(editLists);
+    }
+}
@@ -0,0 +1,80 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.EditList;
+
+/**
+ * Handler of the files found by a {@link UnifiedDiffParser} that records them, so that a diff can be parsed once and each module of the
+ * build can take its slice of it.
+ * <p>
+ * Only the first change found to each path is kept, so a diff can be parsed a few source roots at a time. Instances are not thread safe.
+ */
+final class ParsedDiff implements UnifiedDiffParser.Handler
+{
+    /** The changed files, indexed by their new path, or their old path if deleted. */
+    private final Map<String, FileChange> files = new LinkedHashMap<>();
+
+    @Override
+    public void file(final ChangeType changeType, @Nullable final String oldPath, @Nullable final String newPath, final EditList edits)
+    {
+        final String path = changeType == ChangeType.DELETE ? oldPath : newPath;
+        if (path != null)
+        {
+            files.putIfAbsent(path, new FileChange(changeType, oldPath, newPath, edits));
+        }
+    }
+
+    /**
+     * Passes the recorded files to the given handler, in the order they were found.
+     *
+     * @param handler the handler.
+     * @throws IOException if an I/O error occurs.
+     */
+    void apply(final UnifiedDiffParser.Handler handler) throws IOException
+    {
+        for (final FileChange file : files.values())
+        {
+            handler.file(file.changeType, file.oldPath, file.newPath, file.edits);
+        }
+    }
+
+    /**
+     * A changed file.
+     */
+    private static final class FileChange
+    {
+        /** The type of change. */
+        private final ChangeType changeType;
+
+        /** The edits. */
+        private final EditList edits;
+
+        /** The repository relative path after the change, or {@code null} if the file was deleted. */
+        private final String newPath;
+
+        /** The repository relative path before the change, or {@code null} if the file was added. */
+        private final String oldPath;
+
+        /**
+         * Constructor.
+         *
+         * @param changeType the type of change.
+         * @param oldPath the repository relative path before the change, or {@code null} if the file was added.
+         * @param newPath the repository relative path after the change, or {@code null} if the file was deleted.
+         * @param edits the edits.
+         */
+        FileChange(final ChangeType changeType, @Nullable final String oldPath, @Nullable final String newPath, final EditList edits)
+        {
+            this.changeType = changeType;
+            this.oldPath = oldPath;
+            this.newPath = newPath;
+            this.edits = edits;
+        }
+    }
+}
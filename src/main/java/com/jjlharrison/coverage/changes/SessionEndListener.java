@@ -0,0 +1,194 @@
+package com.jjlharrison.coverage.changes;
+
+import javax.annotation.Nullable;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+
+/**
+ * Execution listener that runs an action when the build ends, passing every event on to the listener it replaces.
+ * <p>
+ * Maven fires the end of the session however the build ends, including when modules fail with {@code --fail-at-end} or
+ * {@code --fail-never}, and whether or not the plugin is declared in the POM, unlike a lifecycle participant, which requires the plugin to
+ * be declared as an extension.
+ */
+final class SessionEndListener implements ExecutionListener
+{
+    /** The action to run when the build ends. */
+    private final Runnable action;
+
+    /** The listener that this listener replaces, or {@code null} if there was none. */
+    private final ExecutionListener delegate;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate the listener that this listener replaces, or {@code null} if there was none.
+     * @param action the action to run when the build ends.
+     */
+    SessionEndListener(@Nullable final ExecutionListener delegate, final Runnable action)
+    {
+        this.delegate = delegate;
+        this.action = action;
+    }
+
+    @Override
+    public void projectDiscoveryStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.projectDiscoveryStarted(event);
+        }
+    }
+
+    @Override
+    public void sessionStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.sessionStarted(event);
+        }
+    }
+
+    @Override
+    public void sessionEnded(final ExecutionEvent event)
+    {
+        try
+        {
+            if (delegate != null)
+            {
+                delegate.sessionEnded(event);
+            }
+        }
+        finally
+        {
+            action.run();
+        }
+    }
+
+    @Override
+    public void projectSkipped(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.projectSkipped(event);
+        }
+    }
+
+    @Override
+    public void projectStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.projectStarted(event);
+        }
+    }
+
+    @Override
+    public void projectSucceeded(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.projectSucceeded(event);
+        }
+    }
+
+    @Override
+    public void projectFailed(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.projectFailed(event);
+        }
+    }
+
+    @Override
+    public void mojoSkipped(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.mojoSkipped(event);
+        }
+    }
+
+    @Override
+    public void mojoStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.mojoStarted(event);
+        }
+    }
+
+    @Override
+    public void mojoSucceeded(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.mojoSucceeded(event);
+        }
+    }
+
+    @Override
+    public void mojoFailed(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.mojoFailed(event);
+        }
+    }
+
+    @Override
+    public void forkStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkStarted(event);
+        }
+    }
+
+    @Override
+    public void forkSucceeded(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkSucceeded(event);
+        }
+    }
+
+    @Override
+    public void forkFailed(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkFailed(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectStarted(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkedProjectStarted(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectSucceeded(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkedProjectSucceeded(event);
+        }
+    }
+
+    @Override
+    public void forkedProjectFailed(final ExecutionEvent event)
+    {
+        if (delegate != null)
+        {
+            delegate.forkedProjectFailed(event);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.jjlharrison.coverage.changes;
+
+import java.util.Collection;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Include and exclude globs for the paths of source files relative to their source root, e.g. {@code com/example/dto/**} or
+ * {@code **}{@code /*Config.java}.
+ * <p>
+ * {@code **} matches any number of directories, {@code *} matches any characters other than {@code /} and {@code ?} matches one character
+ * other than {@code /}. A file is selected if it matches any include (or there are none) and no exclude. Each set of globs is compiled into
+ * a single pattern, so a path is matched in one pass however many globs there are. Directories are checked too, so that a tree walk need
+ * not descend into a directory none of whose files could be selected. Instances are immutable and thread safe.
+ */
+final class SourceFileGlobs
+{
+    /** The pattern of the directories that are excluded along with everything within them, or {@code null} if there are none. */
+    private final Pattern excludedDirectories;
+
+    /** The pattern of the excluded files, or {@code null} if there are none. */
+    private final Pattern excludes;
+
+    /** The pattern of the included files, or {@code null} to include all files. */
+    private final Pattern includes;
+
+    /**
+     * Constructor.
+     *
+     * @param includes the globs of the files to include, or empty to include all files.
+     * @param excludes the globs of the files to exclude.
+     */
+    SourceFileGlobs(final Collection<String> includes, final Collection<String> excludes)
+    {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        // A glob ending in /** matches the directory itself as well as everything within it.
+        this.excludedDirectories = compile(excludes.stream().filter(e -> e.endsWith("/**")).collect(Collectors.toList()));
+    }
+
+    /**
+     * Whether there are no globs, so that all files are selected.
+     *
+     * @return whether all files are selected.
+     */
+    boolean isEmpty()
+    {
+        return includes == null && excludes == null;
+    }
+
+    /**
+     * Whether the given file is selected.
+     *
+     * @param path the path of the file relative to its source root.
+     * @return whether the file matches an include, or there are none, and matches no exclude.
+     */
+    boolean matches(final CharSequence path)
+    {
+        return (includes == null || includes.matcher(path).matches()) && (excludes == null || !excludes.matcher(path).matches());
+    }
+
+    /**
+     * Whether any file within the given directory could be selected.
+     *
+     * @param path the path of the directory relative to its source root, without a trailing slash.
+     * @return {@code false} if no file within the directory can be selected.
+     */
+    boolean mayMatchWithin(final String path)
+    {
+        if (excludedDirectories != null && excludedDirectories.matcher(path).matches())
+        {
+            return false;
+        }
+        if (includes != null)
+        {
+            // The directory is a dead end if the pattern neither matches nor could match were more input to follow.
+            final Matcher matcher = includes.matcher(path + '/');
+            return matcher.matches() || matcher.hitEnd();
+        }
+        return true;
+    }
+
+    /**
+     * Compiles the given globs into a single pattern.
+     *
+     * @param globs the globs.
+     * @return the pattern, or {@code null} if there are no globs.
+     */
+    @Nullable
+    private static Pattern compile(final Collection<String> globs)
+    {
+        if (globs.isEmpty())
+        {
+            return null;
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (final String glob : globs)
+        {
+            regex.append(regex.length() == 0 ? "(?:" : "|(?:").append(toRegex(glob)).append(')');
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Converts a glob to a regular expression.
+     *
+     * @param glob the glob.
+     * @return the regular expression.
+     */
+    @Nonnull
+    static String toRegex(final String glob)
+    {
+        final StringBuilder regex = new StringBuilder();
+        final String path = glob.startsWith("/") ? glob.substring(1) : glob;
+        int i = 0;
+        while (i < path.length())
+        {
+            final char c = path.charAt(i);
+            if (path.startsWith("**/", i))
+            {
+                // Any number of directories, including none.
+                regex.append("(?:.*/)?");
+                i += 3;
+            }
+            else if (path.startsWith("/**", i) && i + 3 == path.length())
+            {
+                // The directory itself, or anything within it.
+                regex.append("(?:/.*)?");
+                i += 3;
+            }
+            else if (path.startsWith("**", i))
+            {
+                regex.append(".*");
+                i += 2;
+            }
+            else
+            {
+                if (c == '*')
+                {
+                    regex.append("[^/]*");
+                }
+                else if (c == '?')
+                {
+                    regex.append("[^/]");
+                }
+                else
+                {
+                    if ("\\.[]{}()+^$|".indexOf(c) >= 0)
+                    {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+                i++;
+            }
+        }
+        return regex.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package com.jjlharrison.coverage.changes;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.EditList;
+
+import com.jjlharrison.coverage.changes.diff.ProjectChangesBuilder;
+
+/**
+ * Handler of the files found by a {@link UnifiedDiffParser} that adds those within a module's source roots to a builder, with their paths
+ * relative to the source roots.
+ */
+final class SourceRootChangesHandler implements UnifiedDiffParser.Handler
+{
+    /** The builder. */
+    private final ProjectChangesBuilder builder;
+
+    /** The source roots within the module. */
+    private final SourceRootTrie moduleSourceRoots;
+
+    /**
+     * Constructor.
+     *
+     * @param moduleSourceRoots the source roots within the module.
+     * @param builder the builder.
+     */
+    SourceRootChangesHandler(final SourceRootTrie moduleSourceRoots, final ProjectChangesBuilder builder)
+    {
+        this.moduleSourceRoots = moduleSourceRoots;
+        this.builder = builder;
+    }
+
+    @Override
+    public void file(final ChangeType changeType, @Nullable final String oldPath, @Nullable final String newPath, final EditList edits)
+    {
+        final String path = changeType == ChangeType.DELETE ? oldPath : newPath;
+        if (path == null)
+        {
+            return;
+        }
+        // The file may have been moved from outside the module's source roots, in which case it has no earlier changes to carry over.
+        final List<String> sourceRootRelativeOldFiles = oldPath == null || changeType != ChangeType.RENAME && changeType != ChangeType.COPY
+                                                        ? Collections.<String>emptyList()
+                                                        : moduleSourceRoots.getRelativePaths(oldPath);
+        final String sourceRootRelativeOldFile = sourceRootRelativeOldFiles.isEmpty() ? null : sourceRootRelativeOldFiles.get(0);
+        for (final String sourceRootRelativeFile : moduleSourceRoots.getRelativePaths(path))
+        {
+            switch (changeType)
+            {
+                case ADD:
+                    builder.add(sourceRootRelativeFile);
+                    break;
+                case DELETE:
+                    builder.delete(sourceRootRelativeFile);
+                    break;
+                case RENAME:
+                    builder.rename(sourceRootRelativeOldFile, sourceRootRelativeFile, edits);
+                    break;
+                case COPY:
+                    builder.copy(sourceRootRelativeOldFile, sourceRootRelativeFile, edits);
+                    break;
+                default:
+                    builder.modify(sourceRootRelativeFile, edits);
+                    break;
+            }
+        }
+    }
+}
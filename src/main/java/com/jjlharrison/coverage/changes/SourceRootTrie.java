@@ -0,0 +1,283 @@
+package com.jjlharrison.coverage.changes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Trie of repository relative source roots, keyed by path segment.
+ * <p>
+ * Maps a repository relative file path to the source roots that contain it, and to its path relative to each of them, in a single pass
+ * over the path's segments. The same trie backs a {@link TreeFilter} that matches the files within the source roots, comparing the raw
+ * path bytes of each tree entry without allocating. Files can be further restricted by {@link SourceFileGlobs}, which are checked in the
+ * tree filter too so that excluded files are never read. Instances are immutable and thread safe.
+ */
+final class SourceRootTrie
+{
+    /** The globs that select the files within the source roots. */
+    private final SourceFileGlobs globs;
+
+    /** The root node, for the empty path. */
+    private final Node root = new Node("");
+
+    /**
+     * Constructor for a trie that contains all files within the source roots.
+     *
+     * @param sourceRoots the repository relative source roots, with or without trailing slashes.
+     */
+    SourceRootTrie(final Collection<String> sourceRoots)
+    {
+        this(sourceRoots, new SourceFileGlobs(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param sourceRoots the repository relative source roots, with or without trailing slashes.
+     * @param globs the globs that select the files within the source roots.
+     */
+    SourceRootTrie(final Collection<String> sourceRoots, final SourceFileGlobs globs)
+    {
+        this.globs = globs;
+        for (final String sourceRoot : sourceRoots)
+        {
+            final String path = sourceRoot.endsWith("/") ? sourceRoot.substring(0, sourceRoot.length() - 1) : sourceRoot;
+            Node node = root;
+            int start = 0;
+            while (start < path.length())
+            {
+                final int end = getSegmentEnd(path, start);
+                Node child = node.getChild(path, start, end);
+                if (child == null)
+                {
+                    child = new Node(path.substring(start, end));
+                    node.children.add(child);
+                }
+                node = child;
+                start = end + 1;
+            }
+            node.sourceRoot = true;
+        }
+    }
+
+    /**
+     * Returns the paths of the given file relative to each source root that contains it and whose globs select it, outermost source root
+     * first.
+     *
+     * @param path the repository relative file path.
+     * @return the source root relative paths, empty if no source root contains and selects the file.
+     */
+    @Nonnull
+    List<String> getRelativePaths(final String path)
+    {
+        List<String> relativePaths = Collections.emptyList();
+        Node node = root;
+        int start = 0;
+        while (node != null && start < path.length())
+        {
+            if (node.sourceRoot)
+            {
+                final String relativePath = path.substring(start);
+                if (globs.matches(relativePath))
+                {
+                    if (relativePaths.isEmpty())
+                    {
+                        relativePaths = new ArrayList<>(1);
+                    }
+                    relativePaths.add(relativePath);
+                }
+            }
+            final int end = getSegmentEnd(path, start);
+            node = node.getChild(path, start, end);
+            start = end + 1;
+        }
+        return relativePaths;
+    }
+
+    /**
+     * Returns a tree filter that matches the files within the source roots that the globs select, and the directories that lead to them.
+     *
+     * @return the tree filter.
+     */
+    @Nonnull
+    TreeFilter newTreeFilter()
+    {
+        return new SourceRootFilter();
+    }
+
+    /**
+     * Returns the index of the slash that ends the path segment starting at the given index, or the length of the path if it is the last
+     * segment.
+     *
+     * @param path the path.
+     * @param start the index of the start of the segment.
+     * @return the index of the end of the segment.
+     */
+    private static int getSegmentEnd(final String path, final int start)
+    {
+        final int slash = path.indexOf('/', start);
+        return slash < 0 ? path.length() : slash;
+    }
+
+    /**
+     * Node of the trie, for one path segment.
+     */
+    private static final class Node
+    {
+        /** The child nodes. There are few source roots, so the children are searched linearly. */
+        private final List<Node> children = new ArrayList<>(1);
+
+        /** The path segment. */
+        private final String name;
+
+        /** The path segment encoded as UTF-8, as tree entry paths are. */
+        private final byte[] rawName;
+
+        /** Whether a source root ends at this node. */
+        private boolean sourceRoot;
+
+        /**
+         * Constructor.
+         *
+         * @param name the path segment.
+         */
+        Node(final String name)
+        {
+            this.name = name;
+            this.rawName = name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the child for the given segment of a path.
+         *
+         * @param path the path.
+         * @param start the index of the start of the segment.
+         * @param end the index of the end of the segment.
+         * @return the child, or {@code null} if there is none.
+         */
+        @Nullable
+        Node getChild(final String path, final int start, final int end)
+        {
+            for (final Node child : children)
+            {
+                if (child.name.length() == end - start && path.regionMatches(start, child.name, 0, end - start))
+                {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the child for the given segment of a raw path.
+         *
+         * @param path the raw path.
+         * @param start the index of the start of the segment.
+         * @param end the index of the end of the segment.
+         * @return the child, or {@code null} if there is none.
+         */
+        @Nullable
+        Node getChild(final byte[] path, final int start, final int end)
+        {
+            for (final Node child : children)
+            {
+                if (child.rawName.length == end - start && regionMatches(path, start, child.rawName))
+                {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Whether the given region of a raw path equals the given name.
+         *
+         * @param path the raw path.
+         * @param start the index of the start of the region.
+         * @param name the raw name, of the same length as the region.
+         * @return whether the region equals the name.
+         */
+        private static boolean regionMatches(final byte[] path, final int start, final byte[] name)
+        {
+            for (int i = 0; i < name.length; i++)
+            {
+                if (path[start + i] != name[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Tree filter that matches the files within the source roots that the globs select, and the directories that lead to them.
+     */
+    private final class SourceRootFilter extends TreeFilter
+    {
+        @Override
+        public boolean include(final TreeWalk walker)
+        {
+            final byte[] path = walker.getRawPath();
+            final int length = walker.getPathLength();
+            Node node = root;
+            int start = 0;
+            while (!node.sourceRoot)
+            {
+                int end = start;
+                while (end < length && path[end] != '/')
+                {
+                    end++;
+                }
+                node = node.getChild(path, start, end);
+                if (node == null)
+                {
+                    return false;
+                }
+                if (end == length)
+                {
+                    // The entry is a source root, or a directory on the way to one.
+                    return node.sourceRoot || walker.isSubtree();
+                }
+                start = end + 1;
+            }
+            if (globs.isEmpty())
+            {
+                return true;
+            }
+            // Within a source root, relative to which the globs are matched.
+            final String relativePath = RawParseUtils.decode(StandardCharsets.UTF_8, path, start, length);
+            return walker.isSubtree() ? globs.mayMatchWithin(relativePath) : globs.matches(relativePath);
+        }
+
+        @Override
+        public boolean shouldBeRecursive()
+        {
+            return true;
+        }
+
+        @Override
+        @SuppressFBWarnings(value = "CN_IMPLEMENTS_CLONE_BUT_NOT_CLONEABLE", justification = "The filter is stateless so can be shared.")
+        public TreeFilter clone()
+        {
+            return this;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "SOURCE_ROOTS";
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package com.jjlharrison.coverage.changes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.DiffEntry.ChangeType;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Parser of unified diffs, such as the output of {@code git diff}, which reports the changed files and the edits of their hunks.
+ * <p>
+ * The diff is read in blocks into a fixed buffer. Only the header lines of each file and the hunk headers are copied out of it, and only
+ * paths are decoded to strings. The lines of each hunk, whose number is given by its header, are skipped within the buffer, looking only
+ * at their first byte to tell context lines from changed lines, so the patch itself is never held in memory however large it is. With
+ * {@code --unified=0} there are no context lines, and the edits are exactly those of the hunk headers.
+ * <p>
+ * Both Git's extended format and plain unified diffs (which start each file with its {@code ---} line) are understood. Paths must be
+ * relative to the repository root, optionally with Git's {@code a/} and {@code b/} prefixes, and the diff must not be coloured.
+ */
+final class UnifiedDiffParser
+{
+    /** The default size of the read buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The path of the missing side of an added or deleted file. */
+    private static final String DEV_NULL = "/dev/null";
+
+    /** The read buffer. */
+    private final byte[] buffer;
+
+    /** The handler of the changed files. */
+    private final Handler handler;
+
+    /** The input. */
+    private final InputStream input;
+
+    /** The current header line, copied out of the read buffer. */
+    private byte[] line = new byte[256];
+
+    /** The length of the current header line, excluding the line terminator. */
+    private int lineLength;
+
+    /** The position within the current line of the hunk header being parsed. */
+    private int cursor;
+
+    /** The index of the next line of the current hunk in the old file. */
+    private int oldLine;
+
+    /** The number of lines of the current hunk in the old file that are still to be read. */
+    private int oldRemaining;
+
+    /** The index of the next line of the current hunk in the new file. */
+    private int newLine;
+
+    /** The number of lines of the current hunk in the new file that are still to be read. */
+    private int newRemaining;
+
+    /** The edit being built from the changed lines of the current hunk, or {@code null} if the last line read was not changed. */
+    private Edit edit;
+
+    /** Whether the {@code +++} line of the current file has been read. */
+    private boolean newPathRead;
+
+    /** The end of the valid bytes in the read buffer. */
+    private int limit;
+
+    /** The position of the next unread byte in the read buffer. */
+    private int position;
+
+    /** The type of change to the current file, or {@code null} if there is no current file. */
+    private ChangeType changeType;
+
+    /** The edits of the current file. */
+    private EditList edits;
+
+    /** The repository relative path of the current file before the change. */
+    private String oldPath;
+
+    /** The repository relative path of the current file after the change. */
+    private String newPath;
+
+    /**
+     * Handler of the files found by the parser.
+     */
+    interface Handler
+    {
+        /**
+         * Handles a changed file.
+         *
+         * @param changeType the type of change.
+         * @param oldPath the repository relative path before the change, or {@code null} if the file was added.
+         * @param newPath the repository relative path after the change, or {@code null} if the file was deleted.
+         * @param edits the edits, empty if the file was added or deleted, is binary or only its mode or whitespace changed.
+         * @throws IOException if an I/O error occurs.
+         */
+        void file(ChangeType changeType, @Nullable String oldPath, @Nullable String newPath, EditList edits) throws IOException;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param input the output of {@code git diff}.
+     * @param handler the handler of the changed files.
+     */
+    UnifiedDiffParser(final InputStream input, final Handler handler)
+    {
+        this(input, handler, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param input the output of {@code git diff}.
+     * @param handler the handler of the changed files.
+     * @param bufferSize the size of the read buffer.
+     */
+    UnifiedDiffParser(final InputStream input, final Handler handler, final int bufferSize)
+    {
+        this.input = input;
+        this.handler = handler;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Parses the input to its end, passing each changed file to the handler.
+     *
+     * @throws IOException if an I/O error occurs or the input is malformed.
+     */
+    void parse() throws IOException
+    {
+        while (position < limit || fill())
+        {
+            if (oldRemaining > 0 || newRemaining > 0)
+            {
+                parseHunkLine();
+                continue;
+            }
+            readLine();
+            if (startsWith("diff --git "))
+            {
+                endFile();
+                startFile();
+                parseDiffGitLine();
+            }
+            else if (startsWith("--- ") && (changeType == null || newPathRead))
+            {
+                // A plain unified diff, in which each file starts with its --- line.
+                endFile();
+                startFile();
+                parseHeaderLine();
+            }
+            else if (changeType == null)
+            {
+                // Anything before the first file, e.g. a commit message.
+                continue;
+            }
+            else if (startsWith("@@ -"))
+            {
+                parseHunkHeader();
+            }
+            else
+            {
+                parseHeaderLine();
+            }
+        }
+        if (oldRemaining > 0 || newRemaining > 0)
+        {
+            throw new IOException("The diff of " + (newPath == null ? oldPath : newPath) + " is truncated.");
+        }
+        endFile();
+    }
+
+    /**
+     * Starts a file.
+     */
+    private void startFile()
+    {
+        changeType = ChangeType.MODIFY;
+        edits = new EditList();
+        oldPath = null;
+        newPath = null;
+        newPathRead = false;
+    }
+
+    /**
+     * Parses the {@code diff --git} line that starts a file, whose paths are used unless later header lines give them.
+     */
+    private void parseDiffGitLine()
+    {
+        final int start = "diff --git ".length();
+        if (start < lineLength && line[start] == '"')
+        {
+            final int end = skipQuoted(start);
+            oldPath = stripPrefix(unquote(start, end));
+            if (end + 1 < lineLength && line[end + 1] == '"')
+            {
+                newPath = stripPrefix(unquote(end + 1, skipQuoted(end + 1)));
+            }
+            else
+            {
+                newPath = stripPrefix(decode(end + 1, lineLength));
+            }
+        }
+        else if ((lineLength - start - 5) % 2 == 0)
+        {
+            // Unquoted paths may contain spaces, but the line is unambiguous when both are the same, as they are unless the file moved.
+            final int length = (lineLength - start - 5) / 2;
+            final String a = decode(start, start + 2 + length);
+            final String b = decode(start + 3 + length, lineLength);
+            if (a.startsWith("a/") && b.startsWith("b/") && a.regionMatches(2, b, 2, length))
+            {
+                oldPath = a.substring(2);
+                newPath = oldPath;
+            }
+        }
+    }
+
+    /**
+     * Parses an extended header line, or a {@code ---} or {@code +++} line, of the current file.
+     */
+    private void parseHeaderLine()
+    {
+        if (startsWith("new file mode "))
+        {
+            changeType = ChangeType.ADD;
+        }
+        else if (startsWith("deleted file mode "))
+        {
+            changeType = ChangeType.DELETE;
+        }
+        else if (startsWith("rename from "))
+        {
+            changeType = ChangeType.RENAME;
+            oldPath = parsePath("rename from ".length());
+        }
+        else if (startsWith("rename to "))
+        {
+            newPath = parsePath("rename to ".length());
+        }
+        else if (startsWith("copy from "))
+        {
+            changeType = ChangeType.COPY;
+            oldPath = parsePath("copy from ".length());
+        }
+        else if (startsWith("copy to "))
+        {
+            newPath = parsePath("copy to ".length());
+        }
+        else if (startsWith("--- "))
+        {
+            oldPath = stripPrefix(parsePath("--- ".length()));
+            if (oldPath == null && changeType == ChangeType.MODIFY)
+            {
+                changeType = ChangeType.ADD;
+            }
+        }
+        else if (startsWith("+++ "))
+        {
+            newPath = stripPrefix(parsePath("+++ ".length()));
+            newPathRead = true;
+            if (newPath == null && changeType == ChangeType.MODIFY)
+            {
+                changeType = ChangeType.DELETE;
+            }
+        }
+    }
+
+    /**
+     * Parses a hunk header, {@code @@ -oldStart[,oldCount] +newStart[,newCount] @@}, which gives the number of lines of the hunk that
+     * follow. A count of zero means the lines were inserted or deleted after the line at the start, and an omitted count means one line.
+     *
+     * @throws IOException if the hunk header is malformed.
+     */
+    private void parseHunkHeader() throws IOException
+    {
+        cursor = "@@ -".length();
+        final int oldStart = parseNumber();
+        final int oldCount = parseCount();
+        if (cursor + 1 >= lineLength || line[cursor] != ' ' || line[cursor + 1] != '+')
+        {
+            throw new IOException("Malformed hunk header: " + decode(0, lineLength));
+        }
+        cursor += 2;
+        final int newStart = parseNumber();
+        final int newCount = parseCount();
+        oldLine = oldCount == 0 ? oldStart : oldStart - 1;
+        oldRemaining = oldCount;
+        newLine = newCount == 0 ? newStart : newStart - 1;
+        newRemaining = newCount;
+    }
+
+    /**
+     * Reads the next line of the current hunk, adding its changed lines to the edits of the current file, and skips it within the read
+     * buffer.
+     *
+     * @throws IOException if an I/O error occurs or the line does not fit the hunk header.
+     */
+    private void parseHunkLine() throws IOException
+    {
+        final byte first = buffer[position];
+        if (first == '-' && oldRemaining > 0)
+        {
+            if (edit == null)
+            {
+                edit = new Edit(oldLine, newLine);
+            }
+            edit.extendA();
+            oldLine++;
+            oldRemaining--;
+        }
+        else if (first == '+' && newRemaining > 0)
+        {
+            if (edit == null)
+            {
+                edit = new Edit(oldLine, newLine);
+            }
+            edit.extendB();
+            newLine++;
+            newRemaining--;
+        }
+        else if (first != '\\')
+        {
+            // A context line, which some tools write without its leading space if it is empty.
+            if (first != ' ' && first != '\n' && first != '\r' || oldRemaining == 0 || newRemaining == 0)
+            {
+                throw new IOException("Malformed hunk in the diff of " + (newPath == null ? oldPath : newPath) + ".");
+            }
+            endEdit();
+            oldLine++;
+            oldRemaining--;
+            newLine++;
+            newRemaining--;
+        }
+        skipLine();
+        if (oldRemaining == 0 && newRemaining == 0)
+        {
+            endEdit();
+        }
+    }
+
+    /**
+     * Adds the edit being built, if any, to the edits of the current file.
+     */
+    private void endEdit()
+    {
+        if (edit != null)
+        {
+            edits.add(edit);
+            edit = null;
+        }
+    }
+
+    /**
+     * Parses the optional count that follows the start of a range in a hunk header at the cursor, and advances the cursor past it.
+     *
+     * @return the count, or one if it is omitted.
+     * @throws IOException if the count is malformed.
+     */
+    private int parseCount() throws IOException
+    {
+        if (cursor < lineLength && line[cursor] == ',')
+        {
+            cursor++;
+            return parseNumber();
+        }
+        return 1;
+    }
+
+    /**
+     * Parses the decimal number in the current line at the cursor, and advances the cursor past it.
+     *
+     * @return the number.
+     * @throws IOException if there is no number at the cursor.
+     */
+    private int parseNumber() throws IOException
+    {
+        int value = 0;
+        final int start = cursor;
+        while (cursor < lineLength && line[cursor] >= '0' && line[cursor] <= '9')
+        {
+            value = value * 10 + line[cursor++] - '0';
+        }
+        if (cursor == start)
+        {
+            throw new IOException("Malformed hunk header: " + decode(0, lineLength));
+        }
+        return value;
+    }
+
+    /**
+     * Passes the current file, if any, to the handler.
+     *
+     * @throws IOException if an I/O error occurs or the file has no path.
+     */
+    private void endFile() throws IOException
+    {
+        if (changeType == null)
+        {
+            return;
+        }
+        if (oldPath == null && newPath == null)
+        {
+            throw new IOException("Could not parse the paths of a file in the diff.");
+        }
+        if (changeType == ChangeType.ADD)
+        {
+            handler.file(changeType, null, newPath, new EditList());
+        }
+        else if (changeType == ChangeType.DELETE)
+        {
+            handler.file(changeType, oldPath, null, new EditList());
+        }
+        else
+        {
+            handler.file(changeType, oldPath == null ? newPath : oldPath, newPath == null ? oldPath : newPath, edits);
+        }
+        changeType = null;
+    }
+
+    /**
+     * Parses the path that follows a header, which is quoted if it contains unusual characters. Anything after a tab in an unquoted path is
+     * dropped: Git ends the paths of the {@code ---} and {@code +++} lines with a tab if they contain a space, and other tools follow it
+     * with a timestamp.
+     *
+     * @param start the position of the path in the current line.
+     * @return the path.
+     */
+    @Nonnull
+    private String parsePath(final int start)
+    {
+        if (start < lineLength && line[start] == '"')
+        {
+            return unquote(start, skipQuoted(start));
+        }
+        int end = start;
+        while (end < lineLength && line[end] != '\t')
+        {
+            end++;
+        }
+        return decode(start, end);
+    }
+
+    /**
+     * Strips the {@code a/} or {@code b/} prefix from a path.
+     *
+     * @param path the path with a prefix, or {@code /dev/null}.
+     * @return the path without its prefix, or {@code null} for {@code /dev/null}.
+     */
+    @Nullable
+    private static String stripPrefix(final String path)
+    {
+        if (DEV_NULL.equals(path))
+        {
+            return null;
+        }
+        return path.startsWith("a/") || path.startsWith("b/") ? path.substring(2) : path;
+    }
+
+    /**
+     * Returns the position after the closing quote of the quoted string at the given position of the current line.
+     *
+     * @param start the position of the opening quote.
+     * @return the position after the closing quote, or the length of the line if it is unterminated.
+     */
+    private int skipQuoted(final int start)
+    {
+        int i = start + 1;
+        while (i < lineLength && line[i] != '"')
+        {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        return Math.min(i + 1, lineLength);
+    }
+
+    /**
+     * Unquotes the C style quoted string in the given region of the current line, whose octal escapes are the bytes of UTF-8 characters.
+     *
+     * @param start the position of the opening quote.
+     * @param end the position after the closing quote.
+     * @return the unquoted string.
+     */
+    @Nonnull
+    private String unquote(final int start, final int end)
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        int i = start + 1;
+        while (i < end - 1)
+        {
+            final byte b = line[i++];
+            if (b != '\\' || i >= end - 1)
+            {
+                bytes.write(b);
+                continue;
+            }
+            final byte escaped = line[i++];
+            if (escaped >= '0' && escaped <= '7')
+            {
+                int value = escaped - '0';
+                for (int digits = 1; digits < 3 && i < end - 1 && line[i] >= '0' && line[i] <= '7'; digits++)
+                {
+                    value = value * 8 + line[i++] - '0';
+                }
+                bytes.write(value);
+            }
+            else
+            {
+                bytes.write(unescape(escaped));
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the character for a single character escape sequence.
+     *
+     * @param escaped the character after the backslash.
+     * @return the character it stands for.
+     */
+    private static int unescape(final byte escaped)
+    {
+        switch (escaped)
+        {
+            case 'a':
+                return 7;
+            case 'b':
+                return '\b';
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'v':
+                return 11;
+            case 'f':
+                return '\f';
+            case 'r':
+                return '\r';
+            default:
+                return escaped;
+        }
+    }
+
+    /**
+     * Decodes the given region of the current line as UTF-8.
+     *
+     * @param start the start of the region.
+     * @param end the end of the region.
+     * @return the decoded string.
+     */
+    @Nonnull
+    private String decode(final int start, final int end)
+    {
+        return RawParseUtils.decode(StandardCharsets.UTF_8, line, start, Math.max(start, end));
+    }
+
+    /**
+     * Whether the current line starts with the given ASCII prefix.
+     *
+     * @param prefix the prefix.
+     * @return whether the line starts with the prefix.
+     */
+    private boolean startsWith(final String prefix)
+    {
+        if (lineLength < prefix.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (line[i] != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the next line out of the read buffer into the current line, without its line terminator.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void readLine() throws IOException
+    {
+        lineLength = 0;
+        while (position < limit || fill())
+        {
+            int end = position;
+            while (end < limit && buffer[end] != '\n')
+            {
+                end++;
+            }
+            final int length = end - position;
+            if (lineLength + length > line.length)
+            {
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+            }
+            System.arraycopy(buffer, position, line, lineLength, length);
+            lineLength += length;
+            position = end;
+            if (end < limit)
+            {
+                position++;
+                break;
+            }
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r')
+        {
+            lineLength--;
+        }
+    }
+
+    /**
+     * Skips the next line within the read buffer, without copying it.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void skipLine() throws IOException
+    {
+        while (position < limit || fill())
+        {
+            while (position < limit)
+            {
+                if (buffer[position++] == '\n')
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Refills the read buffer.
+     *
+     * @return whether any bytes were read, {@code false} at the end of the input.
+     * @throws IOException if an I/O error occurs.
+     */
+    private boolean fill() throws IOException
+    {
+        final int read = input.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -0,0 +1,208 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Bounded cache of the hashes of the lines of blobs, so that a blob that is diffed again (e.g. the same merge base blob in another module,
+ * or in a later build) does not have its lines hashed again.
+ * <p>
+ * Blobs are keyed by object id, so their hashes never go stale. The total number of lines held is bounded, and the least recently used
+ * blobs are evicted first. The cache may be saved to a file and loaded again in a later build. The file starts with the name of the
+ * comparator the lines were hashed with, and hashes of any other comparator are not loaded. Unreadable files are treated as empty, so the
+ * file can safely be deleted at any time. Instances are thread safe.
+ */
+public class LineHashCache
+{
+    /** The magic number and format version at the start of the file. */
+    private static final int MAGIC = 0x43434801;
+
+    /** The name of the comparator the lines are hashed with. */
+    private final String comparatorName;
+
+    /** The line hashes of each blob, least recently used first. */
+    private final LinkedHashMap<ObjectId, int[]> hashesById = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The total number of lines held. */
+    private long lineCount;
+
+    /** The maximum total number of lines to hold. */
+    private final long maxLineCount;
+
+    /** Whether hashes have been added since the cache was last loaded or saved. */
+    private boolean modified;
+
+    /**
+     * Constructor.
+     *
+     * @param comparatorName the name of the comparator the lines are hashed with, including anything its hashes depend on.
+     * @param maxLineCount the maximum total number of lines to hold.
+     */
+    public LineHashCache(final String comparatorName, final long maxLineCount)
+    {
+        this.comparatorName = comparatorName;
+        this.maxLineCount = maxLineCount;
+    }
+
+    /**
+     * Returns the line hashes of the given blob.
+     *
+     * @param id the blob id.
+     * @return the line hashes, or {@code null} if they are not cached.
+     */
+    @Nullable
+    @CheckForNull
+    public synchronized int[] get(final AnyObjectId id)
+    {
+        return hashesById.get(id);
+    }
+
+    /**
+     * Adds the line hashes of the given blob, evicting the least recently used blobs if the cache is full.
+     *
+     * @param id the blob id.
+     * @param hashes the line hashes, which must not be modified afterwards.
+     */
+    public synchronized void put(final AnyObjectId id, final int[] hashes)
+    {
+        if (hashes.length > maxLineCount)
+        {
+            return;
+        }
+        final int[] previous = hashesById.put(id.copy(), hashes);
+        lineCount += hashes.length - (previous == null ? 0 : previous.length);
+        final Iterator<int[]> iterator = hashesById.values().iterator();
+        while (lineCount > maxLineCount)
+        {
+            lineCount -= iterator.next().length;
+            iterator.remove();
+        }
+        modified = true;
+    }
+
+    /**
+     * Whether hashes have been added since the cache was last loaded or saved.
+     *
+     * @return whether the cache has been modified.
+     */
+    public synchronized boolean isModified()
+    {
+        return modified;
+    }
+
+    /**
+     * Adds the line hashes saved in the given file, if it exists, is readable and was saved for the same comparator.
+     *
+     * @param file the file.
+     */
+    public synchronized void load(final File file)
+    {
+        if (!file.isFile())
+        {
+            return;
+        }
+        final Map<ObjectId, int[]> loaded = new LinkedHashMap<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (input.readInt() != MAGIC)
+            {
+                throw new IOException("Unrecognised line hash cache format.");
+            }
+            if (!comparatorName.equals(input.readUTF()))
+            {
+                // Hashed with another comparator, or another version of JGit, so will be replaced when the cache is saved.
+                return;
+            }
+            final int count = input.readInt();
+            final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+            for (int i = 0; i < count; i++)
+            {
+                input.readFully(id);
+                final int length = input.readInt();
+                if (length < 0 || length > maxLineCount)
+                {
+                    throw new IOException("Malformed line hash cache entry.");
+                }
+                final int[] hashes = new int[length];
+                for (int j = 0; j < hashes.length; j++)
+                {
+                    hashes[j] = input.readInt();
+                }
+                loaded.put(ObjectId.fromRaw(id), hashes);
+            }
+        }
+        catch (final IOException e)
+        {
+            FileUtils.deleteQuietly(file);
+            return;
+        }
+        // The saved blobs are older than any added since, so make room for them first.
+        final Map<ObjectId, int[]> added = new LinkedHashMap<>(hashesById);
+        hashesById.clear();
+        lineCount = 0;
+        final boolean wasModified = modified;
+        loaded.forEach(this::put);
+        added.forEach(this::put);
+        modified = wasModified;
+    }
+
+    /**
+     * Saves the line hashes to the given file, replacing it atomically.
+     *
+     * @param file the file.
+     * @throws IOException if an I/O error occurs.
+     */
+    public synchronized void save(final File file) throws IOException
+    {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        Utilities.forceMkdir(directory);
+        final File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+        try
+        {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+            {
+                output.writeInt(MAGIC);
+                output.writeUTF(comparatorName);
+                output.writeInt(hashesById.size());
+                final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+                for (final Map.Entry<ObjectId, int[]> entry : hashesById.entrySet())
+                {
+                    entry.getKey().copyRawTo(id, 0);
+                    output.write(id);
+                    output.writeInt(entry.getValue().length);
+                    for (final int hash : entry.getValue())
+                    {
+                        output.writeInt(hash);
+                    }
+                }
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+        modified = false;
+    }
+}
@@ -0,0 +1,273 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Builds {@link ProjectChanges} from the changes made to each file, optionally on top of the changes up to an earlier revision.
+ * <p>
+ * When starting from earlier changes, the changed lines of a modified file are mapped through the new edits: lines that have been
+ * replaced or deleted are dropped, the remaining lines are shifted by the number of lines inserted or deleted before them, and the lines
+ * inserted or replaced by the new edits are added. New files remain new unless they are deleted.
+ * <p>
+ * The changes of a diff may be recorded in any order. A renamed or copied file carries over the earlier changes of the file it came from,
+ * even if that file's own modification, deletion or re-addition has already been recorded.
+ */
+public class ProjectChangesBuilder
+{
+    /** The lines that have been changed mapped by file. */
+    private final Map<String, Set<Integer>> changedLinesByFile;
+
+    /** The earlier changed lines of the replaced files that had any, mapped by file. */
+    private final Map<String, Set<Integer>> earlierChangedLinesByFile = new HashMap<>();
+
+    /** The replaced files that were new files. */
+    private final Set<String> earlierNewFiles = new HashSet<>();
+
+    /** New files that have been added. */
+    private final Set<String> newFiles;
+
+    /** The files whose earlier changes have been replaced by recording that they were added, deleted or modified. */
+    private final Set<String> replacedFiles = new HashSet<>();
+
+    /**
+     * Constructor for building changes from scratch.
+     */
+    public ProjectChangesBuilder()
+    {
+        changedLinesByFile = new HashMap<>();
+        newFiles = new HashSet<>();
+    }
+
+    /**
+     * Constructor for building changes on top of the given changes, which are not modified.
+     *
+     * @param changes the changes up to an earlier revision.
+     */
+    public ProjectChangesBuilder(final ProjectChanges changes)
+    {
+        changedLinesByFile = new HashMap<>(Utilities.capacity(changes.getChangedLinesByFile().size()));
+        changes.getChangedLinesByFile().forEach((file, lines) -> changedLinesByFile.put(file, new TreeSet<>(lines)));
+        newFiles = new HashSet<>(changes.getNewFiles());
+    }
+
+    /**
+     * Records that the given file has been added.
+     *
+     * @param file the file.
+     * @return this builder.
+     */
+    @Nonnull
+    public ProjectChangesBuilder add(final String file)
+    {
+        replace(file);
+        changedLinesByFile.remove(file);
+        newFiles.add(file);
+        return this;
+    }
+
+    /**
+     * Records that the given file has been deleted.
+     *
+     * @param file the file.
+     * @return this builder.
+     */
+    @Nonnull
+    public ProjectChangesBuilder delete(final String file)
+    {
+        replace(file);
+        changedLinesByFile.remove(file);
+        newFiles.remove(file);
+        return this;
+    }
+
+    /**
+     * Records that the given file has been modified by the given edits.
+     *
+     * @param file the file.
+     * @param edits the edits, sorted and non-overlapping as returned by the diff algorithm.
+     * @return this builder.
+     */
+    @Nonnull
+    public ProjectChangesBuilder modify(final String file, final EditList edits)
+    {
+        replace(file);
+        return applyEdits(file, edits);
+    }
+
+    /**
+     * Records that the given file has been modified by the given edits, shifting any changes it already has.
+     *
+     * @param file the file.
+     * @param edits the edits, sorted and non-overlapping as returned by the diff algorithm.
+     * @return this builder.
+     */
+    @Nonnull
+    private ProjectChangesBuilder applyEdits(final String file, final EditList edits)
+    {
+        if (!newFiles.contains(file))
+        {
+            final Set<Integer> previousLines = changedLinesByFile.remove(file);
+            final Set<Integer> lines = previousLines == null ? new TreeSet<>() : shift(previousLines, edits);
+            for (final Edit edit : edits)
+            {
+                if (edit.getType() == Edit.Type.INSERT || edit.getType() == Edit.Type.REPLACE)
+                {
+                    for (int line = edit.getBeginB() + 1; line <= edit.getEndB(); line++)
+                    {
+                        lines.add(line);
+                    }
+                }
+            }
+            if (!lines.isEmpty())
+            {
+                changedLinesByFile.put(file, lines);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Records that the given file has been renamed from the given old file and modified by the given edits. Any changes to the old file
+     * are carried over to the new file, so a renamed file is only new if the old file was.
+     *
+     * @param oldFile the old file, or {@code null} if it is not within the source roots.
+     * @param file the file.
+     * @param edits the edits between the old file and the file.
+     * @return this builder.
+     */
+    @Nonnull
+    public ProjectChangesBuilder rename(@Nullable final String oldFile, final String file, final EditList edits)
+    {
+        carryOver(oldFile, file, true);
+        return applyEdits(file, edits);
+    }
+
+    /**
+     * Records that the given file has been copied from the given old file, which remains, and modified by the given edits. Any changes to
+     * the old file are carried over to the new file.
+     *
+     * @param oldFile the old file, or {@code null} if it is not within the source roots.
+     * @param file the file.
+     * @param edits the edits between the old file and the file.
+     * @return this builder.
+     */
+    @Nonnull
+    public ProjectChangesBuilder copy(@Nullable final String oldFile, final String file, final EditList edits)
+    {
+        carryOver(oldFile, file, false);
+        return applyEdits(file, edits);
+    }
+
+    /**
+     * Returns the changes.
+     *
+     * @return the changes.
+     */
+    @Nonnull
+    public ProjectChanges build()
+    {
+        return new ProjectChanges(changedLinesByFile, newFiles);
+    }
+
+    /**
+     * Remembers the earlier changes of the given file, the first time that it is added, deleted or modified, for any file renamed or
+     * copied from it.
+     *
+     * @param file the file.
+     */
+    private void replace(final String file)
+    {
+        if (replacedFiles.add(file))
+        {
+            final Set<Integer> lines = changedLinesByFile.get(file);
+            if (lines != null)
+            {
+                earlierChangedLinesByFile.put(file, lines);
+            }
+            if (newFiles.contains(file))
+            {
+                earlierNewFiles.add(file);
+            }
+        }
+    }
+
+    /**
+     * Replaces the changes to the given file with the earlier changes to the given old file.
+     *
+     * @param oldFile the old file, or {@code null} if it is not within the source roots.
+     * @param file the file.
+     * @param remove whether to remove the changes to the old file, unless they have already been replaced.
+     */
+    private void carryOver(@Nullable final String oldFile, final String file, final boolean remove)
+    {
+        changedLinesByFile.remove(file);
+        newFiles.remove(file);
+        if (oldFile != null)
+        {
+            final Set<Integer> lines;
+            final boolean isNew;
+            if (replacedFiles.contains(oldFile))
+            {
+                lines = earlierChangedLinesByFile.get(oldFile);
+                isNew = earlierNewFiles.contains(oldFile);
+            }
+            else
+            {
+                lines = remove ? changedLinesByFile.remove(oldFile) : changedLinesByFile.get(oldFile);
+                isNew = remove ? newFiles.remove(oldFile) : newFiles.contains(oldFile);
+            }
+            if (lines != null)
+            {
+                changedLinesByFile.put(file, new TreeSet<>(lines));
+            }
+            if (isNew)
+            {
+                newFiles.add(file);
+            }
+        }
+    }
+
+    /**
+     * Maps the given lines of the old content through the given edits to the corresponding lines of the new content, dropping any lines
+     * that were replaced or deleted.
+     *
+     * @param lines the one based line numbers in the old content.
+     * @param edits the edits.
+     * @return the one based line numbers in the new content.
+     */
+    @Nonnull
+    private static Set<Integer> shift(final Set<Integer> lines, final EditList edits)
+    {
+        final Set<Integer> shiftedLines = new TreeSet<>();
+        final Iterator<Edit> editIterator = edits.iterator();
+        Edit edit = editIterator.hasNext() ? editIterator.next() : null;
+        int offset = 0;
+        for (final int line : new TreeSet<>(lines))
+        {
+            final int index = line - 1;
+            while (edit != null && edit.getEndA() <= index)
+            {
+                offset += edit.getLengthB() - edit.getLengthA();
+                edit = editIterator.hasNext() ? editIterator.next() : null;
+            }
+            if (edit == null || index < edit.getBeginA())
+            {
+                shiftedLines.add(line + offset);
+            }
+        }
+        return shiftedLines;
+    }
+}
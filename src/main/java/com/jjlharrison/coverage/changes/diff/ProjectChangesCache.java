@@ -0,0 +1,326 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Persistent cache of {@link ProjectChanges}, stored as one file per entry in a directory.
+ * <p>
+ * Entries are written in a compact binary format: the changed lines of each file are sorted and written as variable length deltas. The
+ * number of entries is bounded; the least recently used entries (by file modification time, which is updated on every hit) are evicted
+ * when a new entry is added. Unreadable entries are treated as misses, so the cache directory can safely be deleted at any time.
+ * <p>
+ * Each entry may also record the revision the changes were resolved at, so that they can be updated incrementally.
+ */
+public class ProjectChangesCache
+{
+    /** The magic number and format version at the start of each entry. */
+    private static final int MAGIC = 0x43434301;
+
+    /** The suffix of entry files. */
+    private static final String SUFFIX = ".changes";
+
+    /** The cache directory. */
+    private final File directory;
+
+    /** The maximum number of entries. */
+    private final int maxEntries;
+
+    /**
+     * Constructor.
+     *
+     * @param directory the cache directory.
+     * @param maxEntries the maximum number of entries.
+     */
+    public ProjectChangesCache(final File directory, final int maxEntries)
+    {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the cached changes for the given key.
+     *
+     * @param key the key, which must be usable as a file name.
+     * @return the cached changes, or {@code null} if there is no (readable) entry for the key.
+     */
+    @Nullable
+    @CheckForNull
+    public ProjectChanges get(final String key)
+    {
+        final Entry entry = getEntry(key);
+        return entry == null ? null : entry.getChanges();
+    }
+
+    /**
+     * Returns the cache entry for the given key.
+     *
+     * @param key the key, which must be usable as a file name.
+     * @return the cache entry, or {@code null} if there is no (readable) entry for the key.
+     */
+    @Nullable
+    @CheckForNull
+    public Entry getEntry(final String key)
+    {
+        final File file = new File(directory, key + SUFFIX);
+        if (!file.isFile())
+        {
+            return null;
+        }
+        final Entry entry;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            entry = read(input);
+        }
+        catch (final IOException e)
+        {
+            FileUtils.deleteQuietly(file);
+            return null;
+        }
+        try
+        {
+            Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch (final IOException e)
+        {
+            // Failing to mark the entry as recently used only makes it more likely to be evicted.
+        }
+        return entry;
+    }
+
+    /**
+     * Adds the changes for the given key to the cache, evicting the least recently used entries if the cache is full.
+     *
+     * @param key the key, which must be usable as a file name.
+     * @param changes the changes.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void put(final String key, final ProjectChanges changes) throws IOException
+    {
+        put(key, new Entry("", changes));
+    }
+
+    /**
+     * Adds the entry for the given key to the cache, evicting the least recently used entries if the cache is full.
+     *
+     * @param key the key, which must be usable as a file name.
+     * @param entry the entry.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void put(final String key, final Entry entry) throws IOException
+    {
+        Utilities.forceMkdir(directory);
+        final File temporaryFile = File.createTempFile(key, ".tmp", directory);
+        try
+        {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))))
+            {
+                write(entry, output);
+            }
+            Files.move(temporaryFile.toPath(), new File(directory, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until there are no more than the maximum number of entries.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    private void evict() throws IOException
+    {
+        final File[] files = directory.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files != null && files.length > maxEntries)
+        {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (int i = 0; i < files.length - maxEntries; i++)
+            {
+                // Another module may have evicted it already.
+                Files.deleteIfExists(files[i].toPath());
+            }
+        }
+    }
+
+    /**
+     * Reads an entry in the cache entry format.
+     *
+     * @param input the input.
+     * @return the entry.
+     * @throws IOException if an I/O error occurs or the input is not in the expected format.
+     */
+    static Entry read(final DataInput input) throws IOException
+    {
+        if (input.readInt() != MAGIC)
+        {
+            throw new IOException("Unrecognised cache entry format.");
+        }
+        final String revision = input.readUTF();
+        final int newFileCount = readVarInt(input);
+        final Set<String> newFiles = new HashSet<>(Utilities.capacity(newFileCount));
+        for (int i = 0; i < newFileCount; i++)
+        {
+            newFiles.add(input.readUTF());
+        }
+        final int changedFileCount = readVarInt(input);
+        final Map<String, Set<Integer>> changedLinesByFile = new HashMap<>(Utilities.capacity(changedFileCount));
+        for (int i = 0; i < changedFileCount; i++)
+        {
+            final String file = input.readUTF();
+            final int lineCount = readVarInt(input);
+            final Set<Integer> lines = new HashSet<>(Utilities.capacity(lineCount));
+            int line = 0;
+            for (int j = 0; j < lineCount; j++)
+            {
+                line += readVarInt(input);
+                lines.add(line);
+            }
+            changedLinesByFile.put(file, lines);
+        }
+        return new Entry(revision, new ProjectChanges(changedLinesByFile, newFiles));
+    }
+
+    /**
+     * Writes an entry in the cache entry format.
+     *
+     * @param entry the entry.
+     * @param output the output.
+     * @throws IOException if an I/O error occurs.
+     */
+    static void write(final Entry entry, final DataOutput output) throws IOException
+    {
+        final ProjectChanges changes = entry.getChanges();
+        output.writeInt(MAGIC);
+        output.writeUTF(entry.getRevision());
+        writeVarInt(output, changes.getNewFiles().size());
+        for (final String file : changes.getNewFiles())
+        {
+            output.writeUTF(file);
+        }
+        writeVarInt(output, changes.getChangedLinesByFile().size());
+        for (final Map.Entry<String, Set<Integer>> fileLines : changes.getChangedLinesByFile().entrySet())
+        {
+            output.writeUTF(fileLines.getKey());
+            writeVarInt(output, fileLines.getValue().size());
+            int previousLine = 0;
+            for (final int line : new TreeSet<>(fileLines.getValue()))
+            {
+                writeVarInt(output, line - previousLine);
+                previousLine = line;
+            }
+        }
+    }
+
+    /**
+     * Reads a non-negative integer written by {@link #writeVarInt(DataOutput, int)}.
+     *
+     * @param input the input.
+     * @return the integer.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static int readVarInt(final DataInput input) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            final byte b = input.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * Writes a non-negative integer using seven bits per byte, with the high bit set on all but the last byte.
+     *
+     * @param output the output.
+     * @param value the integer.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void writeVarInt(final DataOutput output, final int value) throws IOException
+    {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0)
+        {
+            output.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+
+    /**
+     * A cache entry.
+     */
+    public static class Entry
+    {
+        /** The changes. */
+        private final ProjectChanges changes;
+
+        /** The revision the changes were resolved at, or an empty string if not recorded. */
+        private final String revision;
+
+        /**
+         * Constructor.
+         *
+         * @param revision the revision the changes were resolved at, or an empty string if not recorded.
+         * @param changes the changes.
+         */
+        public Entry(final String revision, final ProjectChanges changes)
+        {
+            this.revision = revision;
+            this.changes = changes;
+        }
+
+        /**
+         * Returns the changes.
+         *
+         * @return the changes.
+         */
+        public ProjectChanges getChanges()
+        {
+            return changes;
+        }
+
+        /**
+         * Returns the revision the changes were resolved at.
+         *
+         * @return the revision the changes were resolved at, or an empty string if not recorded.
+         */
+        public String getRevision()
+        {
+            return revision;
+        }
+    }
+}
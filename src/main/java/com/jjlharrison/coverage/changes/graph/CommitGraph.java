@@ -0,0 +1,330 @@
+package com.jjlharrison.coverage.changes.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Read only view of a Git commit-graph file ({@code objects/info/commit-graph}).
+ * <p>
+ * The commit-graph stores the parents, commit time and generation number (topological level) of every commit reachable from the refs at
+ * the time it was written, indexed by position in the sorted list of commit ids. Reading a commit from it avoids inflating and parsing the
+ * commit object. Split commit-graph chains ({@code objects/info/commit-graphs}), hash functions other than SHA-1 and files without
+ * generation numbers (written by Git 2.18, which stores zero for every commit) are not supported. Instances are thread safe.
+ *
+ * @see <a href="https://git-scm.com/docs/gitformat-commit-graph">Git commit-graph format</a>
+ */
+final class CommitGraph
+{
+    /** The signature at the start of the file. */
+    private static final int SIGNATURE = 0x43475048; // "CGPH"
+
+    /** The chunk id of the OID fanout chunk. */
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+
+    /** The chunk id of the OID lookup chunk. */
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+
+    /** The chunk id of the commit data chunk. */
+    private static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+
+    /** The chunk id of the extra edge list chunk. */
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+
+    /** The parent position that indicates there is no parent. */
+    private static final int NO_PARENT = 0x70000000;
+
+    /** The flag of the second parent position that indicates it is an index into the extra edge list, and marks the last extra edge. */
+    private static final int EXTRA_EDGE_FLAG = 0x80000000;
+
+    /** The size of each entry in the commit data chunk: the root tree id, two parent positions and the generation and commit time. */
+    private static final int COMMIT_DATA_WIDTH = Constants.OBJECT_ID_LENGTH + 16;
+
+    /** The file content. */
+    private final ByteBuffer buffer;
+
+    /** The number of commits. */
+    private final int commitCount;
+
+    /** The offset of the commit data chunk. */
+    private final int commitDataOffset;
+
+    /** The offset of the extra edge list chunk, or -1 if there is none. */
+    private final int extraEdgesOffset;
+
+    /** The offset of the OID fanout chunk. */
+    private final int fanoutOffset;
+
+    /** The offset of the OID lookup chunk. */
+    private final int lookupOffset;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer the file content.
+     * @param fanoutOffset the offset of the OID fanout chunk.
+     * @param lookupOffset the offset of the OID lookup chunk.
+     * @param commitDataOffset the offset of the commit data chunk.
+     * @param extraEdgesOffset the offset of the extra edge list chunk, or -1 if there is none.
+     */
+    private CommitGraph(final ByteBuffer buffer, final int fanoutOffset, final int lookupOffset, final int commitDataOffset,
+                        final int extraEdgesOffset)
+    {
+        this.buffer = buffer;
+        this.fanoutOffset = fanoutOffset;
+        this.lookupOffset = lookupOffset;
+        this.commitDataOffset = commitDataOffset;
+        this.extraEdgesOffset = extraEdgesOffset;
+        commitCount = buffer.getInt(fanoutOffset + 255 * 4);
+    }
+
+    /**
+     * Opens the commit-graph file in the given objects directory.
+     *
+     * @param objectsDirectory the objects directory of the repository.
+     * @return the commit-graph, or {@code null} if there is no commit-graph file or it is not in a supported format.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    static CommitGraph open(final File objectsDirectory) throws IOException
+    {
+        final File file = new File(objectsDirectory, "info/commit-graph");
+        if (!file.isFile())
+        {
+            return null;
+        }
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(buffer);
+    }
+
+    /**
+     * Parses the header and chunk table of a commit-graph file, and checks that every commit has a generation number.
+     *
+     * @param buffer the file content.
+     * @return the commit-graph, or {@code null} if it is not in a supported format or any generation number is zero.
+     */
+    @Nullable
+    @CheckForNull
+    static CommitGraph parse(final ByteBuffer buffer)
+    {
+        // Header: signature, version 1, hash version 1 (SHA-1), number of chunks, number of base commit-graphs.
+        if (buffer.limit() < 8 || buffer.getInt(0) != SIGNATURE || buffer.get(4) != 1 || buffer.get(5) != 1 || buffer.get(7) != 0)
+        {
+            return null;
+        }
+        final int chunkCount = buffer.get(6) & 0xff;
+        int fanoutOffset = -1;
+        int lookupOffset = -1;
+        int commitDataOffset = -1;
+        int extraEdgesOffset = -1;
+        for (int i = 0; i < chunkCount && 8 + (i + 1) * 12 <= buffer.limit(); i++)
+        {
+            final int chunkId = buffer.getInt(8 + i * 12);
+            final long offset = buffer.getLong(8 + i * 12 + 4);
+            if (offset < 0 || offset > buffer.limit())
+            {
+                return null;
+            }
+            if (chunkId == CHUNK_OID_FANOUT)
+            {
+                fanoutOffset = (int) offset;
+            }
+            else if (chunkId == CHUNK_OID_LOOKUP)
+            {
+                lookupOffset = (int) offset;
+            }
+            else if (chunkId == CHUNK_COMMIT_DATA)
+            {
+                commitDataOffset = (int) offset;
+            }
+            else if (chunkId == CHUNK_EXTRA_EDGES)
+            {
+                extraEdgesOffset = (int) offset;
+            }
+        }
+        if (fanoutOffset < 0 || lookupOffset < 0 || commitDataOffset < 0 || fanoutOffset + 256 * 4 > buffer.limit())
+        {
+            return null;
+        }
+        final CommitGraph graph = new CommitGraph(buffer, fanoutOffset, lookupOffset, commitDataOffset, extraEdgesOffset);
+        final long count = graph.getCommitCount();
+        if (count < 0 || lookupOffset + count * Constants.OBJECT_ID_LENGTH > buffer.limit()
+            || commitDataOffset + count * COMMIT_DATA_WIDTH > buffer.limit())
+        {
+            return null;
+        }
+        // Commits that are not in the commit-graph get a generation one more than their parents', so an ordering by generation would be
+        // wrong if the commit-graph's were zero.
+        for (int position = 0; position < count; position++)
+        {
+            if (graph.getGeneration(position) == 0)
+            {
+                return null;
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the number of commits in the commit-graph.
+     *
+     * @return the number of commits.
+     */
+    int getCommitCount()
+    {
+        return commitCount;
+    }
+
+    /**
+     * Finds the position of the given commit.
+     *
+     * @param id the commit id.
+     * @return the position, or -1 if the commit is not in the commit-graph.
+     */
+    int findPosition(final AnyObjectId id)
+    {
+        final byte[] key = new byte[Constants.OBJECT_ID_LENGTH];
+        id.copyRawTo(key, 0);
+        final int firstByte = key[0] & 0xff;
+        int low = firstByte == 0 ? 0 : buffer.getInt(fanoutOffset + (firstByte - 1) * 4);
+        int high = buffer.getInt(fanoutOffset + firstByte * 4);
+        while (low < high)
+        {
+            final int middle = (low + high) >>> 1;
+            final int comparison = compare(key, lookupOffset + middle * Constants.OBJECT_ID_LENGTH);
+            if (comparison == 0)
+            {
+                return middle;
+            }
+            else if (comparison < 0)
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of the commit at the given position.
+     *
+     * @param position the position.
+     * @return the commit id.
+     */
+    @Nonnull
+    ObjectId getId(final int position)
+    {
+        final byte[] id = new byte[Constants.OBJECT_ID_LENGTH];
+        for (int i = 0; i < id.length; i++)
+        {
+            id[i] = buffer.get(lookupOffset + position * Constants.OBJECT_ID_LENGTH + i);
+        }
+        return ObjectId.fromRaw(id);
+    }
+
+    /**
+     * Returns the generation number (topological level) of the commit at the given position: one for a root commit, otherwise one more
+     * than the greatest generation number of its parents.
+     *
+     * @param position the position.
+     * @return the generation number.
+     */
+    int getGeneration(final int position)
+    {
+        return buffer.getInt(commitDataOffset + position * COMMIT_DATA_WIDTH + Constants.OBJECT_ID_LENGTH + 8) >>> 2;
+    }
+
+    /**
+     * Returns the commit time of the commit at the given position.
+     *
+     * @param position the position.
+     * @return the commit time in seconds since the epoch.
+     */
+    long getCommitTime(final int position)
+    {
+        final int offset = commitDataOffset + position * COMMIT_DATA_WIDTH + Constants.OBJECT_ID_LENGTH + 8;
+        return (buffer.getInt(offset) & 0x3L) << 32 | buffer.getInt(offset + 4) & 0xffffffffL;
+    }
+
+    /**
+     * Returns the positions of the parents of the commit at the given position.
+     *
+     * @param position the position.
+     * @return the parent positions.
+     */
+    @Nonnull
+    int[] getParents(final int position)
+    {
+        final int offset = commitDataOffset + position * COMMIT_DATA_WIDTH + Constants.OBJECT_ID_LENGTH;
+        final int parent1 = buffer.getInt(offset);
+        final int parent2 = buffer.getInt(offset + 4);
+        if (parent1 == NO_PARENT)
+        {
+            return new int[0];
+        }
+        else if (parent2 == NO_PARENT)
+        {
+            return new int[] {parent1};
+        }
+        else if ((parent2 & EXTRA_EDGE_FLAG) == 0)
+        {
+            return new int[] {parent1, parent2};
+        }
+        if (extraEdgesOffset < 0)
+        {
+            throw new IllegalStateException("Commit-graph has an octopus merge but no extra edge list.");
+        }
+        // Octopus merge: the remaining parents are in the extra edge list, the last of them flagged.
+        int edgeOffset = extraEdgesOffset + (parent2 & ~EXTRA_EDGE_FLAG) * 4;
+        int count = 1;
+        while ((buffer.getInt(edgeOffset + (count - 1) * 4) & EXTRA_EDGE_FLAG) == 0)
+        {
+            count++;
+        }
+        final int[] parents = new int[count + 1];
+        parents[0] = parent1;
+        for (int i = 1; i <= count; i++, edgeOffset += 4)
+        {
+            parents[i] = buffer.getInt(edgeOffset) & ~EXTRA_EDGE_FLAG;
+        }
+        return parents;
+    }
+
+    /**
+     * Compares a commit id with the id at the given offset of the OID lookup chunk.
+     *
+     * @param key the raw commit id.
+     * @param offset the offset of the id in the buffer.
+     * @return a negative integer, zero, or a positive integer as the key is less than, equal to, or greater than the id at the offset.
+     */
+    private int compare(final byte[] key, final int offset)
+    {
+        for (int i = 0; i < key.length; i++)
+        {
+            final int comparison = Integer.compare(key[i] & 0xff, buffer.get(offset + i) & 0xff);
+            if (comparison != 0)
+            {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+}
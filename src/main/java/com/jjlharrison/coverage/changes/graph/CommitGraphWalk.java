@@ -0,0 +1,624 @@
+package com.jjlharrison.coverage.changes.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.RevWalkUtils;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+/**
+ * Finds merge bases and counts the commits that one commit is ahead and behind another.
+ * <p>
+ * If the repository has a commit-graph file, the parents and generation numbers of commits are read from it rather than by parsing commit
+ * objects, and the walk visits commits in decreasing generation order so that it can stop as soon as every remaining commit is reachable
+ * from both sides. Commits made since the commit-graph was written are parsed and given generation numbers on the fly. Without a usable
+ * commit-graph, a {@link RevWalk} is used instead. Instances are not thread safe.
+ */
+public class CommitGraphWalk implements AutoCloseable
+{
+    /** Flag of commits reachable from the first commit. */
+    private static final int PARENT1 = 1;
+
+    /** Flag of commits reachable from the second commit. */
+    private static final int PARENT2 = 2;
+
+    /** Flag of commits reachable from a commit reachable from both commits. */
+    private static final int STALE = 4;
+
+    /** Flag of commits that have been found to be reachable from both commits. */
+    private static final int RESULT = 8;
+
+    /** Flag of commits that have been removed from the queue. */
+    private static final int POPPED = 16;
+
+    /** The order of the queue: greatest generation number first, then latest commit time first. */
+    private static final Comparator<Node> QUEUE_ORDER = Comparator.<Node>comparingInt(n -> n.generation).reversed()
+                                                            .thenComparing(Comparator.<Node>comparingLong(n -> n.commitTime).reversed());
+
+    /** The commit-graph, or {@code null} if the repository has no usable commit-graph. */
+    private final CommitGraph graph;
+
+    /** The nodes of commits in the commit-graph by position. */
+    private final Map<Integer, Node> graphNodes = new HashMap<>();
+
+    /** The nodes of commits that are not in the commit-graph by id. */
+    private final Map<ObjectId, Node> otherNodes = new HashMap<>();
+
+    /** The revision walk, used to parse commits that are not in the commit-graph and the results. */
+    private final RevWalk walk;
+
+    /**
+     * Constructor.
+     *
+     * @param repository the repository.
+     * @throws IOException if an I/O error occurs.
+     */
+    public CommitGraphWalk(final Repository repository) throws IOException
+    {
+        walk = new RevWalk(repository);
+        graph = isCommitGraphUsable(repository) ? CommitGraph.open(new File(repository.getDirectory(), Constants.OBJECTS)) : null;
+    }
+
+    /**
+     * Returns whether the commit-graph of the given repository can be used: it is not disabled by {@code core.commitGraph}, and the
+     * history is not altered by a shallow clone or replace refs, which are not reflected in the commit-graph.
+     *
+     * @param repository the repository.
+     * @return whether the commit-graph can be used.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static boolean isCommitGraphUsable(final Repository repository) throws IOException
+    {
+        return repository.getDirectory() != null
+               && repository.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, "commitGraph", true)
+               && !new File(repository.getDirectory(), Constants.SHALLOW).exists()
+               && repository.getRefDatabase().getRefsByPrefix(Constants.R_REFS + "replace/").isEmpty();
+    }
+
+    /**
+     * Returns whether a commit-graph is being used.
+     *
+     * @return whether a commit-graph is being used.
+     */
+    public boolean isUsingCommitGraph()
+    {
+        return graph != null;
+    }
+
+    @Override
+    public void close()
+    {
+        walk.close();
+    }
+
+    /**
+     * Finds the best common ancestor of the given commits. If there is more than one merge base (e.g. after criss-cross merges), the one
+     * with the greatest generation number, then the latest commit time, is returned.
+     *
+     * @param a the first commit.
+     * @param b the second commit.
+     * @return the merge base, or {@code null} if the commits have no common ancestor.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nullable
+    @CheckForNull
+    public RevCommit getMergeBase(final AnyObjectId a, final AnyObjectId b) throws IOException
+    {
+        if (graph == null)
+        {
+            walk.reset();
+            walk.setRevFilter(RevFilter.MERGE_BASE);
+            walk.markStart(walk.parseCommit(a));
+            walk.markStart(walk.parseCommit(b));
+            final RevCommit mergeBase = walk.next();
+            walk.reset();
+            walk.setRevFilter(RevFilter.ALL);
+            return mergeBase;
+        }
+        final Node nodeA = getNode(a);
+        final Node nodeB = getNode(b);
+        final List<Node> results = paintDownToCommon(nodeA, nodeB, null);
+        removeRedundant(results);
+        Node best = null;
+        for (final Node result : results)
+        {
+            if (best == null || QUEUE_ORDER.compare(result, best) < 0)
+            {
+                best = result;
+            }
+        }
+        return best == null ? null : walk.parseCommit(getId(best));
+    }
+
+    /**
+     * Counts the commits reachable from each of the given commits but not the other, as {@code git rev-list --count --left-right a...b}
+     * does.
+     *
+     * @param a the first commit.
+     * @param b the second commit.
+     * @return the number of commits that the first commit is ahead and behind the second commit.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    public AheadBehind countAheadBehind(final AnyObjectId a, final AnyObjectId b) throws IOException
+    {
+        if (graph == null)
+        {
+            final RevCommit mergeBase = getMergeBase(a, b);
+            walk.reset();
+            final RevCommit commitA = walk.parseCommit(a);
+            final RevCommit commitB = walk.parseCommit(b);
+            return new AheadBehind(RevWalkUtils.count(walk, commitA, mergeBase), RevWalkUtils.count(walk, commitB, mergeBase));
+        }
+        final int[] counts = new int[2];
+        paintDownToCommon(getNode(a), getNode(b), counts);
+        return new AheadBehind(counts[0], counts[1]);
+    }
+
+    /**
+     * Returns whether the first commit is an ancestor of (or the same as) the second commit.
+     * <p>
+     * With a commit-graph, the walk down from the second commit skips commits with a lower generation number than the first commit, which
+     * cannot have it as an ancestor, and stops as soon as it is found. If the first commit has the greater generation number, no walk is
+     * needed at all.
+     *
+     * @param ancestor the possible ancestor.
+     * @param descendant the possible descendant.
+     * @return whether the first commit is reachable from the second commit.
+     * @throws IOException if an I/O error occurs.
+     */
+    public boolean isAncestor(final AnyObjectId ancestor, final AnyObjectId descendant) throws IOException
+    {
+        if (ancestor.equals(descendant))
+        {
+            return true;
+        }
+        if (graph == null)
+        {
+            final RevCommit mergeBase = getMergeBase(ancestor, descendant);
+            return mergeBase != null && mergeBase.equals(ancestor);
+        }
+        final Node target = getNode(ancestor);
+        final Node start = getNode(descendant);
+        resetFlags();
+        final Deque<Node> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty())
+        {
+            final Node node = pending.pop();
+            if (node == target)
+            {
+                return true;
+            }
+            final List<Node> parents = getParents(node);
+            // Push the first parent last, so that the first parent history is followed first.
+            for (int i = parents.size() - 1; i >= 0; i--)
+            {
+                final Node parent = parents.get(i);
+                if (parent.generation >= target.generation && (parent.flags & PARENT1) == 0)
+                {
+                    parent.flags |= PARENT1;
+                    pending.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks down from the given commits in decreasing generation order, flagging each commit with the sides it is reachable from, until
+     * every queued commit is reachable from a common ancestor.
+     * <p>
+     * Since a commit's generation number is greater than those of all its ancestors, every commit has been reached from all of its queued
+     * descendants by the time it is removed from the queue, so its flags are final.
+     *
+     * @param a the first commit.
+     * @param b the second commit.
+     * @param counts if not {@code null}, the array to add the number of commits reachable from only the first and only the second commit
+     *     to.
+     * @return the commits found to be reachable from both commits, which include the merge bases.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private List<Node> paintDownToCommon(final Node a, final Node b, @Nullable final int[] counts) throws IOException
+    {
+        resetFlags();
+        final List<Node> results = new ArrayList<>();
+        final Queue queue = new Queue();
+        a.flags |= PARENT1;
+        queue.add(a);
+        b.flags |= PARENT2;
+        queue.add(b);
+        while (queue.hasNonStale())
+        {
+            final Node node = queue.remove();
+            if ((node.flags & POPPED) != 0)
+            {
+                continue;
+            }
+            node.flags |= POPPED;
+            int flags = node.flags & (PARENT1 | PARENT2 | STALE);
+            if (flags == (PARENT1 | PARENT2))
+            {
+                node.flags |= RESULT;
+                results.add(node);
+                flags |= STALE;
+                queue.markStale(node);
+            }
+            else if (counts != null && (flags & STALE) == 0)
+            {
+                counts[(flags & PARENT1) != 0 ? 0 : 1]++;
+            }
+            for (final Node parent : getParents(node))
+            {
+                if ((parent.flags & flags) != flags)
+                {
+                    if ((flags & STALE) != 0)
+                    {
+                        queue.markStale(parent);
+                    }
+                    parent.flags |= flags;
+                    queue.add(parent);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes the commits that are ancestors of other commits in the list.
+     *
+     * @param commits the commits.
+     * @throws IOException if an I/O error occurs.
+     */
+    private void removeRedundant(final List<Node> commits) throws IOException
+    {
+        if (commits.size() < 2)
+        {
+            return;
+        }
+        final int minimumGeneration = commits.stream().mapToInt(n -> n.generation).min().orElse(0);
+        final Set<Node> redundant = new HashSet<>();
+        for (final Node commit : commits)
+        {
+            if (redundant.contains(commit))
+            {
+                continue;
+            }
+            // Walk down from the commit, no further than the lowest candidate, marking the candidates it reaches as redundant.
+            final Set<Node> seen = new HashSet<>();
+            final Deque<Node> pending = new ArrayDeque<>(getParents(commit));
+            while (!pending.isEmpty())
+            {
+                final Node node = pending.pop();
+                if (node.generation >= minimumGeneration && seen.add(node))
+                {
+                    if ((node.flags & RESULT) != 0)
+                    {
+                        redundant.add(node);
+                    }
+                    pending.addAll(getParents(node));
+                }
+            }
+        }
+        commits.removeAll(redundant);
+    }
+
+    /**
+     * Clears the state left on the nodes by the previous walk.
+     */
+    private void resetFlags()
+    {
+        graphNodes.values().forEach(Node::reset);
+        otherNodes.values().forEach(Node::reset);
+    }
+
+    /**
+     * Returns the node for the given commit, parsing it and any ancestors that are not in the commit-graph.
+     *
+     * @param id the commit id.
+     * @return the node.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Nonnull
+    private Node getNode(final AnyObjectId id) throws IOException
+    {
+        final Node known = findNode(id);
+        if (known != null)
+        {
+            return known;
+        }
+        // Ancestors must have generation numbers first, so resolve them depth first without recursion.
+        final Deque<RevCommit> pending = new ArrayDeque<>();
+        pending.push(walk.parseCommit(id));
+        Node node = null;
+        while (!pending.isEmpty())
+        {
+            final RevCommit commit = pending.peek();
+            if (findNode(commit) != null)
+            {
+                pending.pop();
+                continue;
+            }
+            final Node[] parents = new Node[commit.getParentCount()];
+            boolean parentsKnown = true;
+            int generation = 0;
+            for (int i = 0; i < parents.length; i++)
+            {
+                parents[i] = findNode(commit.getParent(i));
+                if (parents[i] == null)
+                {
+                    pending.push(walk.parseCommit(commit.getParent(i)));
+                    parentsKnown = false;
+                }
+                else
+                {
+                    generation = Math.max(generation, parents[i].generation);
+                }
+            }
+            if (parentsKnown)
+            {
+                pending.pop();
+                node = new Node(-1, generation + 1, commit.getCommitTime());
+                node.id = commit.copy();
+                node.parents = parents;
+                otherNodes.put(node.id, node);
+            }
+        }
+        // The requested commit is at the bottom of the stack, so it is the last to be resolved.
+        return Objects.requireNonNull(node);
+    }
+
+    /**
+     * Returns the node for the given commit if it is in the commit-graph or has already been parsed.
+     *
+     * @param id the commit id.
+     * @return the node, or {@code null} if the commit has not been parsed yet.
+     */
+    @Nullable
+    @CheckForNull
+    private Node findNode(final AnyObjectId id)
+    {
+        final Node other = otherNodes.get(id);
+        if (other != null)
+        {
+            return other;
+        }
+        final int position = graph.findPosition(id);
+        return position < 0 ? null : getGraphNode(position);
+    }
+
+    /**
+     * Returns the node for the commit at the given position in the commit-graph.
+     *
+     * @param position the position.
+     * @return the node.
+     */
+    @Nonnull
+    private Node getGraphNode(final int position)
+    {
+        return graphNodes.computeIfAbsent(position, p -> new Node(p, graph.getGeneration(p), graph.getCommitTime(p)));
+    }
+
+    /**
+     * Returns the parents of the given node.
+     *
+     * @param node the node.
+     * @return the parents.
+     */
+    @Nonnull
+    private List<Node> getParents(final Node node)
+    {
+        if (node.parents == null)
+        {
+            final int[] positions = graph.getParents(node.position);
+            node.parents = new Node[positions.length];
+            for (int i = 0; i < positions.length; i++)
+            {
+                node.parents[i] = getGraphNode(positions[i]);
+            }
+        }
+        return Arrays.asList(node.parents);
+    }
+
+    /**
+     * Returns the id of the commit of the given node.
+     *
+     * @param node the node.
+     * @return the commit id.
+     */
+    @Nonnull
+    private ObjectId getId(final Node node)
+    {
+        if (node.id == null)
+        {
+            node.id = graph.getId(node.position);
+        }
+        return node.id;
+    }
+
+    /**
+     * The number of commits that one commit is ahead and behind another.
+     */
+    public static class AheadBehind
+    {
+        /** The number of commits reachable from the first commit but not the second. */
+        private final int aheadCount;
+
+        /** The number of commits reachable from the second commit but not the first. */
+        private final int behindCount;
+
+        /**
+         * Constructor.
+         *
+         * @param aheadCount the number of commits reachable from the first commit but not the second.
+         * @param behindCount the number of commits reachable from the second commit but not the first.
+         */
+        public AheadBehind(final int aheadCount, final int behindCount)
+        {
+            this.aheadCount = aheadCount;
+            this.behindCount = behindCount;
+        }
+
+        /**
+         * Returns the number of commits reachable from the first commit but not the second.
+         *
+         * @return the number of commits reachable from the first commit but not the second.
+         */
+        public int getAheadCount()
+        {
+            return aheadCount;
+        }
+
+        /**
+         * Returns the number of commits reachable from the second commit but not the first.
+         *
+         * @return the number of commits reachable from the second commit but not the first.
+         */
+        public int getBehindCount()
+        {
+            return behindCount;
+        }
+    }
+
+    /**
+     * A commit in the walk.
+     */
+    private static final class Node
+    {
+        /** The commit time in seconds since the epoch. */
+        private final long commitTime;
+
+        /** The flags. */
+        private int flags;
+
+        /** The generation number. */
+        private final int generation;
+
+        /** The commit id, or {@code null} if it has not been read from the commit-graph yet. */
+        private ObjectId id;
+
+        /** The parents, or {@code null} if they have not been read from the commit-graph yet. */
+        private Node[] parents;
+
+        /** The position in the commit-graph, or -1 if the commit is not in the commit-graph. */
+        private final int position;
+
+        /** The number of times the node is in the queue. */
+        private int queued;
+
+        /**
+         * Constructor.
+         *
+         * @param position the position in the commit-graph, or -1 if the commit is not in the commit-graph.
+         * @param generation the generation number.
+         * @param commitTime the commit time in seconds since the epoch.
+         */
+        Node(final int position, final int generation, final long commitTime)
+        {
+            this.position = position;
+            this.generation = generation;
+            this.commitTime = commitTime;
+        }
+
+        /**
+         * Clears the state left on the node by a walk.
+         */
+        void reset()
+        {
+            flags = 0;
+            queued = 0;
+        }
+    }
+
+    /**
+     * Priority queue of nodes that keeps count of the entries that are not stale.
+     */
+    private static final class Queue
+    {
+        /** The number of entries whose node is not stale. */
+        private int nonStale;
+
+        /** The entries. */
+        private final PriorityQueue<Node> queue = new PriorityQueue<>(QUEUE_ORDER);
+
+        /**
+         * Adds a node.
+         *
+         * @param node the node.
+         */
+        void add(final Node node)
+        {
+            queue.add(node);
+            node.queued++;
+            if ((node.flags & STALE) == 0)
+            {
+                nonStale++;
+            }
+        }
+
+        /**
+         * Returns whether the queue contains any node that is not stale.
+         *
+         * @return whether the queue contains any node that is not stale.
+         */
+        boolean hasNonStale()
+        {
+            return nonStale > 0;
+        }
+
+        /**
+         * Marks a node stale, which must be done through the queue so that it can keep count.
+         *
+         * @param node the node.
+         */
+        void markStale(final Node node)
+        {
+            if ((node.flags & STALE) == 0)
+            {
+                node.flags |= STALE;
+                nonStale -= node.queued;
+            }
+        }
+
+        /**
+         * Removes the first node.
+         *
+         * @return the node.
+         */
+        @Nonnull
+        Node remove()
+        {
+            final Node node = queue.remove();
+            node.queued--;
+            if ((node.flags & STALE) == 0)
+            {
+                nonStale--;
+            }
+            return node;
+        }
+    }
+}
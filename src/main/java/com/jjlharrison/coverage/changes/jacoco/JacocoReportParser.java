@@ -55,12 +55,24 @@ public class JacocoReportParser extends DefaultHandler
     {
         this.newFiles = newFiles;
         this.changedLinesByFile = changedLinesByFile;
-        final int changeCount = newFiles.size() + changedLinesByFile.size();
-        interestingPackages = new HashSet<>(capacity(changeCount));
+        interestingPackages = getPackageNames(newFiles, changedLinesByFile);
+        coverage = new ArrayList<>(newFiles.size() + changedLinesByFile.size());
+    }
+
+    /**
+     * Returns the names of the packages that contain the given files, in the form JaCoCo reports them, e.g. {@code com/example}.
+     *
+     * @param newFiles the new files.
+     * @param changedLinesByFile the changed lines indexed by the name of the modified files.
+     * @return the package names.
+     */
+    static Set<String> getPackageNames(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile)
+    {
+        final Set<String> packageNames = new HashSet<>(capacity(newFiles.size() + changedLinesByFile.size()));
         Stream.concat(newFiles.stream(), changedLinesByFile.keySet().stream())
             .map(n -> n.contains("/") ? n.substring(0, n.lastIndexOf('/')) : "")
-            .forEach(interestingPackages::add);
-        coverage = new ArrayList<>(changeCount);
+            .forEach(packageNames::add);
+        return packageNames;
     }
 
     @Override
@@ -0,0 +1,654 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.jjlharrison.coverage.changes.ChangeCoverage;
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Reads the JaCoCo XML report with a pull parser to extract coverage information for changes.
+ * <p>
+ * Most of a large report is about packages without changes, so rather than tokenizing every element as the SAX parser that drives {@link
+ * JacocoReportParser} does, the reader jumps over the subtrees of packages without changes, of the classes within the packages with
+ * changes (which only repeat the counters of their source files), of the unchanged source files and of the session info elements. Those
+ * subtrees are skipped by scanning the raw bytes for the ends of tags and tracking the element depth, without decoding any names or
+ * attributes. The elements of the changed source files are decoded and passed to a {@link JacocoReportPackageParser}, so the coverage
+ * information is extracted just as it is by {@link JacocoReportParser}.
+ * <p>
+ * The report is read in blocks into a fixed buffer. The byte order mark, the encoding declared by the XML declaration and the references
+ * in attribute values are handled by {@link XmlBytes}, as they are by {@link JacocoReportScanner}. Reports in an encoding that is not a
+ * superset of ASCII, such as UTF-16, are passed to {@link JacocoReportParser} instead.
+ */
+public class JacocoReportReader
+{
+    /** The default size of the read buffer. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The size of the read buffer. */
+    private final int bufferSize;
+
+    /** The lines to extract coverage information indexed by the name of the modified files. */
+    private final Map<String, Set<Integer>> changedLinesByFile;
+
+    /** Packages that have changes. */
+    private final Set<String> interestingPackages;
+
+    /** New files. */
+    private final Set<String> newFiles;
+
+    /**
+     * Constructor.
+     *
+     * @param newFiles the new files to extract coverage information for.
+     * @param changedLinesByFile the lines to extract coverage information indexed by the name of the modified files.
+     */
+    public JacocoReportReader(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile)
+    {
+        this(newFiles, changedLinesByFile, BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param newFiles the new files to extract coverage information for.
+     * @param changedLinesByFile the lines to extract coverage information indexed by the name of the modified files.
+     * @param bufferSize the size of the read buffer.
+     */
+    JacocoReportReader(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile, final int bufferSize)
+    {
+        this.newFiles = newFiles;
+        this.changedLinesByFile = changedLinesByFile;
+        this.interestingPackages = JacocoReportParser.getPackageNames(newFiles, changedLinesByFile);
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Reads the coverage information for the changes from the given report.
+     *
+     * @param report the JaCoCo XML report.
+     * @return the coverage information for the changes.
+     * @throws IOException if an I/O error occurs or the report is malformed.
+     */
+    public List<ChangeCoverage> read(final InputStream report) throws IOException
+    {
+        try
+        {
+            return new Scanner(report).read();
+        }
+        catch (final SAXException e)
+        {
+            throw new IOException("Could not read the JaCoCo report.", e);
+        }
+    }
+
+    /**
+     * The state of reading one report.
+     */
+    private final class Scanner
+    {
+        /** The attributes of the current element, reused for every element. */
+        private final AttributesImpl attributes = new AttributesImpl();
+
+        /** The read buffer. */
+        private final byte[] buffer = new byte[bufferSize];
+
+        /** The input. */
+        private final InputStream input;
+
+        /** The encoding of the report. */
+        private Charset charset = StandardCharsets.UTF_8;
+
+        /** The offset within the report of the start of the read buffer. */
+        private long offset;
+
+        /** The end of the valid bytes in the read buffer. */
+        private int limit;
+
+        /** The position of the next unread byte in the read buffer. */
+        private int position;
+
+        /** Whether the last tag that was read or skipped is self-closing. */
+        private boolean selfClosing;
+
+        /** The current name or attribute value, copied out of the read buffer. */
+        private byte[] token = new byte[256];
+
+        /** The length of the current token. */
+        private int tokenLength;
+
+        /**
+         * Constructor.
+         *
+         * @param input the report.
+         */
+        Scanner(final InputStream input)
+        {
+            this.input = input;
+        }
+
+        /**
+         * Reads the report to its end.
+         *
+         * @return the coverage information for the changes.
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         * @throws SAXException if the package parser fails.
+         */
+        List<ChangeCoverage> read() throws IOException, SAXException
+        {
+            if (fill() && !isAsciiCompatible())
+            {
+                return parse(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, limit), input));
+            }
+            final List<ChangeCoverage> coverage = new ArrayList<>(newFiles.size() + changedLinesByFile.size());
+            boolean rootRead = false;
+            int depth = 0;
+            while (nextMarkup())
+            {
+                final int b = peek();
+                if (b == '?' || b == '!')
+                {
+                    skipDeclaration();
+                }
+                else if (b == '/')
+                {
+                    skipTag();
+                    depth--;
+                }
+                else
+                {
+                    rootRead = true;
+                    final String name = readName();
+                    if ("package".equals(name))
+                    {
+                        readAttributes();
+                        final String packageName = attributes.getValue("name");
+                        if (!selfClosing && packageName != null && interestingPackages.contains(packageName))
+                        {
+                            coverage.addAll(readPackage(packageName));
+                        }
+                        else if (!selfClosing)
+                        {
+                            skipContent();
+                        }
+                    }
+                    else
+                    {
+                        // The report and group elements are descended into, the session info elements are skipped.
+                        skipTag();
+                        if (!selfClosing && "sessioninfo".equals(name))
+                        {
+                            skipContent();
+                        }
+                        else if (!selfClosing)
+                        {
+                            depth++;
+                        }
+                    }
+                }
+            }
+            if (!rootRead || depth != 0)
+            {
+                throw new EOFException("The JaCoCo report is truncated.");
+            }
+            return coverage;
+        }
+
+        /**
+         * Reads the coverage information for the changes within a package, from after the package's start tag to after its end tag.
+         *
+         * @param packageName the name of the package.
+         * @return the coverage information for the changes within the package.
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         * @throws SAXException if the package parser fails.
+         */
+        private List<ChangeCoverage> readPackage(final String packageName) throws IOException, SAXException
+        {
+            final JacocoReportPackageParser parser = new JacocoReportPackageParser(packageName, newFiles, changedLinesByFile);
+            final String prefix = packageName.isEmpty() ? "" : packageName + '/';
+            int depth = 1;
+            while (depth > 0)
+            {
+                requireMarkup();
+                final int b = peek();
+                if (b == '?' || b == '!')
+                {
+                    skipDeclaration();
+                }
+                else if (b == '/')
+                {
+                    position++;
+                    final String name = readName();
+                    skipTag();
+                    depth--;
+                    if (depth > 0)
+                    {
+                        parser.endElement("", name, name);
+                    }
+                }
+                else
+                {
+                    final String name = readName();
+                    if (depth == 1 && !"sourcefile".equals(name))
+                    {
+                        skipTag();
+                        skipContentUnlessSelfClosing();
+                        continue;
+                    }
+                    readAttributes();
+                    if (depth == 1 && !isChanged(prefix + attributes.getValue("name")))
+                    {
+                        skipContentUnlessSelfClosing();
+                        continue;
+                    }
+                    parser.startElement("", name, name, attributes);
+                    if (selfClosing)
+                    {
+                        parser.endElement("", name, name);
+                    }
+                    else
+                    {
+                        depth++;
+                    }
+                }
+            }
+            return parser.getCoverage();
+        }
+
+        /**
+         * Whether a file is new or modified.
+         *
+         * @param filePath the path of the file.
+         * @return whether the file is changed.
+         */
+        private boolean isChanged(final String filePath)
+        {
+            return newFiles.contains(filePath) || changedLinesByFile.containsKey(filePath);
+        }
+
+        /**
+         * Whether the report starts with a byte order mark or a character that shows that its encoding is not a superset of ASCII. A UTF-8
+         * byte order mark is skipped.
+         *
+         * @return whether the encoding is a superset of ASCII.
+         */
+        private boolean isAsciiCompatible()
+        {
+            final ByteBuffer start = ByteBuffer.wrap(buffer, 0, limit);
+            position = XmlBytes.getByteOrderMarkLength(start);
+            return XmlBytes.isAsciiCompatible(start);
+        }
+
+        /**
+         * Parses a report with {@link JacocoReportParser}.
+         *
+         * @param report the report.
+         * @return the coverage information for the changes.
+         * @throws IOException if an I/O error occurs.
+         * @throws SAXException if the report is malformed.
+         */
+        private List<ChangeCoverage> parse(final InputStream report) throws IOException, SAXException
+        {
+            final JacocoReportParser parser = new JacocoReportParser(newFiles, changedLinesByFile);
+            Utilities.parse(new InputSource(report), parser, false);
+            return parser.getCoverage();
+        }
+
+        /**
+         * Skips to after the next {@code <}.
+         *
+         * @return whether there is a {@code <} before the end of the report.
+         * @throws IOException if an I/O error occurs.
+         */
+        private boolean nextMarkup() throws IOException
+        {
+            do
+            {
+                while (position < limit)
+                {
+                    if (buffer[position++] == '<')
+                    {
+                        return true;
+                    }
+                }
+            }
+            while (fill());
+            return false;
+        }
+
+        /**
+         * Skips to after the next {@code <}, which must be before the end of the report.
+         *
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private void requireMarkup() throws IOException
+        {
+            if (!nextMarkup())
+            {
+                throw new EOFException("The JaCoCo report is truncated.");
+            }
+        }
+
+        /**
+         * Skips the content and end tag of the element whose start tag has just been skipped or read, if it is not self-closing.
+         *
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         */
+        private void skipContentUnlessSelfClosing() throws IOException
+        {
+            if (!selfClosing)
+            {
+                skipContent();
+            }
+        }
+
+        /**
+         * Skips the content and end tag of the element whose start tag has just been skipped or read.
+         *
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         */
+        private void skipContent() throws IOException
+        {
+            int depth = 1;
+            while (depth > 0)
+            {
+                requireMarkup();
+                final int b = peek();
+                if (b == '?' || b == '!')
+                {
+                    skipDeclaration();
+                }
+                else
+                {
+                    skipTag();
+                    if (b == '/')
+                    {
+                        depth--;
+                    }
+                    else if (!selfClosing)
+                    {
+                        depth++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Skips the rest of a tag, up to and including its {@code >}, without decoding its attributes.
+         *
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private void skipTag() throws IOException
+        {
+            int quote = 0;
+            int previous = 0;
+            while (true)
+            {
+                if (position == limit && !fill())
+                {
+                    throw new EOFException("The JaCoCo report is truncated.");
+                }
+                final int b = buffer[position++];
+                if (quote != 0)
+                {
+                    if (b == quote)
+                    {
+                        quote = 0;
+                    }
+                }
+                else if (b == '"' || b == '\'')
+                {
+                    quote = b;
+                }
+                else if (b == '>')
+                {
+                    selfClosing = previous == '/';
+                    return;
+                }
+                previous = b;
+            }
+        }
+
+        /**
+         * Skips a processing instruction, comment, CDATA section or document type declaration. The encoding given by the XML declaration
+         * is used to decode names and attribute values.
+         *
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         */
+        private void skipDeclaration() throws IOException
+        {
+            final int first = next();
+            if (first == '?')
+            {
+                tokenLength = 0;
+                for (int b = next(); b != '>' || tokenLength == 0 || token[tokenLength - 1] != '?'; b = next())
+                {
+                    append(b);
+                }
+                final String instruction = new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+                if (instruction.startsWith("xml "))
+                {
+                    charset = XmlBytes.getEncoding(instruction);
+                }
+            }
+            else if (peek() == '-')
+            {
+                // Skip the dashes that open the comment, so that they cannot end it.
+                next();
+                next();
+                skipPast('-');
+            }
+            else if (peek() == '[')
+            {
+                skipPast(']');
+            }
+            else
+            {
+                skipDocumentTypeDeclaration();
+            }
+        }
+
+        /**
+         * Skips the rest of a document type declaration, including any internal subset.
+         *
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private void skipDocumentTypeDeclaration() throws IOException
+        {
+            int quote = 0;
+            int brackets = 0;
+            for (int b = next(); quote != 0 || brackets > 0 || b != '>'; b = next())
+            {
+                if (quote != 0)
+                {
+                    if (b == quote)
+                    {
+                        quote = 0;
+                    }
+                }
+                else if (b == '"' || b == '\'')
+                {
+                    quote = b;
+                }
+                else if (b == '[')
+                {
+                    brackets++;
+                }
+                else if (b == ']')
+                {
+                    brackets--;
+                }
+            }
+        }
+
+        /**
+         * Skips to after the next {@code >} that follows two of the given character, which ends a comment or CDATA section.
+         *
+         * @param repeated the character, {@code -} or {@code ]}.
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private void skipPast(final int repeated) throws IOException
+        {
+            int count = 0;
+            for (int b = next(); b != '>' || count < 2; b = next())
+            {
+                count = b == repeated ? count + 1 : 0;
+            }
+        }
+
+        /**
+         * Reads the name of an element, leaving the reader positioned at the byte after it.
+         *
+         * @return the name.
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private String readName() throws IOException
+        {
+            tokenLength = 0;
+            for (int b = peek(); !XmlBytes.isWhitespace(b) && b != '/' && b != '>'; b = peek())
+            {
+                append(b);
+                position++;
+            }
+            return new String(token, 0, tokenLength, charset);
+        }
+
+        /**
+         * Reads the attributes of the current start tag, up to and including its {@code >}.
+         *
+         * @throws IOException if an I/O error occurs or the report is malformed.
+         */
+        private void readAttributes() throws IOException
+        {
+            attributes.clear();
+            while (true)
+            {
+                int b = next();
+                if (XmlBytes.isWhitespace(b))
+                {
+                    continue;
+                }
+                if (b == '>' || b == '/')
+                {
+                    selfClosing = b == '/';
+                    if (selfClosing && next() != '>')
+                    {
+                        throw malformed();
+                    }
+                    return;
+                }
+                tokenLength = 0;
+                for (; b != '=' && !XmlBytes.isWhitespace(b); b = next())
+                {
+                    append(b);
+                }
+                final String name = new String(token, 0, tokenLength, charset);
+                while (b != '=')
+                {
+                    b = next();
+                    if (b != '=' && !XmlBytes.isWhitespace(b))
+                    {
+                        throw malformed();
+                    }
+                }
+                do
+                {
+                    b = next();
+                }
+                while (XmlBytes.isWhitespace(b));
+                if (b != '"' && b != '\'')
+                {
+                    throw malformed();
+                }
+                final int quote = b;
+                tokenLength = 0;
+                for (b = next(); b != quote; b = next())
+                {
+                    append(b);
+                }
+                attributes.addAttribute("", name, name, "CDATA", XmlBytes.unescape(new String(token, 0, tokenLength, charset)));
+            }
+        }
+
+        /**
+         * Returns the exception for a malformed report.
+         *
+         * @return the exception.
+         */
+        private IOException malformed()
+        {
+            return new IOException("The JaCoCo report is malformed at byte " + (offset + position - 1) + ".");
+        }
+
+        /**
+         * Appends a byte to the current token.
+         *
+         * @param b the byte.
+         */
+        private void append(final int b)
+        {
+            if (tokenLength == token.length)
+            {
+                token = Arrays.copyOf(token, token.length * 2);
+            }
+            token[tokenLength++] = (byte) b;
+        }
+
+        /**
+         * Returns the next byte without consuming it.
+         *
+         * @return the next byte.
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private int peek() throws IOException
+        {
+            if (position == limit && !fill())
+            {
+                throw new EOFException("The JaCoCo report is truncated.");
+            }
+            return buffer[position];
+        }
+
+        /**
+         * Consumes the next byte.
+         *
+         * @return the next byte.
+         * @throws IOException if an I/O error occurs or the report is truncated.
+         */
+        private int next() throws IOException
+        {
+            final int b = peek();
+            position++;
+            return b;
+        }
+
+        /**
+         * Reads the next block of the report into the read buffer.
+         *
+         * @return whether any bytes were read.
+         * @throws IOException if an I/O error occurs.
+         */
+        private boolean fill() throws IOException
+        {
+            offset += limit;
+            limit = Math.max(input.read(buffer), 0);
+            position = 0;
+            return limit > 0;
+        }
+    }
+}
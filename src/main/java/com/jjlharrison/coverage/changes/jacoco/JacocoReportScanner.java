@@ -0,0 +1,984 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.jjlharrison.coverage.changes.ChangeCoverage;
+import com.jjlharrison.coverage.changes.LineCodeCoverage;
+import com.jjlharrison.coverage.changes.Logger;
+import com.jjlharrison.coverage.changes.ModifiedFileChangeCoverage;
+import com.jjlharrison.coverage.changes.NewFileCodeCoverage;
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Scans a memory-mapped JaCoCo XML report for the coverage information of changes.
+ * <p>
+ * The report is machine-generated and regular, so rather than parsing it as XML the scanner looks at the byte after each {@code <} for
+ * the {@code <package name=}, {@code <sourcefile name=}, {@code <line} and {@code <counter} tags, and only decodes the names of packages
+ * and of the source files within packages that have changes. The integer attributes of the lines and counters of changed source files are
+ * parsed in place, without creating strings. Everything else, including the classes and methods of the packages, is passed over.
+ * <p>
+ * With a parallelism greater than one, a report large enough to be worth it is split at package boundaries and scanned by that many
+ * threads, and the coverage information is merged in the order of the report.
+ * <p>
+ * The byte order mark, the encoding declared by the XML declaration and the references in names are handled by {@link XmlBytes}, as they
+ * are by {@link JacocoReportReader}. Anything that the scanner does not expect of a report written by JaCoCo, such as an encoding other
+ * than UTF-8, a comment or a truncated report, makes it parse the report with {@link JacocoReportParser} instead, so the coverage
+ * information is always the same as that parser's. Reports larger than 2 GB cannot be mapped in one piece and are parsed in the same way.
+ */
+public class JacocoReportScanner
+{
+    /** The default minimum number of bytes of the report for each thread to scan. */
+    private static final int MINIMUM_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /** The start of the XML declaration. */
+    private static final byte[] XML_DECLARATION = XmlBytes.bytes("<?xml ");
+
+    /** The end of the XML declaration. */
+    private static final byte[] XML_DECLARATION_END = XmlBytes.bytes("?>");
+
+    /** The start of the document type declaration. */
+    private static final byte[] DOCUMENT_TYPE = XmlBytes.bytes("<!DOCTYPE ");
+
+    /** The start of the root element. */
+    private static final byte[] REPORT_START = XmlBytes.bytes("<report ");
+
+    /** The end of the root element, after its {@code <}. */
+    private static final byte[] REPORT_END = XmlBytes.bytes("/report>");
+
+    /** The start of a package, after its {@code <}. */
+    private static final byte[] PACKAGE_START = XmlBytes.bytes("package name=\"");
+
+    /** The end of a package, after its {@code <}. */
+    private static final byte[] PACKAGE_END = XmlBytes.bytes("/package>");
+
+    /** The start of a source file, after its {@code <}. */
+    private static final byte[] SOURCE_FILE_START = XmlBytes.bytes("sourcefile name=\"");
+
+    /** The end of a source file, after its {@code <}. */
+    private static final byte[] SOURCE_FILE_END = XmlBytes.bytes("/sourcefile>");
+
+    /** The start of a line, after its {@code <}. */
+    private static final byte[] LINE_START = XmlBytes.bytes("line");
+
+    /** The start of a counter, after its {@code <}. */
+    private static final byte[] COUNTER_START = XmlBytes.bytes("counter");
+
+    /** The end of an empty element. */
+    private static final byte[] EMPTY_ELEMENT_END = XmlBytes.bytes("/>");
+
+    /** The line number attribute of a line. */
+    private static final byte[] LINE_NUMBER = XmlBytes.bytes("nr");
+
+    /** The missed instructions attribute of a line. */
+    private static final byte[] MISSED_INSTRUCTIONS = XmlBytes.bytes("mi");
+
+    /** The covered instructions attribute of a line. */
+    private static final byte[] COVERED_INSTRUCTIONS = XmlBytes.bytes("ci");
+
+    /** The missed branches attribute of a line. */
+    private static final byte[] MISSED_BRANCHES = XmlBytes.bytes("mb");
+
+    /** The covered branches attribute of a line. */
+    private static final byte[] COVERED_BRANCHES = XmlBytes.bytes("cb");
+
+    /** The type attribute of a counter. */
+    private static final byte[] TYPE = XmlBytes.bytes("type");
+
+    /** The missed attribute of a counter. */
+    private static final byte[] MISSED = XmlBytes.bytes("missed");
+
+    /** The covered attribute of a counter. */
+    private static final byte[] COVERED = XmlBytes.bytes("covered");
+
+    /** The branch counter type, with the closing quote. */
+    private static final byte[] BRANCH_TYPE = XmlBytes.bytes("BRANCH\"");
+
+    /** The line counter type, with the closing quote. */
+    private static final byte[] LINE_TYPE = XmlBytes.bytes("LINE\"");
+
+    /** The lines to extract coverage information indexed by the name of the modified files. */
+    private final Map<String, Set<Integer>> changedLinesByFile;
+
+    /** Packages that have changes. */
+    private final Set<String> interestingPackages;
+
+    /** The logger. */
+    private final Logger log;
+
+    /** The minimum number of bytes of the report for each thread to scan. */
+    private final int minimumChunkSize;
+
+    /** New files. */
+    private final Set<String> newFiles;
+
+    /** The maximum number of threads to scan the report with. */
+    private final int parallelism;
+
+    /**
+     * Constructor for scanning the report with one thread.
+     *
+     * @param newFiles the new files to extract coverage information for.
+     * @param changedLinesByFile the lines to extract coverage information indexed by the name of the modified files.
+     * @param log the logger.
+     */
+    public JacocoReportScanner(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile, final Logger log)
+    {
+        this(newFiles, changedLinesByFile, 1, log);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param newFiles the new files to extract coverage information for.
+     * @param changedLinesByFile the lines to extract coverage information indexed by the name of the modified files.
+     * @param parallelism the maximum number of threads to scan the report with.
+     * @param log the logger.
+     */
+    public JacocoReportScanner(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile, final int parallelism,
+                               final Logger log)
+    {
+        this(newFiles, changedLinesByFile, parallelism, MINIMUM_CHUNK_SIZE, log);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param newFiles the new files to extract coverage information for.
+     * @param changedLinesByFile the lines to extract coverage information indexed by the name of the modified files.
+     * @param parallelism the maximum number of threads to scan the report with.
+     * @param minimumChunkSize the minimum number of bytes of the report for each thread to scan.
+     * @param log the logger.
+     */
+    JacocoReportScanner(final Set<String> newFiles, final Map<String, Set<Integer>> changedLinesByFile, final int parallelism,
+                        final int minimumChunkSize, final Logger log)
+    {
+        this.newFiles = newFiles;
+        this.changedLinesByFile = changedLinesByFile;
+        this.interestingPackages = JacocoReportParser.getPackageNames(newFiles, changedLinesByFile);
+        this.parallelism = parallelism;
+        this.minimumChunkSize = minimumChunkSize;
+        this.log = log;
+    }
+
+    /**
+     * Reads the coverage information for the changes from the given report.
+     *
+     * @param report the JaCoCo XML report.
+     * @return the coverage information for the changes.
+     * @throws IOException if an I/O error occurs or the report is malformed.
+     */
+    public List<ChangeCoverage> read(final File report) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(report.toPath(), StandardOpenOption.READ))
+        {
+            final long size = channel.size();
+            if (size <= Integer.MAX_VALUE)
+            {
+                try
+                {
+                    final ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+                    final int chunkCount = (int) Math.min(parallelism, size / minimumChunkSize);
+                    return chunkCount > 1 ? readInParallel(buffer, chunkCount) : new Scan(buffer, 0).read();
+                }
+                catch (final UnexpectedStructureException e)
+                {
+                    log.debug("Unexpected structure of " + report + " at byte " + e.getPosition() + " (" + e.getMessage()
+                              + "), parsing it instead.");
+                }
+            }
+            else
+            {
+                log.debug(report + " is too large to map, parsing it instead.");
+            }
+        }
+        try (InputStream input = new FileInputStream(report))
+        {
+            final JacocoReportParser parser = new JacocoReportParser(newFiles, changedLinesByFile);
+            Utilities.parse(new InputSource(input), parser, false);
+            return parser.getCoverage();
+        }
+        catch (final SAXException e)
+        {
+            throw new IOException("Could not parse " + report + ".", e);
+        }
+    }
+
+    /**
+     * Scans the report with a pool of threads. The report is split into chunks, which are searched for the start tags of packages in
+     * parallel. The packages that have changes are then scanned in parallel, each from its start tag to the start tag of the next, and
+     * their coverage information is merged in the order of the report.
+     *
+     * @param buffer the mapped report.
+     * @param chunkCount the number of chunks to split the report into, which is the number of threads.
+     * @return the coverage information for the changes.
+     * @throws IOException if the scan is interrupted.
+     * @throws UnexpectedStructureException if the report is not as written by JaCoCo.
+     */
+    private List<ChangeCoverage> readInParallel(final ByteBuffer buffer, final int chunkCount) throws IOException,
+                                                                                                     UnexpectedStructureException
+    {
+        final int start = new Scan(buffer, 0).readProlog();
+        final int limit = buffer.limit();
+        if (!new Scan(buffer, 0).endsWithReportEnd())
+        {
+            throw new UnexpectedStructureException("truncated", limit);
+        }
+        final long chunkSize = ((long) limit - start + chunkCount - 1) / chunkCount;
+        final ExecutorService executor = Executors.newFixedThreadPool(chunkCount);
+        try
+        {
+            final List<Integer> packageStarts = new ArrayList<>();
+            for (final List<Integer> chunkPackageStarts : runInParallel(executor, chunkCount, chunkCount, i -> {
+                final int chunkStart = (int) (start + i * chunkSize);
+                final int chunkEnd = (int) Math.min(limit, start + (i + 1) * chunkSize);
+                return new Scan(buffer.duplicate(), chunkStart, chunkEnd).findPackages();
+            }))
+            {
+                packageStarts.addAll(chunkPackageStarts);
+            }
+            final List<ChangeCoverage> coverage = new ArrayList<>(newFiles.size() + changedLinesByFile.size());
+            for (final List<ChangeCoverage> packageCoverage : runInParallel(executor, chunkCount, packageStarts.size(), i -> {
+                final int packageStart = packageStarts.get(i) + 1 + PACKAGE_START.length;
+                final int packageEnd = i + 1 < packageStarts.size() ? packageStarts.get(i + 1) : limit;
+                return new Scan(buffer.duplicate(), packageStart, packageEnd).readPackage();
+            }))
+            {
+                coverage.addAll(packageCoverage);
+            }
+            return coverage;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs tasks on a pool of workers, each of which runs the next task that has not been run until there are none left.
+     *
+     * @param executor the executor to run the workers on.
+     * @param workerCount the number of workers.
+     * @param taskCount the number of tasks.
+     * @param task the task, given the index of each task to run.
+     * @param <T> the type of the results of the tasks.
+     * @return the results of the tasks, in the order of their indexes.
+     * @throws IOException if the workers are interrupted.
+     * @throws UnexpectedStructureException if a task finds that the report is not as written by JaCoCo.
+     */
+    private static <T> List<T> runInParallel(final ExecutorService executor, final int workerCount, final int taskCount,
+                                             final Task<T> task) throws IOException, UnexpectedStructureException
+    {
+        final AtomicReferenceArray<T> results = new AtomicReferenceArray<>(taskCount);
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final List<Future<Void>> futures = new ArrayList<>(workerCount);
+        for (int i = 0; i < Math.min(workerCount, taskCount); i++)
+        {
+            futures.add(executor.submit(() -> {
+                for (int index = nextIndex.getAndIncrement(); index < taskCount; index = nextIndex.getAndIncrement())
+                {
+                    results.set(index, task.run(index));
+                }
+                return null;
+            }));
+        }
+        try
+        {
+            for (final Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+        }
+        catch (final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UnexpectedStructureException)
+            {
+                throw (UnexpectedStructureException) cause;
+            }
+            throw new RuntimeException(e);
+        }
+        final List<T> resultList = new ArrayList<>(taskCount);
+        for (int i = 0; i < taskCount; i++)
+        {
+            resultList.add(results.get(i));
+        }
+        return resultList;
+    }
+
+    /**
+     * The state of scanning one report.
+     */
+    private final class Scan
+    {
+        /** The mapped report. */
+        private final ByteBuffer buffer;
+
+        /** The end of the range of the report to look for tags in. */
+        private final int end;
+
+        /** The size of the report, up to which the tags that start within the range are read. */
+        private final int limit;
+
+        /** The position of the next byte to scan. */
+        private int position;
+
+        /**
+         * Constructor for scanning from the given position to the end of the report.
+         *
+         * @param buffer the mapped report.
+         * @param position the position to start scanning at.
+         */
+        Scan(final ByteBuffer buffer, final int position)
+        {
+            this(buffer, position, buffer.limit());
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param buffer the mapped report.
+         * @param position the position to start scanning at.
+         * @param end the end of the range of the report to look for tags in.
+         */
+        Scan(final ByteBuffer buffer, final int position, final int end)
+        {
+            this.buffer = buffer;
+            this.position = position;
+            this.end = end;
+            this.limit = buffer.limit();
+        }
+
+        /**
+         * Scans the report to its end.
+         *
+         * @return the coverage information for the changes.
+         * @throws UnexpectedStructureException if the report is not as written by JaCoCo.
+         */
+        List<ChangeCoverage> read() throws UnexpectedStructureException
+        {
+            readProlog();
+            final List<ChangeCoverage> coverage = new ArrayList<>(newFiles.size() + changedLinesByFile.size());
+            while (nextTag())
+            {
+                requireElement();
+                if (skip(PACKAGE_START))
+                {
+                    coverage.addAll(readPackage());
+                }
+                else if (skip(REPORT_END))
+                {
+                    return coverage;
+                }
+            }
+            throw new UnexpectedStructureException("truncated", position);
+        }
+
+        /**
+         * Finds the start tags of the packages within the range.
+         *
+         * @return the positions of the start tags.
+         * @throws UnexpectedStructureException if the range is not as written by JaCoCo.
+         */
+        List<Integer> findPackages() throws UnexpectedStructureException
+        {
+            final List<Integer> packageStarts = new ArrayList<>();
+            while (nextTag())
+            {
+                requireElement();
+                if (startsWith(PACKAGE_START))
+                {
+                    packageStarts.add(position - 1);
+                }
+            }
+            return packageStarts;
+        }
+
+        /**
+         * Scans a package, from after the opening quote of its name to after its end tag, if it has changes. Packages without changes
+         * are left to be passed over.
+         *
+         * @return the coverage information for the changes within the package.
+         * @throws UnexpectedStructureException if the package is not as written by JaCoCo.
+         */
+        List<ChangeCoverage> readPackage() throws UnexpectedStructureException
+        {
+            final String packageName = readName();
+            if (!interestingPackages.contains(packageName))
+            {
+                return Collections.emptyList();
+            }
+            final String prefix = packageName.isEmpty() ? "" : packageName + '/';
+            final List<ChangeCoverage> coverage = new ArrayList<>();
+            while (nextTag())
+            {
+                requireElement();
+                if (skip(SOURCE_FILE_START))
+                {
+                    readSourceFile(prefix + readName(), coverage);
+                }
+                else if (skip(PACKAGE_END))
+                {
+                    return coverage;
+                }
+            }
+            throw new UnexpectedStructureException("truncated", position);
+        }
+
+        /**
+         * Whether the report ends with the end tag of the report element, followed by nothing but whitespace.
+         *
+         * @return whether the report is complete.
+         */
+        boolean endsWithReportEnd()
+        {
+            int last = limit - 1;
+            while (last >= 0 && XmlBytes.isWhitespace(buffer.get(last)))
+            {
+                last--;
+            }
+            return last >= REPORT_END.length && buffer.get(last - REPORT_END.length) == '<'
+                   && startsWith(REPORT_END, last - REPORT_END.length + 1);
+        }
+
+        /**
+         * Checks that the tag after the {@code <} just skipped is an element's, rather than a comment, CDATA section or processing
+         * instruction.
+         *
+         * @throws UnexpectedStructureException if the tag is not an element's.
+         */
+        private void requireElement() throws UnexpectedStructureException
+        {
+            if (position == limit || buffer.get(position) == '!' || buffer.get(position) == '?')
+            {
+                throw new UnexpectedStructureException("comment, processing instruction or truncated tag", position);
+            }
+        }
+
+        /**
+         * Skips the XML and document type declarations, which are optional, up to the start of the root element.
+         *
+         * @return the position of the start of the root element.
+         * @throws UnexpectedStructureException if the prolog is not as written by JaCoCo.
+         */
+        int readProlog() throws UnexpectedStructureException
+        {
+            position += XmlBytes.getByteOrderMarkLength(buffer);
+            if (skip(XML_DECLARATION))
+            {
+                final int end = indexOf(XML_DECLARATION_END, limit);
+                if (end < 0)
+                {
+                    throw new UnexpectedStructureException("truncated", position);
+                }
+                if (!StandardCharsets.UTF_8.equals(getEncoding(end)))
+                {
+                    throw new UnexpectedStructureException("encoding other than UTF-8", position);
+                }
+                position = end + XML_DECLARATION_END.length;
+            }
+            skipWhitespace();
+            if (skip(DOCUMENT_TYPE))
+            {
+                while (position < limit && buffer.get(position) != '>')
+                {
+                    if (buffer.get(position) == '[')
+                    {
+                        throw new UnexpectedStructureException("internal document type subset", position);
+                    }
+                    position++;
+                }
+                position++;
+            }
+            skipWhitespace();
+            if (!startsWith(REPORT_START))
+            {
+                throw new UnexpectedStructureException("no report element", position);
+            }
+            return position;
+        }
+
+        /**
+         * Returns the encoding given by the XML declaration, from the current position to the given end.
+         *
+         * @param end the position of the end of the XML declaration.
+         * @return the encoding.
+         * @throws UnexpectedStructureException if the encoding is not supported.
+         */
+        private Charset getEncoding(final int end) throws UnexpectedStructureException
+        {
+            final byte[] declaration = new byte[end - position];
+            for (int i = 0; i < declaration.length; i++)
+            {
+                declaration[i] = buffer.get(position + i);
+            }
+            try
+            {
+                return XmlBytes.getEncoding(new String(declaration, StandardCharsets.US_ASCII));
+            }
+            catch (final IOException e)
+            {
+                throw new UnexpectedStructureException(e.getMessage(), position, e);
+            }
+        }
+
+        /**
+         * Scans a changed source file, from after its name to after its end tag, adding its coverage information. Unchanged source files
+         * are left to be passed over.
+         *
+         * @param filePath the path of the source file.
+         * @param coverage the coverage information to add to.
+         * @throws UnexpectedStructureException if the source file is not as written by JaCoCo.
+         */
+        private void readSourceFile(final String filePath, final List<ChangeCoverage> coverage) throws UnexpectedStructureException
+        {
+            final Set<Integer> changedLineNumbers = changedLinesByFile.get(filePath);
+            final NewFileCodeCoverage newFileCoverage;
+            final ModifiedFileChangeCoverage modifiedFileCoverage;
+            if (newFiles.contains(filePath))
+            {
+                newFileCoverage = new NewFileCodeCoverage(filePath);
+                modifiedFileCoverage = null;
+                coverage.add(newFileCoverage);
+            }
+            else if (changedLineNumbers != null)
+            {
+                newFileCoverage = null;
+                modifiedFileCoverage = new ModifiedFileChangeCoverage(filePath, changedLineNumbers);
+                coverage.add(modifiedFileCoverage);
+            }
+            else
+            {
+                return;
+            }
+            while (nextTag())
+            {
+                if (skip(LINE_START))
+                {
+                    readLine(modifiedFileCoverage);
+                }
+                else if (skip(COUNTER_START))
+                {
+                    readCounter(newFileCoverage);
+                }
+                else if (skip(SOURCE_FILE_END))
+                {
+                    return;
+                }
+                else
+                {
+                    throw new UnexpectedStructureException("unexpected element in source file " + filePath, position);
+                }
+            }
+            throw new UnexpectedStructureException("truncated", position);
+        }
+
+        /**
+         * Scans the attributes of a line, adding its coverage information if it is a changed line of a modified file.
+         *
+         * @param modifiedFileCoverage the coverage information of the modified file, or {@code null} if the file is new.
+         * @throws UnexpectedStructureException if the line is not as written by JaCoCo.
+         */
+        private void readLine(final ModifiedFileChangeCoverage modifiedFileCoverage) throws UnexpectedStructureException
+        {
+            int nr = -1;
+            int mi = 0;
+            int ci = 0;
+            int mb = 0;
+            int cb = 0;
+            while (!endOfEmptyElement())
+            {
+                if (skipAttributeName(LINE_NUMBER))
+                {
+                    nr = readInt();
+                }
+                else if (skipAttributeName(MISSED_INSTRUCTIONS))
+                {
+                    mi = readInt();
+                }
+                else if (skipAttributeName(COVERED_INSTRUCTIONS))
+                {
+                    ci = readInt();
+                }
+                else if (skipAttributeName(MISSED_BRANCHES))
+                {
+                    mb = readInt();
+                }
+                else if (skipAttributeName(COVERED_BRANCHES))
+                {
+                    cb = readInt();
+                }
+                else
+                {
+                    throw new UnexpectedStructureException("unexpected line attribute", position);
+                }
+            }
+            if (nr < 0)
+            {
+                throw new UnexpectedStructureException("line without number", position);
+            }
+            if (modifiedFileCoverage != null && modifiedFileCoverage.getChangedLineNumbers().contains(nr))
+            {
+                final boolean hasCoveredInstructions = ci > 0;
+                final boolean hasMissedInstructions = mi > 0;
+                modifiedFileCoverage.getCoverage().add(new LineCodeCoverage(nr,
+                                                                            hasCoveredInstructions ? 1 : 0,
+                                                                            !hasCoveredInstructions && hasMissedInstructions ? 1 : 0,
+                                                                            cb,
+                                                                            mb));
+            }
+        }
+
+        /**
+         * Scans the attributes of a counter, setting the branch and line counts of a new file.
+         *
+         * @param newFileCoverage the coverage information of the new file, or {@code null} if the file is modified.
+         * @throws UnexpectedStructureException if the counter is not as written by JaCoCo.
+         */
+        private void readCounter(final NewFileCodeCoverage newFileCoverage) throws UnexpectedStructureException
+        {
+            boolean branch = false;
+            boolean line = false;
+            int missedCount = -1;
+            int coveredCount = -1;
+            while (!endOfEmptyElement())
+            {
+                if (skipAttributeName(TYPE))
+                {
+                    branch = skip(BRANCH_TYPE);
+                    line = !branch && skip(LINE_TYPE);
+                    if (!branch && !line)
+                    {
+                        skipPast('"');
+                    }
+                }
+                else if (skipAttributeName(MISSED))
+                {
+                    missedCount = readInt();
+                }
+                else if (skipAttributeName(COVERED))
+                {
+                    coveredCount = readInt();
+                }
+                else
+                {
+                    throw new UnexpectedStructureException("unexpected counter attribute", position);
+                }
+            }
+            if ((branch || line) && (missedCount < 0 || coveredCount < 0))
+            {
+                throw new UnexpectedStructureException("counter without counts", position);
+            }
+            if (newFileCoverage != null && branch)
+            {
+                newFileCoverage.setMissedChangedBranchesCount(missedCount);
+                newFileCoverage.setCoveredChangedBranchesCount(coveredCount);
+            }
+            else if (newFileCoverage != null && line)
+            {
+                newFileCoverage.setMissedChangedLinesCount(missedCount);
+                newFileCoverage.setCoveredChangedLinesCount(coveredCount);
+            }
+        }
+
+        /**
+         * Skips whitespace, then the end of an empty element if it is next.
+         *
+         * @return whether the element has ended.
+         * @throws UnexpectedStructureException if the element has content.
+         */
+        private boolean endOfEmptyElement() throws UnexpectedStructureException
+        {
+            final int start = position;
+            skipWhitespace();
+            if (skip(EMPTY_ELEMENT_END))
+            {
+                return true;
+            }
+            if (position == start || position == limit || buffer.get(position) == '>')
+            {
+                throw new UnexpectedStructureException("element with content or malformed attributes", position);
+            }
+            return false;
+        }
+
+        /**
+         * Skips the name of an attribute and the {@code ="} that follows it, if it is the given attribute.
+         *
+         * @param name the name of the attribute.
+         * @return whether the attribute was skipped.
+         */
+        private boolean skipAttributeName(final byte[] name)
+        {
+            if (startsWith(name) && position + name.length + 1 < limit && buffer.get(position + name.length) == '='
+                && buffer.get(position + name.length + 1) == '"')
+            {
+                position += name.length + 2;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parses a non-negative integer attribute value in place, up to and including its closing quote.
+         *
+         * @return the value.
+         * @throws UnexpectedStructureException if the value is not a non-negative integer.
+         */
+        private int readInt() throws UnexpectedStructureException
+        {
+            final int start = position;
+            long value = 0;
+            while (position < limit && position - start < 10)
+            {
+                final byte b = buffer.get(position);
+                if (b < '0' || b > '9')
+                {
+                    break;
+                }
+                value = value * 10 + b - '0';
+                position++;
+            }
+            if (position == start || position == limit || buffer.get(position) != '"' || value > Integer.MAX_VALUE)
+            {
+                throw new UnexpectedStructureException("malformed integer", position);
+            }
+            position++;
+            return (int) value;
+        }
+
+        /**
+         * Decodes a name attribute value, up to and including its closing quote.
+         *
+         * @return the name.
+         * @throws UnexpectedStructureException if the name is not terminated or contains a malformed reference.
+         */
+        private String readName() throws UnexpectedStructureException
+        {
+            final int start = position;
+            skipPast('"');
+            final byte[] name = new byte[position - 1 - start];
+            for (int i = 0; i < name.length; i++)
+            {
+                name[i] = buffer.get(start + i);
+            }
+            try
+            {
+                return XmlBytes.unescape(new String(name, StandardCharsets.UTF_8));
+            }
+            catch (final IOException e)
+            {
+                throw new UnexpectedStructureException(e.getMessage(), start, e);
+            }
+        }
+
+        /**
+         * Skips to after the next occurrence of the given byte.
+         *
+         * @param b the byte.
+         * @throws UnexpectedStructureException if the byte does not occur.
+         */
+        private void skipPast(final int b) throws UnexpectedStructureException
+        {
+            while (position < limit && buffer.get(position) != b)
+            {
+                position++;
+            }
+            if (position == limit)
+            {
+                throw new UnexpectedStructureException("truncated", position);
+            }
+            position++;
+        }
+
+        /**
+         * Skips to after the next {@code <}.
+         *
+         * @return whether there is a {@code <} before the end of the range.
+         */
+        private boolean nextTag()
+        {
+            while (position < end)
+            {
+                if (buffer.get(position++) == '<')
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Skips XML whitespace.
+         */
+        private void skipWhitespace()
+        {
+            while (position < limit && XmlBytes.isWhitespace(buffer.get(position)))
+            {
+                position++;
+            }
+        }
+
+        /**
+         * Skips the given token if it is next.
+         *
+         * @param token the token.
+         * @return whether the token was skipped.
+         */
+        private boolean skip(final byte[] token)
+        {
+            if (startsWith(token))
+            {
+                position += token.length;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Whether the given token is next.
+         *
+         * @param token the token.
+         * @return whether the token is next.
+         */
+        private boolean startsWith(final byte[] token)
+        {
+            return startsWith(token, position);
+        }
+
+        /**
+         * Whether the given token is at the given position.
+         *
+         * @param token the token.
+         * @param at the position.
+         * @return whether the token is at the position.
+         */
+        private boolean startsWith(final byte[] token, final int at)
+        {
+            if (at + token.length > limit)
+            {
+                return false;
+            }
+            for (int i = 0; i < token.length; i++)
+            {
+                if (buffer.get(at + i) != token[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the position of the next occurrence of the given token that starts before the given end.
+         *
+         * @param token the token.
+         * @param end the end of the range to search.
+         * @return the position of the token, or -1 if it does not occur.
+         */
+        private int indexOf(final byte[] token, final int end)
+        {
+            for (int i = position; i < end; i++)
+            {
+                if (startsWith(token, i))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A task run by a worker.
+     *
+     * @param <T> the type of the result of the task.
+     */
+    @FunctionalInterface
+    private interface Task<T>
+    {
+        /**
+         * Runs the task.
+         *
+         * @param index the index of the task.
+         * @return the result of the task.
+         * @throws UnexpectedStructureException if the report is not as written by JaCoCo.
+         */
+        T run(int index) throws UnexpectedStructureException;
+    }
+
+    /**
+     * Thrown when the report is not structured as expected of a report written by JaCoCo.
+     */
+    private static final class UnexpectedStructureException extends Exception
+    {
+        /** The serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** The position in the report at which the unexpected structure was found. */
+        private final int position;
+
+        /**
+         * Constructor.
+         *
+         * @param message what was unexpected.
+         * @param position the position in the report at which the unexpected structure was found.
+         */
+        UnexpectedStructureException(final String message, final int position)
+        {
+            super(message);
+            this.position = position;
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param message what was unexpected.
+         * @param position the position in the report at which the unexpected structure was found.
+         * @param cause the cause.
+         */
+        UnexpectedStructureException(final String message, final int position, final Throwable cause)
+        {
+            super(message, cause);
+            this.position = position;
+        }
+
+        /**
+         * Returns the position in the report at which the unexpected structure was found.
+         *
+         * @return the position.
+         */
+        int getPosition()
+        {
+            return position;
+        }
+    }
+}
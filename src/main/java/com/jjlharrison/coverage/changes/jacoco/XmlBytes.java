@@ -0,0 +1,194 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The byte level XML handling shared by {@link JacocoReportReader} and {@link JacocoReportScanner}: recognising whitespace, sniffing the
+ * encoding from the byte order mark and the XML declaration, and replacing the references in attribute values.
+ */
+final class XmlBytes
+{
+    /** The UTF-8 byte order mark. */
+    static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /** The encoding pseudo-attribute of the XML declaration. */
+    private static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']+)[\"']");
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private XmlBytes()
+    {
+    }
+
+    /**
+     * Encodes a token.
+     *
+     * @param token the token.
+     * @return the bytes of the token.
+     */
+    static byte[] bytes(final String token)
+    {
+        return token.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Whether a byte is XML whitespace.
+     *
+     * @param b the byte.
+     * @return whether the byte is whitespace.
+     */
+    static boolean isWhitespace(final int b)
+    {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * Returns the length of the UTF-8 byte order mark at the start of a document.
+     *
+     * @param document the start of the document, from position zero up to its limit.
+     * @return the length of the byte order mark, or zero if there is none.
+     */
+    static int getByteOrderMarkLength(final ByteBuffer document)
+    {
+        if (document.limit() < BYTE_ORDER_MARK.length)
+        {
+            return 0;
+        }
+        for (int i = 0; i < BYTE_ORDER_MARK.length; i++)
+        {
+            if (document.get(i) != BYTE_ORDER_MARK[i])
+            {
+                return 0;
+            }
+        }
+        return BYTE_ORDER_MARK.length;
+    }
+
+    /**
+     * Whether a document is in an encoding that is a superset of ASCII, judging by a UTF-8 byte order mark, or the absence of the byte
+     * order marks and zero bytes that start a document in UTF-16 or UTF-32.
+     *
+     * @param document the start of the document, from position zero up to its limit.
+     * @return whether the encoding is a superset of ASCII.
+     */
+    static boolean isAsciiCompatible(final ByteBuffer document)
+    {
+        if (document.limit() == 0 || getByteOrderMarkLength(document) > 0)
+        {
+            return true;
+        }
+        final byte first = document.get(0);
+        return first != 0 && first != (byte) 0xFE && first != (byte) 0xFF && (document.limit() < 2 || document.get(1) != 0);
+    }
+
+    /**
+     * Returns the encoding given by an XML declaration.
+     *
+     * @param declaration the XML declaration, or its content.
+     * @return the encoding, UTF-8 if the declaration does not give one.
+     * @throws IOException if the encoding is not supported.
+     */
+    static Charset getEncoding(final CharSequence declaration) throws IOException
+    {
+        final Matcher matcher = ENCODING.matcher(declaration);
+        if (!matcher.find())
+        {
+            return StandardCharsets.UTF_8;
+        }
+        try
+        {
+            return Charset.forName(matcher.group(1));
+        }
+        catch (final IllegalCharsetNameException | UnsupportedCharsetException e)
+        {
+            throw new IOException("Unsupported encoding " + matcher.group(1) + " of the JaCoCo report.", e);
+        }
+    }
+
+    /**
+     * Replaces the entity and character references in an attribute value.
+     *
+     * @param value the attribute value.
+     * @return the value with the references replaced.
+     * @throws IOException if a reference is malformed.
+     */
+    static String unescape(final String value) throws IOException
+    {
+        int ampersand = value.indexOf('&');
+        if (ampersand < 0)
+        {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(value.length());
+        int start = 0;
+        while (ampersand >= 0)
+        {
+            final int semicolon = value.indexOf(';', ampersand);
+            if (semicolon < 0)
+            {
+                throw new IOException("Malformed reference in attribute value " + value + " of the JaCoCo report.");
+            }
+            builder.append(value, start, ampersand);
+            final String reference = value.substring(ampersand + 1, semicolon);
+            switch (reference)
+            {
+                case "lt":
+                    builder.append('<');
+                    break;
+                case "gt":
+                    builder.append('>');
+                    break;
+                case "amp":
+                    builder.append('&');
+                    break;
+                case "quot":
+                    builder.append('"');
+                    break;
+                case "apos":
+                    builder.append('\'');
+                    break;
+                default:
+                    builder.appendCodePoint(parseCharacterReference(reference, value));
+            }
+            start = semicolon + 1;
+            ampersand = value.indexOf('&', start);
+        }
+        return builder.append(value, start, value.length()).toString();
+    }
+
+    /**
+     * Parses the code point of a character reference.
+     *
+     * @param reference the reference, without the leading ampersand and trailing semicolon.
+     * @param value the attribute value that contains the reference.
+     * @return the code point.
+     * @throws IOException if the reference is not a character reference.
+     */
+    private static int parseCharacterReference(final String reference, final String value) throws IOException
+    {
+        try
+        {
+            if (reference.startsWith("#x"))
+            {
+                return Integer.parseInt(reference.substring(2), 16);
+            }
+            if (reference.startsWith("#"))
+            {
+                return Integer.parseInt(reference.substring(1));
+            }
+        }
+        catch (final NumberFormatException e)
+        {
+            throw new IOException("Malformed reference in attribute value " + value + " of the JaCoCo report.", e);
+        }
+        throw new IOException("Unknown entity &" + reference + "; in attribute value " + value + " of the JaCoCo report.");
+    }
+}
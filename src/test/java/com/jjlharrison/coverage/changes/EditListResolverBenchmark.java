@@ -0,0 +1,135 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares computing the edits of a modified 3000 line file with {@link EditListResolver} and with {@link
+ * DiffFormatter#toFileHeader(DiffEntry)}, in time and in memory allocated per diff ({@code gc.alloc.rate.norm}, reported by the GC
+ * profiler).
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jjlharrison.coverage.changes.EditListResolverBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EditListResolverBenchmark
+{
+    private File directory;
+
+    private DiffEntry entry;
+
+    private DiffFormatter formatter;
+
+    private Git git;
+
+    private Logger log;
+
+    private EditListResolver resolver;
+
+    @Setup
+    public void setUp() throws IOException, GitAPIException
+    {
+        directory = Files.createTempDirectory("edit-list-resolver").toFile();
+        final File file = new File(directory, "Large.java");
+        git = Git.init().setDirectory(directory).call();
+        log = new Logger(new SystemStreamLog(), new File(directory, "change-coverage.log"));
+        write(file, IntStream.range(0, 3000).mapToObj(l -> "    private static final String FIELD_" + l + " = \"value " + l + "\";"));
+        git.add().addFilepattern("Large.java").call();
+        final RevCommit commit = git.commit().setMessage("Initial commit").call();
+        write(file, IntStream.range(0, 3000).mapToObj(l -> l % 10 < 5
+                                                            ? "    private static final String FIELD_" + l + " = \"changed " + l + "\";"
+                                                            : "    private static final String FIELD_" + l + " = \"value " + l + "\";"));
+
+        formatter = new DiffFormatter(NULL_OUTPUT_STREAM);
+        formatter.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
+        formatter.setRepository(git.getRepository());
+        formatter.setContext(0);
+        try (ObjectReader reader = git.getRepository().newObjectReader())
+        {
+            final CanonicalTreeParser tree = new CanonicalTreeParser();
+            tree.reset(reader, commit.getTree());
+            final List<DiffEntry> entries = formatter.scan(tree, new FileTreeIterator(git.getRepository()));
+            entry = entries.stream().filter(e -> "Large.java".equals(e.getNewPath())).findFirst().orElseThrow(IllegalStateException::new);
+        }
+        // Without a line hash cache, so that each diff hashes the lines of both sides, as the file header does.
+        resolver = new EditListResolver(git.getRepository(), true, new GitDiffSettings(), null, log);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        resolver.close();
+        formatter.close();
+        git.close();
+        log.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public EditList direct() throws IOException
+    {
+        return resolver.getEdits(entry);
+    }
+
+    @Benchmark
+    public EditList fileHeader() throws IOException
+    {
+        final EditList edits = new EditList();
+        formatter.toFileHeader(entry).getHunks().forEach(hunk -> edits.addAll(hunk.toEditList()));
+        return edits;
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(EditListResolverBenchmark.class.getSimpleName())
+                       .addProfiler(GCProfiler.class)
+                       .build()).run();
+    }
+
+    private static void write(final File file, final Stream<String> lines) throws IOException
+    {
+        Files.write(file.toPath(), lines.collect(Collectors.toList()), StandardCharsets.UTF_8);
+    }
+}
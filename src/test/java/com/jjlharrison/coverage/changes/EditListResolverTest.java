@@ -0,0 +1,215 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffAlgorithm;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jjlharrison.coverage.changes.diff.LineHashCache;
+
+public class EditListResolverTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DiffEntry entry;
+
+    private DiffFormatter formatter;
+
+    private Git git;
+
+    private Logger log;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        final File directory = temporaryFolder.getRoot();
+        final File file = new File(directory, "Large.java");
+        git = Git.init().setDirectory(directory).call();
+        log = new Logger(new SystemStreamLog(), temporaryFolder.newFile("change-coverage.log"));
+        write(file, IntStream.range(0, 3000).mapToObj(l -> "    private static final String FIELD_" + l + " = \"value " + l + "\";"));
+        git.add().addFilepattern(".").call();
+        final RevCommit commit = git.commit().setMessage("Initial commit").call();
+        write(file, IntStream.range(0, 3000).mapToObj(l -> l % 10 < 5
+                                                            ? "    private static final String FIELD_" + l + " = \"changed " + l + "\";"
+                                                            : "    private static final String FIELD_" + l + " = \"value " + l + "\";"));
+
+        formatter = new DiffFormatter(NULL_OUTPUT_STREAM);
+        formatter.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
+        formatter.setRepository(git.getRepository());
+        formatter.setContext(0);
+        entry = scan(commit);
+    }
+
+    @After
+    public void tearDown()
+    {
+        formatter.close();
+        git.close();
+        log.close();
+    }
+
+    @Test
+    public void testGetEditsMatchesDiffFormatter() throws Exception
+    {
+        try (EditListResolver resolver = newResolver(new GitDiffSettings()))
+        {
+            final EditList edits = resolver.getEdits(entry);
+            assertEquals(300, edits.size());
+            assertEquals(getEditsFromFileHeader(), edits);
+            assertFalse(resolver.isApproximate());
+        }
+    }
+
+    @Test
+    public void testGetEditsWithMyersMatchesDiffFormatter() throws Exception
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffAlgorithm(DiffAlgorithm.SupportedAlgorithm.MYERS);
+        formatter.setDiffAlgorithm(DiffAlgorithm.getAlgorithm(DiffAlgorithm.SupportedAlgorithm.MYERS));
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            assertEquals(getEditsFromFileHeader(), resolver.getEdits(entry));
+        }
+    }
+
+    @Test
+    public void testGetEditsOverLineBudgetTreatsChangedRegionAsChanged() throws Exception
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffMaxLines(1000);
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            final EditList edits = resolver.getEdits(entry);
+            assertEquals(1, edits.size());
+            assertEquals(new Edit(0, 2995, 0, 2995), edits.get(0));
+            assertTrue(resolver.isApproximate());
+        }
+    }
+
+    @Test
+    public void testGetEditsWithinLineBudgetMatchesDiffFormatter() throws Exception
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffMaxLines(3000);
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            assertEquals(getEditsFromFileHeader(), resolver.getEdits(entry));
+        }
+    }
+
+    @Test
+    public void testGetEditsOverTimeBudgetTreatsChangedRegionAsChanged() throws Exception
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffTimeout(1);
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            final EditList edits = resolver.getEdits(entry);
+            assertEquals(1, edits.size());
+            assertEquals(new Edit(0, 2995, 0, 2995), edits.get(0));
+            assertTrue(resolver.isApproximate());
+        }
+    }
+
+    @Test
+    public void testGetEditsOverFileSizeTreatsChangedRegionAsChanged() throws Exception
+    {
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffMaxFileSize(1000);
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            final EditList edits = resolver.getEdits(entry);
+            assertEquals(1, edits.size());
+            assertEquals(new Edit(0, 2995, 0, 2995), edits.get(0));
+            assertTrue(resolver.isApproximate());
+        }
+    }
+
+    @Test
+    public void testGetEditsOverFileSizeWithOnlyWhitespaceChangedHasNoEdits() throws Exception
+    {
+        final RevCommit commit = git.commit().setAll(true).setMessage("Changed fields").call();
+        write(new File(temporaryFolder.getRoot(), "Large.java"),
+              IntStream.range(0, 3000).mapToObj(l -> l % 10 < 5
+                                                     ? "\tprivate static final String FIELD_" + l + " = \"changed " + l + "\";"
+                                                     : "\tprivate static final String FIELD_" + l + " = \"value " + l + "\";"));
+        final GitDiffSettings settings = new GitDiffSettings();
+        settings.setDiffMaxFileSize(1000);
+        try (EditListResolver resolver = newResolver(settings))
+        {
+            assertTrue(resolver.getEdits(scan(commit)).isEmpty());
+            assertFalse(resolver.isApproximate());
+        }
+    }
+
+    @Test
+    public void testGetEditsWithLineHashCacheMatchesDiffFormatter() throws Exception
+    {
+        final LineHashCache cache = new LineHashCache(EditListResolver.COMPARATOR_NAME, 10000);
+        try (EditListResolver resolver = new EditListResolver(git.getRepository(), true, new GitDiffSettings(), cache, log))
+        {
+            assertEquals(getEditsFromFileHeader(), resolver.getEdits(entry));
+            // Only the old blob is cached, the new content is read from the working tree.
+            assertEquals(3000, cache.get(entry.getOldId().toObjectId()).length);
+            assertEquals(getEditsFromFileHeader(), resolver.getEdits(entry));
+        }
+    }
+
+    private EditListResolver newResolver(final GitDiffSettings settings)
+    {
+        final LineHashCache cache = new LineHashCache(EditListResolver.COMPARATOR_NAME, settings.getLineHashCacheSize());
+        return new EditListResolver(git.getRepository(), true, settings, cache, log);
+    }
+
+    private DiffEntry scan(final RevCommit commit) throws IOException
+    {
+        try (ObjectReader reader = git.getRepository().newObjectReader())
+        {
+            final CanonicalTreeParser tree = new CanonicalTreeParser();
+            tree.reset(reader, commit.getTree());
+            final List<DiffEntry> entries = formatter.scan(tree, new FileTreeIterator(git.getRepository()));
+            assertEquals(1, entries.size());
+            return entries.get(0);
+        }
+    }
+
+    private EditList getEditsFromFileHeader() throws IOException
+    {
+        final EditList edits = new EditList();
+        formatter.toFileHeader(entry).getHunks().forEach(hunk -> edits.addAll(hunk.toEditList()));
+        return edits;
+    }
+
+    private static void write(final File file, final Stream<String> lines) throws IOException
+    {
+        Files.write(file.toPath(), lines.collect(Collectors.toList()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.diff.EditList;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.jjlharrison.coverage.changes.diff.LineHashCache;
+
+public class ParallelEditListResolverTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testResolveMatchesDiffFormatter() throws Exception
+    {
+        final File directory = temporaryFolder.getRoot();
+        try (Git git = Git.init().setDirectory(directory).call())
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                write(new File(directory, "File" + i + ".java"), IntStream.range(0, 100).mapToObj(l -> "line " + l));
+            }
+            git.add().addFilepattern(".").call();
+            final RevCommit commit = git.commit().setMessage("Initial commit").call();
+
+            for (int i = 0; i < 20; i++)
+            {
+                final int offset = i;
+                write(new File(directory, "File" + i + ".java"),
+                      IntStream.range(0, 100 + i)
+                          .filter(l -> l % (offset + 3) != 0)
+                          .mapToObj(l -> l % (offset + 5) == 0 ? "changed line " + l : (l % 7 == 0 ? "line  " + l : "line " + l)));
+            }
+
+            final List<DiffEntry> entries;
+            final List<EditList> expected = new ArrayList<>();
+            try (DiffFormatter formatter = new DiffFormatter(NULL_OUTPUT_STREAM);
+                 ObjectReader reader = git.getRepository().newObjectReader())
+            {
+                formatter.setDiffComparator(RawTextComparator.WS_IGNORE_ALL);
+                formatter.setRepository(git.getRepository());
+                formatter.setContext(0);
+                final CanonicalTreeParser tree = new CanonicalTreeParser();
+                tree.reset(reader, commit.getTree());
+                entries = formatter.scan(tree, new FileTreeIterator(git.getRepository()));
+                for (final DiffEntry entry : entries)
+                {
+                    final EditList edits = new EditList();
+                    formatter.toFileHeader(entry).getHunks().forEach(hunk -> edits.addAll(hunk.toEditList()));
+                    expected.add(edits);
+                }
+            }
+
+            assertEquals(20, entries.size());
+            final GitDiffSettings settings = new GitDiffSettings();
+            settings.setParallelism(4);
+            try (Logger log = new Logger(new SystemStreamLog(), temporaryFolder.newFile("change-coverage.log")))
+            {
+                final LineHashCache cache = new LineHashCache(EditListResolver.COMPARATOR_NAME, settings.getLineHashCacheSize());
+                final ParallelEditListResolver resolver = new ParallelEditListResolver(git.getRepository(), true, settings, cache, log);
+                assertEquals(expected, resolver.resolve(entries));
+            }
+        }
+    }
+
+    private static void write(final File file, final Stream<String> lines) throws IOException
+    {
+        Files.write(file.toPath(), lines.collect(Collectors.toList()), StandardCharsets.UTF_8);
+    }
+}
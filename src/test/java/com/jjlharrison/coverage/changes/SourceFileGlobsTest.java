@@ -0,0 +1,74 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class SourceFileGlobsTest
+{
+    @Test
+    public void testEmpty()
+    {
+        final SourceFileGlobs globs = new SourceFileGlobs(Collections.emptyList(), Collections.emptyList());
+
+        assertTrue(globs.isEmpty());
+        assertTrue(globs.matches("com/example/A.java"));
+        assertTrue(globs.mayMatchWithin("com/example"));
+    }
+
+    @Test
+    public void testExcludes()
+    {
+        final SourceFileGlobs globs = new SourceFileGlobs(Collections.emptyList(),
+                                                          Arrays.asList("**/*Config.java", "com/example/dto/**", "com/example/Gen?.java"));
+
+        assertFalse(globs.isEmpty());
+        assertTrue(globs.matches("com/example/A.java"));
+        assertFalse(globs.matches("AppConfig.java"));
+        assertFalse(globs.matches("com/example/AppConfig.java"));
+        assertTrue(globs.matches("com/example/AppConfig.java.orig"));
+        assertFalse(globs.matches("com/example/dto/A.java"));
+        assertFalse(globs.matches("com/example/dto/nested/A.java"));
+        assertTrue(globs.matches("com/example/dtos/A.java"));
+        assertFalse(globs.matches("com/example/Gen1.java"));
+        assertTrue(globs.matches("com/example/Gen12.java"));
+        assertTrue(globs.matches("com/example/nested/Gen1.java"));
+
+        assertTrue(globs.mayMatchWithin("com/example"));
+        assertFalse(globs.mayMatchWithin("com/example/dto"));
+        assertFalse(globs.mayMatchWithin("com/example/dto/nested"));
+        assertTrue(globs.mayMatchWithin("com/example/dtos"));
+    }
+
+    @Test
+    public void testIncludes()
+    {
+        final SourceFileGlobs globs = new SourceFileGlobs(Arrays.asList("com/example/service/**", "com/example/*.java"),
+                                                          Collections.singletonList("**/*Test*.java"));
+
+        assertTrue(globs.matches("com/example/A.java"));
+        assertTrue(globs.matches("com/example/service/nested/A.java"));
+        assertFalse(globs.matches("com/example/service/ATest.java"));
+        assertFalse(globs.matches("com/example/other/A.java"));
+        assertFalse(globs.matches("com/A.java"));
+
+        assertTrue(globs.mayMatchWithin("com"));
+        assertTrue(globs.mayMatchWithin("com/example"));
+        assertTrue(globs.mayMatchWithin("com/example/service/nested"));
+        assertFalse(globs.mayMatchWithin("com/example/other"));
+        assertFalse(globs.mayMatchWithin("org"));
+    }
+
+    @Test
+    public void testSpecialCharacters()
+    {
+        final SourceFileGlobs globs = new SourceFileGlobs(Collections.singletonList("/a+b/(c)$.java"), Collections.emptyList());
+
+        assertTrue(globs.matches("a+b/(c)$.java"));
+        assertFalse(globs.matches("aab/(c)$.java"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.Test;
+
+public class SourceRootTrieTest
+{
+    private static final SourceRootTrie TRIE = new SourceRootTrie(Arrays.asList("module/src/main/java/", "module/src/gen",
+                                                                                "module/src/gen/nested", "other dir/src/"));
+
+    @Test
+    public void testGetRelativePaths()
+    {
+        assertEquals(Collections.singletonList("com/A.java"), TRIE.getRelativePaths("module/src/main/java/com/A.java"));
+        assertEquals(Collections.singletonList("B.java"), TRIE.getRelativePaths("other dir/src/B.java"));
+        assertEquals(Arrays.asList("nested/C.java", "C.java"), TRIE.getRelativePaths("module/src/gen/nested/C.java"));
+    }
+
+    @Test
+    public void testGetRelativePathsOutsideSourceRoots()
+    {
+        assertEquals(Collections.emptyList(), TRIE.getRelativePaths("module/src/main/javafoo/A.java"));
+        assertEquals(Collections.emptyList(), TRIE.getRelativePaths("module/src/main"));
+        assertEquals(Collections.emptyList(), TRIE.getRelativePaths("module/src/main/java"));
+        assertEquals(Collections.emptyList(), TRIE.getRelativePaths("module/pom.xml"));
+        assertEquals(Collections.emptyList(), TRIE.getRelativePaths(""));
+    }
+
+    @Test
+    public void testGetRelativePathsRepositoryRoot()
+    {
+        final SourceRootTrie trie = new SourceRootTrie(Collections.singletonList(""));
+
+        assertEquals(Collections.singletonList("src/A.java"), trie.getRelativePaths("src/A.java"));
+    }
+
+    @Test
+    public void testGetRelativePathsWithGlobs()
+    {
+        final SourceRootTrie trie = new SourceRootTrie(Collections.singletonList("src"),
+                                                       new SourceFileGlobs(Collections.emptyList(), Collections.singletonList("dto/**")));
+
+        assertEquals(Collections.singletonList("A.java"), trie.getRelativePaths("src/A.java"));
+        assertEquals(Collections.emptyList(), trie.getRelativePaths("src/dto/B.java"));
+    }
+
+    @Test
+    public void testTreeFilter() throws Exception
+    {
+        assertEquals(Arrays.asList("module/src/gen/G.java", "module/src/gen/nested/G.java", "module/src/main/java/com/A.java",
+                                   "other dir/src/B.java"), walk(TRIE));
+    }
+
+    @Test
+    public void testTreeFilterWithGlobs() throws Exception
+    {
+        final SourceRootTrie trie = new SourceRootTrie(Arrays.asList("module/src/main/java", "module/src/gen"),
+                                                       new SourceFileGlobs(Collections.emptyList(), Arrays.asList("com/**", "*.java")));
+
+        assertEquals(Collections.singletonList("module/src/gen/nested/G.java"), walk(trie));
+    }
+
+    private static List<String> walk(final SourceRootTrie trie) throws Exception
+    {
+        final DirCache dirCache = DirCache.newInCore();
+        final DirCacheBuilder builder = dirCache.builder();
+        for (final String path : new String[] {"module/pom.xml", "module/src/gen/G.java", "module/src/gen/nested/G.java",
+                                               "module/src/main/java/com/A.java", "module/src/main/javafoo/A.java",
+                                               "module/src/test/java/ATest.java", "other dir/src/B.java", "other/src/B.java"})
+        {
+            final DirCacheEntry entry = new DirCacheEntry(path);
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(ObjectId.zeroId());
+            builder.add(entry);
+        }
+        builder.finish();
+
+        final List<String> paths = new ArrayList<>();
+        try (TreeWalk walk = new TreeWalk(new InMemoryRepository(new DfsRepositoryDescription("test"))))
+        {
+            walk.addTree(new DirCacheIterator(dirCache));
+            walk.setRecursive(true);
+            walk.setFilter(trie.newTreeFilter());
+            while (walk.next())
+            {
+                paths.add(walk.getPathString());
+            }
+        }
+        return paths;
+    }
+}
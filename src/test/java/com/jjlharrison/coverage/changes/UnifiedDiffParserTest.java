@@ -0,0 +1,166 @@
+package com.jjlharrison.coverage.changes;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class UnifiedDiffParserTest
+{
+    private static final String DIFF = "diff --git a/src/A.java b/src/A.java\n"
+                                       + "index d68dd40..6fe8acc 100644\n"
+                                       + "--- a/src/A.java\n"
+                                       + "+++ b/src/A.java\n"
+                                       + "@@ -2 +2 @@ a\n"
+                                       + "-b\n"
+                                       + "+B\n"
+                                       + "@@ -4,0 +5,2 @@ d\n"
+                                       + "+e\n"
+                                       + "+--- not a header\n"
+                                       + "@@ -7,3 +8,0 @@\n"
+                                       + "-f\n"
+                                       + "-diff --git not a header\n"
+                                       + "-h\n"
+                                       + "\\ No newline at end of file\n"
+                                       + "diff --git a/src/Added.java b/src/Added.java\n"
+                                       + "new file mode 100644\n"
+                                       + "index 0000000..3e75765\n"
+                                       + "--- /dev/null\n"
+                                       + "+++ b/src/Added.java\n"
+                                       + "@@ -0,0 +1 @@\n"
+                                       + "+new\n"
+                                       + "diff --git a/src/Gone.java b/src/Gone.java\n"
+                                       + "deleted file mode 100644\n"
+                                       + "index 587be6b..0000000\n"
+                                       + "--- a/src/Gone.java\n"
+                                       + "+++ /dev/null\n"
+                                       + "@@ -1 +0,0 @@\n"
+                                       + "-x\n"
+                                       + "diff --git a/src/Old.java b/src/New.java\n"
+                                       + "similarity index 93%\n"
+                                       + "rename from src/Old.java\n"
+                                       + "rename to src/New.java\n"
+                                       + "index 1c99002..742bd57 100644\n"
+                                       + "--- a/src/Old.java\n"
+                                       + "+++ b/src/New.java\n"
+                                       + "@@ -20 +20 @@\n"
+                                       + "-20\n"
+                                       + "+twenty\n"
+                                       + "diff --git a/src/dir with space/Ü.java b/src/dir with space/Ü.java\n"
+                                       + "index bca70f3..8a08eba 100644\n"
+                                       + "--- a/src/dir with space/Ü.java\t\n"
+                                       + "+++ b/src/dir with space/Ü.java\t\n"
+                                       + "@@ -1,0 +2 @@ q\n"
+                                       + "+r\n"
+                                       + "diff --git \"a/src/tab\\there\\303\\251.java\" \"b/src/tab\\there\\303\\251.java\"\n"
+                                       + "index bca70f3..8a08eba 100644\n"
+                                       + "Binary files \"a/src/tab\\there\\303\\251.java\" and \"b/src/tab\\there\\303\\251.java\" differ\n"
+                                       + "diff --git a/src/Moved.java b/src/Moved Here.java\n"
+                                       + "similarity index 100%\n"
+                                       + "rename from src/Moved.java\n"
+                                       + "rename to src/Moved Here.java\n";
+
+    @Test
+    public void testParse() throws Exception
+    {
+        assertEquals(Arrays.asList("MODIFY src/A.java -> src/A.java EditList[REPLACE(1-2,1-2), INSERT(4-4,4-6), DELETE(6-9,8-8)]",
+                                   "ADD null -> src/Added.java EditList[]",
+                                   "DELETE src/Gone.java -> null EditList[]",
+                                   "RENAME src/Old.java -> src/New.java EditList[REPLACE(19-20,19-20)]",
+                                   "MODIFY src/dir with space/Ü.java -> src/dir with space/Ü.java EditList[INSERT(1-1,1-2)]",
+                                   "MODIFY src/tab\thereé.java -> src/tab\thereé.java EditList[]",
+                                   "RENAME src/Moved.java -> src/Moved Here.java EditList[]"),
+                     parse(DIFF, 7));
+    }
+
+    @Test
+    public void testParseWithLargeBuffer() throws Exception
+    {
+        assertEquals(parse(DIFF, 7), parse(DIFF, 64 * 1024));
+    }
+
+    @Test
+    public void testParseCrLf() throws Exception
+    {
+        assertEquals(parse(DIFF, 64 * 1024), parse(DIFF.replace("\n", "\r\n"), 64 * 1024));
+    }
+
+    @Test
+    public void testParseEmpty() throws Exception
+    {
+        assertEquals(new ArrayList<>(), parse("", 7));
+    }
+
+    @Test
+    public void testParseWithContext() throws Exception
+    {
+        final String diff = "diff --git a/src/A.java b/src/A.java\n"
+                            + "index d68dd40..6fe8acc 100644\n"
+                            + "--- a/src/A.java\n"
+                            + "+++ b/src/A.java\n"
+                            + "@@ -1,4 +1,5 @@\n"
+                            + " a\n"
+                            + "-b\n"
+                            + "+B\n"
+                            + " c\n"
+                            + "\n"
+                            + "+e\n";
+
+        assertEquals(Collections.singletonList("MODIFY src/A.java -> src/A.java EditList[REPLACE(1-2,1-2), INSERT(4-4,4-5)]"),
+                     parse(diff, 7));
+    }
+
+    @Test
+    public void testParsePlainUnifiedDiff() throws Exception
+    {
+        final String diff = "Only in new: Y.java\n"
+                            + "--- src/X.java\t2026-10-18 12:34:42.905264031 +0000\n"
+                            + "+++ src/X.java\t2026-10-18 12:34:42.905264031 +0000\n"
+                            + "@@ -1,3 +1,3 @@\n"
+                            + " a\n"
+                            + "-b\n"
+                            + " c\n"
+                            + "+d\n"
+                            + "--- /dev/null\n"
+                            + "+++ src/Y.java\n"
+                            + "@@ -0,0 +1 @@\n"
+                            + "+y\n"
+                            + "--- src/Z.java\n"
+                            + "+++ /dev/null\n"
+                            + "@@ -1 +0,0 @@\n"
+                            + "-z\n";
+
+        assertEquals(Arrays.asList("MODIFY src/X.java -> src/X.java EditList[DELETE(1-2,1-1), INSERT(3-3,2-3)]",
+                                   "ADD null -> src/Y.java EditList[]",
+                                   "DELETE src/Z.java -> null EditList[]"),
+                     parse(diff, 7));
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseTruncated() throws Exception
+    {
+        parse("diff --git a/A.java b/A.java\n@@ -1,2 +1,2 @@\n-a\n", 7);
+    }
+
+    @Test(expected = IOException.class)
+    public void testParseMalformedHunkHeader() throws Exception
+    {
+        parse("diff --git a/A.java b/A.java\n@@ -x +1 @@\n", 7);
+    }
+
+    private static List<String> parse(final String diff, final int bufferSize) throws IOException
+    {
+        final List<String> files = new ArrayList<>();
+        final UnifiedDiffParser.Handler handler = (changeType, oldPath, newPath, edits) ->
+            files.add(changeType + " " + oldPath + " -> " + newPath + " " + edits);
+        new UnifiedDiffParser(new ByteArrayInputStream(diff.getBytes(StandardCharsets.UTF_8)), handler, bufferSize).parse();
+        return files;
+    }
+}
@@ -0,0 +1,90 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LineHashCacheTest
+{
+    private static final ObjectId FIRST = ObjectId.fromString("1111111111111111111111111111111111111111");
+
+    private static final ObjectId SECOND = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    private static final ObjectId THIRD = ObjectId.fromString("3333333333333333333333333333333333333333");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPutEvictsLeastRecentlyUsed()
+    {
+        final LineHashCache cache = new LineHashCache("comparator", 5);
+
+        cache.put(FIRST, new int[] {1, 2});
+        cache.put(SECOND, new int[] {3, 4});
+        assertArrayEquals(new int[] {1, 2}, cache.get(FIRST));
+        cache.put(THIRD, new int[] {5, 6});
+
+        assertArrayEquals(new int[] {1, 2}, cache.get(FIRST));
+        assertNull(cache.get(SECOND));
+        assertArrayEquals(new int[] {5, 6}, cache.get(THIRD));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception
+    {
+        final File file = new File(temporaryFolder.getRoot(), "cache/line-hashes");
+        final LineHashCache cache = new LineHashCache("comparator", 100);
+        cache.put(FIRST, new int[] {1, -2, Integer.MAX_VALUE});
+        cache.put(SECOND, new int[0]);
+        cache.save(file);
+        assertFalse(cache.isModified());
+
+        final LineHashCache loaded = new LineHashCache("comparator", 100);
+        loaded.load(file);
+
+        assertFalse(loaded.isModified());
+        assertArrayEquals(new int[] {1, -2, Integer.MAX_VALUE}, loaded.get(FIRST));
+        assertArrayEquals(new int[0], loaded.get(SECOND));
+    }
+
+    @Test
+    public void testLoadIgnoresOtherComparator() throws Exception
+    {
+        final File file = new File(temporaryFolder.getRoot(), "line-hashes");
+        final LineHashCache cache = new LineHashCache("comparator", 100);
+        cache.put(FIRST, new int[] {1});
+        cache.save(file);
+
+        final LineHashCache loaded = new LineHashCache("other", 100);
+        loaded.load(file);
+
+        assertNull(loaded.get(FIRST));
+    }
+
+    @Test
+    public void testLoadCorruptFile() throws Exception
+    {
+        final File file = temporaryFolder.newFile("line-hashes");
+        Files.write(file.toPath(), "not line hashes".getBytes(StandardCharsets.UTF_8));
+        final LineHashCache cache = new LineHashCache("comparator", 100);
+        cache.put(FIRST, new int[] {1});
+
+        cache.load(file);
+
+        assertArrayEquals(new int[] {1}, cache.get(FIRST));
+        assertTrue(cache.isModified());
+        assertEquals(false, file.exists());
+    }
+}
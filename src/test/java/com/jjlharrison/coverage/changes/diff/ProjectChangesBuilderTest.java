@@ -0,0 +1,147 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.diff.Edit;
+import org.eclipse.jgit.diff.EditList;
+import org.junit.Test;
+
+public class ProjectChangesBuilderTest
+{
+    private static EditList edits(final Edit... edits)
+    {
+        final EditList list = new EditList();
+        list.addAll(Arrays.asList(edits));
+        return list;
+    }
+
+    private static Set<Integer> lines(final Integer... lines)
+    {
+        return new HashSet<>(Arrays.asList(lines));
+    }
+
+    @Test
+    public void testModify()
+    {
+        final ProjectChanges changes = new ProjectChangesBuilder()
+                                           .modify("A.java", edits(new Edit(1, 1, 1, 3), new Edit(5, 6, 7, 8), new Edit(9, 10, 11, 11)))
+                                           .build();
+
+        assertEquals(Collections.singletonMap("A.java", lines(2, 3, 8)), changes.getChangedLinesByFile());
+        assertEquals(Collections.emptySet(), changes.getNewFiles());
+    }
+
+    @Test
+    public void testModifyShiftsEarlierChanges()
+    {
+        final Map<String, Set<Integer>> changedLinesByFile = new HashMap<>();
+        changedLinesByFile.put("A.java", lines(1, 4, 5, 6, 10));
+        final ProjectChanges earlier = new ProjectChanges(changedLinesByFile, Collections.emptySet());
+
+        // Insert two lines after line 2, replace line 5 with three lines and delete lines 8-9.
+        final ProjectChanges changes = new ProjectChangesBuilder(earlier)
+                                           .modify("A.java", edits(new Edit(2, 2, 2, 4), new Edit(4, 5, 6, 9), new Edit(7, 9, 11, 11)))
+                                           .build();
+
+        assertEquals(Collections.singletonMap("A.java", lines(1, 3, 4, 6, 7, 8, 9, 10, 12)), changes.getChangedLinesByFile());
+        assertEquals(lines(1, 4, 5, 6, 10), earlier.getChangedLinesByFile().get("A.java"));
+    }
+
+    @Test
+    public void testModifyDropsDeletedChanges()
+    {
+        final ProjectChanges earlier = new ProjectChanges(Collections.singletonMap("A.java", lines(3)), Collections.emptySet());
+
+        final ProjectChanges changes = new ProjectChangesBuilder(earlier).modify("A.java", edits(new Edit(2, 3, 2, 2))).build();
+
+        assertEquals(Collections.emptyMap(), changes.getChangedLinesByFile());
+    }
+
+    @Test
+    public void testNewFiles()
+    {
+        final ProjectChanges earlier = new ProjectChanges(Collections.singletonMap("A.java", lines(3)), Collections.singleton("B.java"));
+
+        final ProjectChanges changes = new ProjectChangesBuilder(earlier)
+                                           .add("A.java")
+                                           .modify("B.java", edits(new Edit(0, 0, 0, 1)))
+                                           .add("C.java")
+                                           .delete("C.java")
+                                           .build();
+
+        assertEquals(Collections.emptyMap(), changes.getChangedLinesByFile());
+        assertEquals(new HashSet<>(Arrays.asList("A.java", "B.java")), changes.getNewFiles());
+    }
+
+    @Test
+    public void testRename()
+    {
+        final ProjectChanges changes = new ProjectChangesBuilder().rename("a/A.java", "b/A.java", edits(new Edit(3, 4, 3, 4))).build();
+
+        assertEquals(Collections.singletonMap("b/A.java", lines(4)), changes.getChangedLinesByFile());
+        assertEquals(Collections.emptySet(), changes.getNewFiles());
+    }
+
+    @Test
+    public void testRenameCarriesOverEarlierChanges()
+    {
+        final ProjectChanges earlier = new ProjectChanges(Collections.singletonMap("a/A.java", lines(3)),
+                                                          Collections.singleton("a/B.java"));
+
+        final ProjectChanges changes = new ProjectChangesBuilder(earlier)
+                                           .rename("a/A.java", "b/A.java", edits(new Edit(0, 0, 0, 1)))
+                                           .rename("a/B.java", "b/B.java", new EditList())
+                                           .copy("b/A.java", "c/A.java", new EditList())
+                                           .build();
+
+        final Map<String, Set<Integer>> expected = new HashMap<>();
+        expected.put("b/A.java", lines(1, 4));
+        expected.put("c/A.java", lines(1, 4));
+        assertEquals(expected, changes.getChangedLinesByFile());
+        assertEquals(Collections.singleton("b/B.java"), changes.getNewFiles());
+    }
+
+    @Test
+    public void testCopyAfterModifyOfSourceCarriesOverEarlierChanges()
+    {
+        final ProjectChanges earlier = new ProjectChanges(Collections.singletonMap("A.java", lines(3)), Collections.emptySet());
+        final EditList copyEdits = edits(new Edit(0, 0, 0, 1));
+        final EditList modifyEdits = edits(new Edit(0, 1, 0, 0));
+
+        final ProjectChanges copyFirst = new ProjectChangesBuilder(earlier)
+                                             .copy("A.java", "B.java", copyEdits)
+                                             .modify("A.java", modifyEdits)
+                                             .build();
+        final ProjectChanges modifyFirst = new ProjectChangesBuilder(earlier)
+                                               .modify("A.java", modifyEdits)
+                                               .copy("A.java", "B.java", copyEdits)
+                                               .build();
+
+        final Map<String, Set<Integer>> expected = new HashMap<>();
+        expected.put("A.java", lines(2));
+        expected.put("B.java", lines(1, 4));
+        assertEquals(expected, copyFirst.getChangedLinesByFile());
+        assertEquals(expected, modifyFirst.getChangedLinesByFile());
+    }
+
+    @Test
+    public void testRenameAfterAddOfSourceCarriesOverEarlierChanges()
+    {
+        final ProjectChanges earlier = new ProjectChanges(Collections.singletonMap("A.java", lines(3)), Collections.emptySet());
+
+        final ProjectChanges changes = new ProjectChangesBuilder(earlier)
+                                           .add("A.java")
+                                           .rename("A.java", "B.java", new EditList())
+                                           .build();
+
+        assertEquals(Collections.singletonMap("B.java", lines(3)), changes.getChangedLinesByFile());
+        assertEquals(Collections.singleton("A.java"), changes.getNewFiles());
+    }
+}
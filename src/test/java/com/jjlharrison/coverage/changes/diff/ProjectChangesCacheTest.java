@@ -0,0 +1,73 @@
+package com.jjlharrison.coverage.changes.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectChangesCacheTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws Exception
+    {
+        final Map<String, Set<Integer>> changedLinesByFile = new HashMap<>();
+        changedLinesByFile.put("com/jjlharrison/Sample.java", new HashSet<>(Arrays.asList(1, 2, 3, 130, 20000, 127, 128)));
+        changedLinesByFile.put("com/jjlharrison/Other.java", new HashSet<>(Collections.singletonList(7)));
+        final Set<String> newFiles = new HashSet<>(Arrays.asList("com/jjlharrison/New.java", "com/jjlharrison/é.java"));
+        final ProjectChangesCache cache = new ProjectChangesCache(new File(temporaryFolder.getRoot(), "cache"), 4);
+
+        assertNull(cache.get("key"));
+        cache.put("key", new ProjectChanges(changedLinesByFile, newFiles));
+        final ProjectChanges changes = cache.get("key");
+
+        assertNotNull(changes);
+        assertEquals(changedLinesByFile, changes.getChangedLinesByFile());
+        assertEquals(newFiles, changes.getNewFiles());
+    }
+
+    @Test
+    public void testPutEvictsLeastRecentlyUsed() throws Exception
+    {
+        final File directory = new File(temporaryFolder.getRoot(), "cache");
+        final ProjectChangesCache cache = new ProjectChangesCache(directory, 2);
+        final ProjectChanges changes = new ProjectChanges(Collections.emptyMap(), Collections.singleton("New.java"));
+
+        cache.put("first", changes);
+        cache.put("second", changes);
+        new File(directory, "first.changes").setLastModified(System.currentTimeMillis() - 20000);
+        new File(directory, "second.changes").setLastModified(System.currentTimeMillis() - 10000);
+        assertNotNull(cache.get("first"));
+        cache.put("third", changes);
+
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+    }
+
+    @Test
+    public void testGetCorruptEntry() throws Exception
+    {
+        final File directory = temporaryFolder.newFolder("cache");
+        final File file = new File(directory, "key.changes");
+        Files.write(file.toPath(), "not a cache entry".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(new ProjectChangesCache(directory, 2).get("key"));
+        assertEquals(false, file.exists());
+    }
+}
@@ -0,0 +1,92 @@
+package com.jjlharrison.coverage.changes.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares finding the merge base of a long-lived branch and main, and counting the commits ahead and behind, in the {@link DeepHistory}
+ * repository with a {@link CommitGraphWalk} that reads the commit-graph and with one that falls back to a plain revision walk.
+ * <p>
+ * Requires {@code git} to write the repository. Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jjlharrison.coverage.changes.graph.CommitGraphWalkBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CommitGraphWalkBenchmark
+{
+    @Param({"false", "true"})
+    private boolean commitGraph;
+
+    private File directory;
+
+    private ObjectId feature;
+
+    private ObjectId main;
+
+    private Repository repository;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException
+    {
+        directory = Files.createTempDirectory("commit-graph-walk").toFile();
+        if (!DeepHistory.create(directory))
+        {
+            throw new IllegalStateException("git is required to write the commit-graph");
+        }
+        repository = new FileRepositoryBuilder().setGitDir(directory).build();
+        repository.getConfig().setBoolean("core", null, "commitGraph", commitGraph);
+        feature = repository.resolve("feature");
+        main = repository.resolve("main");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        repository.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public CommitGraphWalk.AheadBehind mergeBaseAndAheadBehind() throws IOException
+    {
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            walk.getMergeBase(feature, main);
+            return walk.countAheadBehind(feature, main);
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(CommitGraphWalkBenchmark.class.getSimpleName())
+                       .addProfiler(GCProfiler.class)
+                       .build()).run();
+    }
+}
@@ -0,0 +1,186 @@
+package com.jjlharrison.coverage.changes.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests {@link CommitGraphWalk} against {@code git} on a synthetic repository with a deep history: a main line of commits, a long-lived
+ * branch that main is merged into periodically, a criss-cross merge, an octopus merge, and commits made after the commit-graph was
+ * written.
+ */
+public class CommitGraphWalkTest
+{
+    @ClassRule
+    public static TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static File directory;
+
+    private static Repository repository;
+
+    private static List<String> revisions;
+
+    @BeforeClass
+    public static void createRepository() throws Exception
+    {
+        directory = temporaryFolder.newFolder("deep-history.git");
+        Assume.assumeTrue("git is required to write the commit-graph", DeepHistory.create(directory));
+        repository = new FileRepositoryBuilder().setGitDir(directory).build();
+        revisions = Arrays.asList("main", "feature", "side2", "recent", "main~4000", "feature~2960", "feature~800^2", "recent~1",
+                                  "main~17000^3");
+    }
+
+    @AfterClass
+    public static void closeRepository()
+    {
+        if (repository != null)
+        {
+            repository.close();
+        }
+    }
+
+    @Test
+    public void testMergeBase() throws Exception
+    {
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            assertTrue(walk.isUsingCommitGraph());
+            for (final String a : revisions)
+            {
+                for (final String b : revisions)
+                {
+                    final RevCommit mergeBase = walk.getMergeBase(repository.resolve(a), repository.resolve(b));
+                    assertNotNull(a + " " + b, mergeBase);
+                    assertTrue(a + " " + b, getMergeBases(a, b).contains(mergeBase.name()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMergeBaseCrissCross() throws Exception
+    {
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            final Set<String> mergeBases = getMergeBases("main~14900", "feature~2960");
+            assertEquals(2, mergeBases.size());
+            assertTrue(mergeBases.contains(walk.getMergeBase(repository.resolve("main~14900"), repository.resolve("feature~2960")).name()));
+        }
+    }
+
+    @Test
+    public void testCountAheadBehind() throws Exception
+    {
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            for (final String a : revisions)
+            {
+                for (final String b : revisions)
+                {
+                    final String[] expected = git("rev-list", "--left-right", "--count", a + "..." + b).trim().split("\\s+");
+                    final CommitGraphWalk.AheadBehind counts = walk.countAheadBehind(repository.resolve(a), repository.resolve(b));
+                    assertEquals(a + " " + b, Integer.parseInt(expected[0]), counts.getAheadCount());
+                    assertEquals(a + " " + b, Integer.parseInt(expected[1]), counts.getBehindCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIsAncestor() throws Exception
+    {
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            for (final String a : revisions)
+            {
+                for (final String b : revisions)
+                {
+                    final boolean expected = git("merge-base", "--is-ancestor", a, b) != null;
+                    assertEquals(a + " " + b, expected, walk.isAncestor(repository.resolve(a), repository.resolve(b)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWithoutCommitGraph() throws Exception
+    {
+        repository.getConfig().setBoolean("core", null, "commitGraph", false);
+        try (CommitGraphWalk walk = new CommitGraphWalk(repository))
+        {
+            assertFalse(walk.isUsingCommitGraph());
+            for (final String[] pair : new String[][] {{"feature", "main"}, {"recent", "main"}, {"main~17000^3", "side1"}})
+            {
+                final RevCommit mergeBase = walk.getMergeBase(repository.resolve(pair[0]), repository.resolve(pair[1]));
+                assertTrue(getMergeBases(pair[0], pair[1]).contains(mergeBase.name()));
+            }
+            assertTrue(walk.isAncestor(repository.resolve("main~17000^3"), repository.resolve("feature")));
+            assertFalse(walk.isAncestor(repository.resolve("feature"), repository.resolve("main")));
+            final CommitGraphWalk.AheadBehind counts = walk.countAheadBehind(repository.resolve("feature"), repository.resolve("main"));
+            final String[] expected = git("rev-list", "--left-right", "--count", "feature...main").trim().split("\\s+");
+            assertEquals(Integer.parseInt(expected[0]), counts.getAheadCount());
+            assertEquals(Integer.parseInt(expected[1]), counts.getBehindCount());
+        }
+        finally
+        {
+            repository.getConfig().unset("core", null, "commitGraph");
+        }
+    }
+
+    @Test
+    public void testZeroGenerationNumbers() throws Exception
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(new File(directory, "objects/info/commit-graph").toPath()));
+        final CommitGraph graph = CommitGraph.parse(buffer);
+        assertNotNull(graph);
+        assertTrue(graph.getGeneration(0) > 0);
+
+        // As written by Git 2.18: the generation number is the upper 30 bits of the first word after the root tree and parents.
+        int commitDataOffset = -1;
+        for (int i = 0; i < buffer.get(6); i++)
+        {
+            if (buffer.getInt(8 + i * 12) == 0x43444154)
+            {
+                commitDataOffset = (int) buffer.getLong(8 + i * 12 + 4);
+            }
+        }
+        for (int position = 0; position < graph.getCommitCount(); position++)
+        {
+            final int offset = commitDataOffset + position * (Constants.OBJECT_ID_LENGTH + 16) + Constants.OBJECT_ID_LENGTH + 8;
+            buffer.putInt(offset, buffer.getInt(offset) & 0x3);
+        }
+        assertNull(CommitGraph.parse(buffer));
+    }
+
+    private static Set<String> getMergeBases(final String a, final String b) throws IOException, InterruptedException
+    {
+        return new HashSet<>(Arrays.asList(git("merge-base", "--all", a, b).trim().split("\n")));
+    }
+
+    private static String git(final String... arguments) throws IOException, InterruptedException
+    {
+        return DeepHistory.git(directory, arguments);
+    }
+}
@@ -0,0 +1,158 @@
+package com.jjlharrison.coverage.changes.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A synthetic bare repository with a deep history, for {@link CommitGraphWalkTest} and {@link CommitGraphWalkBenchmark}: a main line of
+ * commits, a long-lived branch that main is merged into periodically, a criss-cross merge, an octopus merge, and commits made after the
+ * commit-graph was written.
+ */
+final class DeepHistory
+{
+    private static final int MAIN_COMMITS = 20000;
+
+    private static final int BRANCH_POINT = 1000;
+
+    private static final int MERGE_INTERVAL = 500;
+
+    private static final int LAST_MERGE = 16000;
+
+    private DeepHistory()
+    {
+    }
+
+    /**
+     * Creates the repository with the {@code git} command.
+     *
+     * @param directory the directory to create the bare repository in.
+     * @return whether the repository was created, {@code false} if {@code git} is not available.
+     */
+    static boolean create(final File directory) throws IOException, InterruptedException
+    {
+        if (git(directory, "init", "--quiet", "--bare", directory.getPath()) == null)
+        {
+            return false;
+        }
+        git(directory, "config", "core.commitGraph", "true");
+
+        final StringBuilder stream = new StringBuilder();
+        int mark = 0;
+        int time = 1000000000;
+        int feature = 0;
+        final int[] main = new int[MAIN_COMMITS + 1];
+        for (int i = 1; i <= MAIN_COMMITS; i++)
+        {
+            main[i] = ++mark;
+            if (i == 3000)
+            {
+                // Octopus merge of two side branches.
+                final int side1 = commit(stream, "side1", ++mark, time++, main[i - 1]);
+                final int side2 = commit(stream, "side2", ++mark, time++, main[i - 1]);
+                main[i] = commit(stream, "main", ++mark, time++, main[i - 1], side1, side2);
+            }
+            else if (i == 5100)
+            {
+                // Criss-cross: main and the feature branch merge each other.
+                final int previousFeature = feature;
+                feature = commit(stream, "feature", ++mark, time++, previousFeature, main[i - 1]);
+                main[i] = commit(stream, "main", ++mark, time++, main[i - 1], previousFeature);
+            }
+            else
+            {
+                commit(stream, "main", main[i], time++, i == 1 ? 0 : main[i - 1]);
+            }
+            if (i == BRANCH_POINT)
+            {
+                feature = commit(stream, "feature", ++mark, time++, main[i]);
+            }
+            else if (i > BRANCH_POINT && i % 5 == 0 && i != 5100)
+            {
+                feature = i % MERGE_INTERVAL == 0 && i <= LAST_MERGE
+                          ? commit(stream, "feature", ++mark, time++, feature, main[i])
+                          : commit(stream, "feature", ++mark, time++, feature);
+            }
+        }
+        fastImport(directory, stream.toString());
+        if (git(directory, "commit-graph", "write", "--reachable") == null)
+        {
+            throw new IOException("Could not write the commit-graph.");
+        }
+
+        // Commits that are not in the commit-graph.
+        final StringBuilder recent = new StringBuilder();
+        commit(recent, "recent", 1, time++, "refs/heads/feature^0");
+        commit(recent, "recent", 2, time++, ":1", "refs/heads/main~10");
+        commit(recent, "recent", 3, time, ":2");
+        fastImport(directory, recent.toString());
+
+        return true;
+    }
+
+    private static int commit(final StringBuilder stream, final String branch, final int mark, final int time, final int... parents)
+    {
+        final List<String> parentRevisions = new ArrayList<>();
+        for (final int parent : parents)
+        {
+            if (parent != 0)
+            {
+                parentRevisions.add(":" + parent);
+            }
+        }
+        commit(stream, branch, mark, time, parentRevisions.toArray(new String[0]));
+        return mark;
+    }
+
+    private static void commit(final StringBuilder stream, final String branch, final int mark, final int time, final String... parents)
+    {
+        stream.append("commit refs/heads/").append(branch).append('\n')
+            .append("mark :").append(mark).append('\n')
+            .append("committer Test <test@example.com> ").append(time).append(" +0000\n")
+            .append("data 0\n");
+        for (int i = 0; i < parents.length; i++)
+        {
+            stream.append(i == 0 ? "from " : "merge ").append(parents[i]).append('\n');
+        }
+        stream.append('\n');
+    }
+
+    private static void fastImport(final File directory, final String stream) throws IOException, InterruptedException
+    {
+        final Process process = new ProcessBuilder("git", "--git-dir", directory.getPath(), "fast-import", "--quiet")
+                                    .redirectErrorStream(true)
+                                    .start();
+        try (OutputStream input = process.getOutputStream())
+        {
+            input.write(stream.getBytes(StandardCharsets.UTF_8));
+        }
+        final String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0)
+        {
+            throw new IOException(output);
+        }
+    }
+
+    static String git(final File directory, final String... arguments) throws IOException, InterruptedException
+    {
+        final List<String> command = new ArrayList<>(Arrays.asList("git", "--git-dir", directory.getPath()));
+        command.addAll(Arrays.asList(arguments));
+        final Process process;
+        try
+        {
+            process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        }
+        catch (final IOException e)
+        {
+            return null;
+        }
+        final String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        return process.waitFor() == 0 ? output : null;
+    }
+}
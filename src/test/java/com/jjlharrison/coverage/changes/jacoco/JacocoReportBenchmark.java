@@ -0,0 +1,171 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.xml.sax.InputSource;
+
+import com.jjlharrison.coverage.changes.ChangeCoverage;
+import com.jjlharrison.coverage.changes.Logger;
+import com.jjlharrison.coverage.changes.Utilities;
+
+/**
+ * Compares reading a JaCoCo XML report with {@link JacocoReportReader}, {@link JacocoReportScanner} (with one thread and with a thread
+ * per processor) and {@link JacocoReportParser}, for a generated report in which a few or many of the packages have changes. The scanner
+ * reads the report from a file, the others from memory.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.jjlharrison.coverage.changes.jacoco.JacocoReportBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JacocoReportBenchmark
+{
+    @Param({"3", "100"})
+    private int changedPackageCount;
+
+    @Param("500")
+    private int packageCount;
+
+    private final Map<String, Set<Integer>> changedLinesByFile = new HashMap<>();
+
+    private final Set<String> newFiles = new HashSet<>();
+
+    private Logger log;
+
+    private File logFile;
+
+    private byte[] report;
+
+    private File reportFile;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        final StringBuilder builder = new StringBuilder(1024 * 1024);
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>")
+            .append("<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.1//EN\" \"report.dtd\">")
+            .append("<report name=\"benchmark\"><sessioninfo id=\"vm\" start=\"1\" dump=\"2\"/>");
+        for (int p = 0; p < packageCount; p++)
+        {
+            final String packageName = "com/example/p" + p;
+            builder.append("<package name=\"").append(packageName).append("\">");
+            for (int c = 0; c < 20; c++)
+            {
+                builder.append("<class name=\"").append(packageName).append("/C").append(c).append("\" sourcefilename=\"C")
+                    .append(c).append(".java\">");
+                for (int m = 0; m < 10; m++)
+                {
+                    builder.append("<method name=\"m").append(m).append("\" desc=\"()V\" line=\"").append(m * 10).append("\">");
+                    appendCounters(builder);
+                    builder.append("</method>");
+                }
+                appendCounters(builder);
+                builder.append("</class>");
+            }
+            for (int c = 0; c < 20; c++)
+            {
+                builder.append("<sourcefile name=\"C").append(c).append(".java\">");
+                for (int l = 1; l <= 100; l++)
+                {
+                    builder.append("<line nr=\"").append(l).append("\" mi=\"").append(l % 3).append("\" ci=\"").append(l % 5)
+                        .append("\" mb=\"").append(l % 2).append("\" cb=\"").append(l % 2).append("\"/>");
+                }
+                appendCounters(builder);
+                builder.append("</sourcefile>");
+            }
+            appendCounters(builder);
+            builder.append("</package>");
+        }
+        appendCounters(builder);
+        builder.append("</report>");
+        report = builder.toString().getBytes(StandardCharsets.UTF_8);
+        reportFile = File.createTempFile("jacoco", ".xml");
+        Files.write(reportFile.toPath(), report);
+        logFile = File.createTempFile("change-coverage", ".log");
+        log = new Logger(new SystemStreamLog(), logFile);
+
+        for (int p = 0; p < packageCount; p += Math.max(1, packageCount / changedPackageCount))
+        {
+            newFiles.add("com/example/p" + p + "/C0.java");
+            changedLinesByFile.put("com/example/p" + p + "/C1.java", new HashSet<>(Arrays.asList(10, 11, 12, 50)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        log.close();
+        Files.delete(logFile.toPath());
+        Files.delete(reportFile.toPath());
+    }
+
+    @Benchmark
+    public List<ChangeCoverage> parser() throws Exception
+    {
+        final JacocoReportParser parser = new JacocoReportParser(newFiles, changedLinesByFile);
+        Utilities.parse(new InputSource(new ByteArrayInputStream(report)), parser, false);
+        return parser.getCoverage();
+    }
+
+    @Benchmark
+    public List<ChangeCoverage> reader() throws Exception
+    {
+        return new JacocoReportReader(newFiles, changedLinesByFile).read(new ByteArrayInputStream(report));
+    }
+
+    @Benchmark
+    public List<ChangeCoverage> scanner() throws Exception
+    {
+        return new JacocoReportScanner(newFiles, changedLinesByFile, log).read(reportFile);
+    }
+
+    @Benchmark
+    public List<ChangeCoverage> parallelScanner() throws Exception
+    {
+        return new JacocoReportScanner(newFiles, changedLinesByFile, Runtime.getRuntime().availableProcessors(), log).read(reportFile);
+    }
+
+    public static void main(final String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(JacocoReportBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static void appendCounters(final StringBuilder builder)
+    {
+        for (final String type : new String[] {"INSTRUCTION", "BRANCH", "LINE", "COMPLEXITY", "METHOD"})
+        {
+            builder.append("<counter type=\"").append(type).append("\" missed=\"3\" covered=\"7\"/>");
+        }
+    }
+}
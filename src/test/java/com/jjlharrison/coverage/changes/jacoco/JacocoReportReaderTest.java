@@ -0,0 +1,162 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import com.jjlharrison.coverage.changes.ChangeCoverage;
+import com.jjlharrison.coverage.changes.Utilities;
+
+public class JacocoReportReaderTest
+{
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                                         + "<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.1//EN\" \"report.dtd\">"
+                                         + "<report name=\"test\">"
+                                         + "<sessioninfo id=\"vm-1\" start=\"1\" dump=\"2\"/>"
+                                         + "<sessioninfo id='vm-2' start='3' dump='4'></sessioninfo>"
+                                         + "<!-- a comment with <package name=\"com/example\"> -->"
+                                         + "<group name=\"module\">"
+                                         + "<package name=\"com/example\">"
+                                         + "<class name=\"com/example/A\" sourcefilename=\"A.java\">"
+                                         + "<method name=\"&lt;init&gt;\" desc=\"()V\" line=\"3\">"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</method>"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</class>"
+                                         + "<sourcefile name=\"A.java\">"
+                                         + "<line nr=\"3\" mi=\"0\" ci=\"3\" mb=\"0\" cb=\"0\"/>"
+                                         + "<line nr=\"5\" mi=\"2\" ci=\"0\" mb=\"1\" cb=\"1\"/>"
+                                         + "<line nr=\"7\" mi=\"2\" ci=\"0\" mb=\"0\" cb=\"0\"/>"
+                                         + "<counter type=\"LINE\" missed=\"2\" covered=\"1\"/>"
+                                         + "</sourcefile>"
+                                         + "<sourcefile name=\"B.java\">"
+                                         + "<line nr=\"1\" mi=\"0\" ci=\"3\" mb=\"0\" cb=\"0\"/>"
+                                         + "<counter type=\"LINE\" missed=\"0\" covered=\"1\"/>"
+                                         + "<counter type=\"BRANCH\" missed=\"1\" covered=\"3\"/>"
+                                         + "</sourcefile>"
+                                         + "<sourcefile name = \"C.java\" >"
+                                         + "<line nr=\"3\" mi=\"5\" ci=\"0\" mb=\"0\" cb=\"0\"/>"
+                                         + "<counter type=\"LINE\" missed=\"1\" covered=\"0\"/>"
+                                         + "</sourcefile>"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</package>"
+                                         + "<package name=\"com/other\">"
+                                         + "<sourcefile name=\"A.java\">"
+                                         + "<line nr=\"3\" mi=\"0\" ci=\"3\" mb=\"0\" cb=\"0\"/>"
+                                         + "</sourcefile>"
+                                         + "</package>"
+                                         + "</group>"
+                                         + "<package name=\"\">"
+                                         + "<sourcefile name=\"D&#x2E;java\">"
+                                         + "\n  "
+                                         + "<line nr=\"1\" mi=\"0\" ci=\"1\" mb=\"0\" cb=\"0\"/>"
+                                         + "<counter type=\"LINE\" missed=\"0\" covered=\"1\"/>"
+                                         + "</sourcefile>"
+                                         + "</package>"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</report>";
+
+    private static final Set<String> NEW_FILES = new HashSet<>(Arrays.asList("com/example/B.java", "D.java"));
+
+    private static final Map<String, Set<Integer>> CHANGED_LINES_BY_FILE = new HashMap<>();
+
+    static
+    {
+        CHANGED_LINES_BY_FILE.put("com/example/A.java", new HashSet<>(Arrays.asList(3, 4, 5)));
+    }
+
+    @Test
+    public void testRead() throws Exception
+    {
+        final List<String> coverage = new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(report())
+                                          .stream()
+                                          .map(c -> c.getCoveredChangedLinesCount() + "/" + c.getTotalChangedLinesCount() + " "
+                                                    + c.getCoveredChangedBranchesCount() + "/" + c.getTotalChangedBranchesCount())
+                                          .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("1/2 1/2", "1/1 3/4", "1/1 0/0"), coverage);
+    }
+
+    @Test
+    public void testReadMatchesParser() throws Exception
+    {
+        final JacocoReportParser parser = new JacocoReportParser(NEW_FILES, CHANGED_LINES_BY_FILE);
+        Utilities.parse(new InputSource(report()), parser, false);
+
+        assertEquals(describe(parser.getCoverage()), describe(new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(report())));
+    }
+
+    @Test
+    public void testReadWithSmallBuffer() throws Exception
+    {
+        assertEquals(describe(new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(report())),
+                     describe(new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE, 7).read(report())));
+    }
+
+    @Test
+    public void testReadUtf16() throws Exception
+    {
+        final byte[] report = REPORT.replace("UTF-8", "UTF-16").getBytes(StandardCharsets.UTF_16);
+
+        assertEquals(describe(new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(report())),
+                     describe(new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(new ByteArrayInputStream(report))));
+    }
+
+    @Test
+    public void testReadWithoutChanges() throws Exception
+    {
+        assertEquals(Collections.emptyList(), new JacocoReportReader(Collections.emptySet(), Collections.emptyMap()).read(report()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws Exception
+    {
+        read("<report><package name=\"\">");
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncatedUninterestingPackage() throws Exception
+    {
+        read("<report><package name=\"com/other\"><class name=\"");
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadEmpty() throws Exception
+    {
+        read("");
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadMalformedAttribute() throws Exception
+    {
+        read("<report><package name=\"\"><sourcefile name=D.java></sourcefile></package></report>");
+    }
+
+    private static void read(final String report) throws IOException
+    {
+        new JacocoReportReader(NEW_FILES, CHANGED_LINES_BY_FILE).read(new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ByteArrayInputStream report()
+    {
+        return new ByteArrayInputStream(REPORT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> describe(final List<ChangeCoverage> coverage)
+    {
+        return coverage.stream().map(c -> c.describe(true)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,271 @@
+package com.jjlharrison.coverage.changes.jacoco;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+import com.jjlharrison.coverage.changes.ChangeCoverage;
+import com.jjlharrison.coverage.changes.Logger;
+import com.jjlharrison.coverage.changes.Utilities;
+
+public class JacocoReportScannerTest
+{
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                                         + "<!DOCTYPE report PUBLIC \"-//JACOCO//DTD Report 1.1//EN\" \"report.dtd\">"
+                                         + "<report name=\"test\">"
+                                         + "<sessioninfo id=\"vm-1\" start=\"1\" dump=\"2\"/>"
+                                         + "<group name=\"module\">"
+                                         + "<package name=\"com/example\">"
+                                         + "<class name=\"com/example/A\" sourcefilename=\"A.java\">"
+                                         + "<method name=\"&lt;init&gt;\" desc=\"()V\" line=\"3\">"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</method>"
+                                         + "</class>"
+                                         + "<sourcefile name=\"A.java\">"
+                                         + "<line nr=\"3\" mi=\"0\" ci=\"3\" mb=\"0\" cb=\"0\"/>"
+                                         + "<line nr=\"5\" mi=\"2\" ci=\"0\" mb=\"1\" cb=\"1\"/>"
+                                         + "<line nr=\"7\" mi=\"2\" ci=\"0\" mb=\"0\" cb=\"0\"/>"
+                                         + "<counter type=\"LINE\" missed=\"2\" covered=\"1\"/>"
+                                         + "</sourcefile>"
+                                         + "<sourcefile name=\"B.java\">"
+                                         + "<line nr=\"1\" mi=\"0\" ci=\"3\" mb=\"1\" cb=\"3\"/>"
+                                         + "<counter type=\"INSTRUCTION\" missed=\"0\" covered=\"3\"/>"
+                                         + "<counter type=\"LINE\" missed=\"0\" covered=\"1\"/>"
+                                         + "<counter type=\"BRANCH\" missed=\"1\" covered=\"3\"/>"
+                                         + "</sourcefile>"
+                                         + "<sourcefile name=\"C.java\">"
+                                         + "<line nr=\"3\" mi=\"5\" ci=\"0\" mb=\"0\" cb=\"0\"/>"
+                                         + "</sourcefile>"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</package>"
+                                         + "<package name=\"com/other\">"
+                                         + "<sourcefile name=\"A.java\">"
+                                         + "<line nr=\"3\" mi=\"0\" ci=\"3\" mb=\"0\" cb=\"0\"/>"
+                                         + "</sourcefile>"
+                                         + "</package>"
+                                         + "</group>"
+                                         + "<package name=\"\">"
+                                         + "<sourcefile name=\"Ü.java\">\n"
+                                         + "  <line nr=\"1\" mi=\"0\" ci=\"1\" mb=\"0\" cb=\"0\"/>\n"
+                                         + "  <counter type=\"LINE\" missed=\"0\" covered=\"1\"/>\n"
+                                         + "</sourcefile>"
+                                         + "</package>"
+                                         + "<counter type=\"LINE\" missed=\"9\" covered=\"9\"/>"
+                                         + "</report>";
+
+    private static final Set<String> NEW_FILES = new HashSet<>(Arrays.asList("com/example/B.java", "Ü.java"));
+
+    private static final Map<String, Set<Integer>> CHANGED_LINES_BY_FILE = new HashMap<>();
+
+    static
+    {
+        CHANGED_LINES_BY_FILE.put("com/example/A.java", new HashSet<>(Arrays.asList(3, 4, 5)));
+    }
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final List<String> debug = new ArrayList<>();
+
+    private Logger log;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        final SystemStreamLog mavenLog = new SystemStreamLog()
+        {
+            @Override
+            public void debug(final CharSequence content)
+            {
+                debug.add(content.toString());
+            }
+        };
+        log = new Logger(mavenLog, temporaryFolder.newFile("change-coverage.log"));
+    }
+
+    @After
+    public void tearDown()
+    {
+        log.close();
+    }
+
+    @Test
+    public void testRead() throws Exception
+    {
+        final List<String> coverage = new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, log).read(write(REPORT))
+                                          .stream()
+                                          .map(c -> c.getCoveredChangedLinesCount() + "/" + c.getTotalChangedLinesCount() + " "
+                                                    + c.getCoveredChangedBranchesCount() + "/" + c.getTotalChangedBranchesCount())
+                                          .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("1/2 1/2", "1/1 3/4", "1/1 0/0"), coverage);
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadMatchesParser() throws Exception
+    {
+        assertScannedAsParsed(REPORT);
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadWithAttributesInOtherOrder() throws Exception
+    {
+        assertScannedAsParsed(REPORT.replace("<line nr=\"5\" mi=\"2\" ci=\"0\" mb=\"1\" cb=\"1\"/>",
+                                             "<line cb=\"1\" mb=\"1\"  mi=\"2\"\n nr=\"5\" ci=\"0\" />"));
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadWithoutDeclarations() throws Exception
+    {
+        assertScannedAsParsed(REPORT.substring(REPORT.indexOf("<report")));
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadWithComment() throws Exception
+    {
+        assertParsedInstead(REPORT.replace("<group", "<!-- <package name=\"com/other\"> --><group"));
+    }
+
+    @Test
+    public void testReadWithReferenceInName() throws Exception
+    {
+        assertScannedAsParsed(REPORT.replace("B.java", "&#66;.java"));
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadWithSingleQuotes() throws Exception
+    {
+        assertParsedInstead(REPORT.replace("ci=\"0\" mb=\"1\"", "ci='0' mb=\"1\""));
+    }
+
+    @Test
+    public void testReadWithLineContent() throws Exception
+    {
+        assertParsedInstead(REPORT.replace("<line nr=\"5\" mi=\"2\" ci=\"0\" mb=\"1\" cb=\"1\"/>",
+                                           "<line nr=\"5\" mi=\"2\" ci=\"0\" mb=\"1\" cb=\"1\"></line>"));
+    }
+
+    @Test
+    public void testReadWithOtherEncoding() throws Exception
+    {
+        assertParsedInstead(REPORT.replace("UTF-8", "ISO-8859-1").replace("Ü", "U"));
+    }
+
+    @Test
+    public void testReadWithOtherSpellingOfUtf8() throws Exception
+    {
+        assertScannedAsParsed(REPORT.replace("encoding=\"UTF-8\"", "encoding='utf-8'"));
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadUtf16() throws Exception
+    {
+        final File report = temporaryFolder.newFile("jacoco-utf16.xml");
+        Files.write(report.toPath(), REPORT.replace("UTF-8", "UTF-16").getBytes(StandardCharsets.UTF_16));
+
+        assertEquals(describe(parse(REPORT, StandardCharsets.UTF_8)),
+                     describe(new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, log).read(report)));
+        assertEquals(1, debug.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws Exception
+    {
+        new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, log).read(write(REPORT.substring(0, REPORT.length() - 3)));
+    }
+
+    @Test
+    public void testReadInParallel() throws Exception
+    {
+        final File report = write(REPORT + "\n");
+        final List<String> expected = describe(parse(REPORT, StandardCharsets.UTF_8));
+        for (int parallelism = 2; parallelism <= 16; parallelism++)
+        {
+            assertEquals(expected, describe(new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, parallelism, 1, log).read(report)));
+        }
+        assertEquals(Collections.emptyList(), debug);
+    }
+
+    @Test
+    public void testReadInParallelWithComment() throws Exception
+    {
+        final String report = REPORT.replace("<group", "<!-- <package name=\"com/other\"> --><group");
+
+        assertEquals(describe(parse(report, StandardCharsets.UTF_8)),
+                     describe(new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, 4, 1, log).read(write(report))));
+        assertEquals(1, debug.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInParallelTruncated() throws Exception
+    {
+        new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, 4, 1, log).read(write(REPORT.substring(0, REPORT.length() - 3)));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInParallelTruncatedPackage() throws Exception
+    {
+        final String report = REPORT.replace("</package><package name=\"com/other\">", "<package name=\"com/other\">");
+
+        new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, 4, 1, log).read(write(report));
+    }
+
+    private void assertScannedAsParsed(final String report) throws Exception
+    {
+        assertEquals(describe(parse(report, StandardCharsets.UTF_8)),
+                     describe(new JacocoReportScanner(NEW_FILES, CHANGED_LINES_BY_FILE, log).read(write(report))));
+    }
+
+    private void assertParsedInstead(final String report) throws Exception
+    {
+        assertScannedAsParsed(report);
+        assertEquals(1, debug.size());
+    }
+
+    private File write(final String report) throws IOException
+    {
+        final File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<ChangeCoverage> parse(final String report, final Charset charset) throws Exception
+    {
+        final JacocoReportParser parser = new JacocoReportParser(NEW_FILES, CHANGED_LINES_BY_FILE);
+        Utilities.parse(new InputSource(new ByteArrayInputStream(report.getBytes(charset))), parser, false);
+        return parser.getCoverage();
+    }
+
+    private static List<String> describe(final List<ChangeCoverage> coverage)
+    {
+        return coverage.stream().map(c -> c.describe(true)).collect(Collectors.toList());
+    }
+}